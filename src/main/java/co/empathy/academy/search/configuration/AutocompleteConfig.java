@@ -0,0 +1,17 @@
+package co.empathy.academy.search.configuration;
+
+import co.empathy.academy.search.utils.TitleAutocomplete;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Maps the typeahead of the published films index at startup, so the first completions do not wait for it
+ */
+@Configuration
+public class AutocompleteConfig {
+    public AutocompleteConfig(@Value("${autocomplete.path}") String path) {
+        TitleAutocomplete.open(Path.of(path));
+    }
+}
@@ -0,0 +1,41 @@
+package co.empathy.academy.search.configuration;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.empathy.academy.search.utils.ElasticConnection;
+import co.empathy.academy.search.utils.ElasticUtils;
+import org.elasticsearch.client.RestClient;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Creates the connection to Elasticsearch from the elastic properties. The same pool is used by the controllers,
+ * which get the clients injected, and by the rest of the classes through ElasticUtils
+ */
+@Configuration
+@EnableConfigurationProperties(ElasticProperties.class)
+public class ElasticConfig {
+    @Bean(destroyMethod = "close")
+    public ElasticConnection elasticConnection(ElasticProperties properties) throws IOException {
+        return ElasticUtils.connect(properties);
+    }
+
+    //The clients are closed with the connection
+    @Bean(destroyMethod = "")
+    public ElasticsearchClient elasticsearchClient(ElasticConnection connection) {
+        return connection.getClient();
+    }
+
+    @Bean(destroyMethod = "")
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticConnection connection) {
+        return connection.getAsyncClient();
+    }
+
+    @Bean(destroyMethod = "")
+    public RestClient restClient(ElasticConnection connection) {
+        return connection.getRestClient();
+    }
+}
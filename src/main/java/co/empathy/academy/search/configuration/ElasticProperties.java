@@ -0,0 +1,49 @@
+package co.empathy.academy.search.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the connection to Elasticsearch, read from the properties starting with elastic.
+ * The defaults are the ones used when there is no Spring context
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "elastic")
+public class ElasticProperties {
+    //Nodes the client starts with. Node discovery adds the rest of the cluster
+    private List<String> hosts = List.of("http://localhost:9200", "http://elasticsearch:9200");
+
+    private String username = "elastic";
+
+    private String password = "searchPathRules";
+
+    //Connections open at the same time to the whole cluster, and to each node
+    private int maxConnections = 200;
+
+    private int maxConnectionsPerNode = 100;
+
+    //Time an idle connection is kept open for the next requests
+    private Duration keepAlive = Duration.ofMinutes(1);
+
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    //Time without receiving any bytes of a response. Bulk requests of big loads need the most
+    private Duration socketTimeout = Duration.ofSeconds(60);
+
+    //Time a request waits for a free connection of the pool before failing
+    private Duration leaseTimeout = Duration.ofSeconds(10);
+
+    //Threads handling the sockets, one for each processor if it is 0
+    private int ioThreads = 0;
+
+    //How often the nodes of the cluster are discovered again. Discovery is disabled if it is 0
+    private Duration discoveryInterval = Duration.ZERO;
+
+    //How soon the nodes are discovered again after one of them fails
+    private Duration discoveryAfterFailureDelay = Duration.ofMinutes(1);
+}
@@ -0,0 +1,17 @@
+package co.empathy.academy.search.configuration;
+
+import co.empathy.academy.search.utils.BrowseLeaderboard;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Reads the leaderboard of the published films index at startup, so browsing is served locally from the first request
+ */
+@Configuration
+public class LeaderboardConfig {
+    public LeaderboardConfig(@Value("${leaderboard.path}") String path) {
+        BrowseLeaderboard.open(Path.of(path));
+    }
+}
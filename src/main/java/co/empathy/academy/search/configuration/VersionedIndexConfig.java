@@ -0,0 +1,16 @@
+package co.empathy.academy.search.configuration;
+
+import co.empathy.academy.search.utils.VersionedIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sets the replicas of the first index published, which has no previous index to copy them from.
+ * 0 by default, as the cluster of the docker compose has a single node and could never allocate them
+ */
+@Configuration
+public class VersionedIndexConfig {
+    public VersionedIndexConfig(@Value("${index.replicas:0}") int replicas) {
+        VersionedIndex.setFirstReplicas(replicas);
+    }
+}
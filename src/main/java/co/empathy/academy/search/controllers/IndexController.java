@@ -6,8 +6,19 @@ import co.elastic.clients.elasticsearch.indices.IndexState;
 import co.empathy.academy.search.exception.types.IndexAlreadyExistsException;
 import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
 import co.empathy.academy.search.exception.types.InternalServerException;
-import co.empathy.academy.search.utils.ElasticUtils;
+import co.empathy.academy.search.exception.types.JobDoesNotExistException;
+import co.empathy.academy.search.utils.Checkpoint;
+import co.empathy.academy.search.utils.ElasticConnection;
+import co.empathy.academy.search.utils.IndexingJob;
+import co.empathy.academy.search.utils.IndexingJobs;
 import co.empathy.academy.search.utils.IndexingUtils;
+import co.empathy.academy.search.utils.NameEnricher;
+import co.empathy.academy.search.utils.Popularity;
+import co.empathy.academy.search.utils.QueryCache;
+import co.empathy.academy.search.utils.VersionedIndex;
+import co.empathy.academy.search.utils.clases.CacheStats;
+import co.empathy.academy.search.utils.clases.ConnectionStats;
+import co.empathy.academy.search.utils.clases.JobStatus;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -16,7 +27,9 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Private controller used for creating indices and adding documents
@@ -25,8 +38,18 @@ import java.util.Map;
 @RestController
 @RequestMapping("/admin/api")
 public class IndexController {
+    //Alias of the published version of the films index
     private static final String INDEX = "films";
-    private final ElasticsearchClient client = ElasticUtils.getClient();
+    private static final String NAMES_INDEX = "names";
+    //Type of the jobs writing snapshots
+    private static final String SNAPSHOT = "snapshot";
+    private final ElasticConnection connection;
+    private final ElasticsearchClient client;
+
+    public IndexController(ElasticConnection connection) {
+        this.connection = connection;
+        this.client = connection.getClient();
+    }
 
     /**
      * Returns the name of the indices currently stored on the elastic container
@@ -80,7 +103,12 @@ public class IndexController {
     @DeleteMapping("/{index}")
     public boolean deleteIndex(@PathVariable String index) {
         try {
-            return client.indices().delete(c -> c.index(index)).acknowledged();
+            var result = client.indices().delete(c -> c.index(index)).acknowledged();
+            QueryCache.invalidate();
+            NameEnricher.invalidate();
+            VersionedIndex.forgetPublished();
+
+            return result;
         } catch(IOException e) {
             throw new InternalServerException("There was a problem connecting to ElasticSearch", e);
         } catch (ElasticsearchException e) {
@@ -88,74 +116,256 @@ public class IndexController {
         }
     }
 
-    private void tryCreateIndex() {
+    /**
+     * Checks that the published films index has the rank_feature of the popularity, which indices of older loads lack
+     */
+    private boolean hasPopularity() throws IOException, ElasticsearchException {
+        return client.indices().getFieldMapping(_0 -> _0.index(INDEX).fields(Popularity.FEATURE_FIELD)).result().values().stream()
+                .anyMatch(x -> x.mappings().containsKey(Popularity.FEATURE_FIELD));
+    }
+
+    private void tryCreateIndex(String index) {
         try {
             //Remove existing index
-            client.indices().delete(c -> c.index(INDEX));
+            client.indices().delete(c -> c.index(index));
         } catch(Exception e) {
             //in case the index does not exist, ignore and keep going
         }
     }
 
     /**
-     * Removes and creates the films index for resetting purposes.
-     * Then, id adds the mapping for the index
-     * Finally, it indexes every document given on the file and ratings path
+     * Creates a new version of the films index, puts its settings and mapping and indexes every document given on the paths.
+     * The films alias keeps pointing to the previous version until the new one is complete.
+     * On delta mode the published index is kept, and only the titles that changed since the previous load are sent.
+     * Delta loads need an index with the popularity of the titles, the ones of older loads have to be replaced by a full load first
      */
-    @Operation(summary = "Creates the field index, puts mapping and index the documents")
+    @Operation(summary = "Creates a new version of the films index, puts mapping and index the documents")
     @ApiResponse(responseCode = "200", description = "Operation successful", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "400", description = "Wrong request, or an index a delta load can not update", content = { @Content(mediaType = "application/json")})
     @ApiResponse(responseCode = "500", description = "Internal Error", content = { @Content(mediaType = "application/json")})
-    @Parameter(name = "filmsPath", description = "Local file path of the films tsv", required = true)
-    @Parameter(name = "ratingsPath", description = "Local file path of the ratings tsv", required = true)
-    @Parameter(name = "akasPath", description = "Local file path of the akas tsv", required = true)
-    @Parameter(name = "crewPath", description = "Local file path of the crew tsv", required = true)
-    @Parameter(name = "episodesPath", description = "Local file path of the episodes tsv", required = true)
-    @Parameter(name = "principalsPath", description = "Local file path of the principals tsv", required = true)
-    @Parameter(name = "nameBasicsPath", description = "Local file path of the name basics tsv", required = true)
+    @Parameter(name = "filmsPath", description = "Local file path of the films tsv, plain or gzipped", required = true)
+    @Parameter(name = "ratingsPath", description = "Local file path of the ratings tsv, plain or gzipped", required = true)
+    @Parameter(name = "akasPath", description = "Local file path of the akas tsv, plain or gzipped", required = true)
+    @Parameter(name = "crewPath", description = "Local file path of the crew tsv, plain or gzipped", required = true)
+    @Parameter(name = "episodesPath", description = "Local file path of the episodes tsv, plain or gzipped", required = true)
+    @Parameter(name = "principalsPath", description = "Local file path of the principals tsv, plain or gzipped", required = true)
+    @Parameter(name = "nameBasicsPath", description = "Local file path of the name basics tsv, plain or gzipped", required = true)
+    @Parameter(name = "delta", description = "If true, only sends the titles added, changed or removed since the previous load. The index must come from a full load that stored the popularity")
+    @Parameter(name = "resume", description = "If true, continues the last full load that did not finish from its checkpoint")
+    @Parameter(name = "sortInputs", description = "If true, the title files not sorted by tconst are sorted on disk first. Needed for filtered or third party files")
 
     @PostMapping("/index_documents")
-    public void indexDocuments(
+    public JobStatus indexDocuments(
             @RequestParam String filmsPath,
             @RequestParam String ratingsPath,
             @RequestParam String akasPath,
             @RequestParam String crewPath,
             @RequestParam String episodesPath,
             @RequestParam String principalsPath,
-            @RequestParam String nameBasicsPath) {
+            @RequestParam String nameBasicsPath,
+            @RequestParam(required = false) Optional<Boolean> delta,
+            @RequestParam(required = false) Optional<Boolean> resume,
+            @RequestParam(required = false) Optional<Boolean> sortInputs) {
+        boolean isDelta = delta.orElse(false);
+        IndexingJobs.checkNotRunning(INDEX);
+
+        try {
+            String target;
+            Checkpoint checkpoint = null;
+
+            if(resume.orElse(false)) {
+                if(isDelta)
+                    throw new IllegalArgumentException("Only full loads can be resumed");
+
+                checkpoint = Checkpoint.load(Checkpoint.path(filmsPath, INDEX))
+                        .orElseThrow(() -> new IllegalArgumentException("There is no load of '" + INDEX + "' to resume"));
+
+                var resumed = checkpoint.index();
+                if(!client.indices().exists(_0 -> _0.index(resumed)).value())
+                    throw new IndexDoesNotExistException("Index '" + resumed + "' of the load to resume does not exist", null);
+
+                target = resumed;
+            } else if(isDelta) {
+                if(!client.indices().exists(_0 -> _0.index(INDEX)).value())
+                    throw new IndexDoesNotExistException("Index '" + INDEX + "' does not exist, run a full load first", null);
+
+                //The searches rank by the popularity stored on the documents, which a delta load would only add to the titles that changed
+                if(!hasPopularity())
+                    throw new IllegalArgumentException("Index '" + INDEX + "' was loaded before the popularity was stored, run a full load first");
+
+                target = INDEX;
+            } else {
+                //Create the next version of the index for storing films
+                target = VersionedIndex.create(INDEX, "custom_standard_analyzer.json", "mapping.json");
+            }
+
+            var resumeFrom = checkpoint;
+            return IndexingJobs.start(INDEX, target, job -> new IndexingUtils(job).indexData(
+                    filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalsPath, nameBasicsPath, target, isDelta, sortInputs.orElse(false), resumeFrom)).getStatus();
+
+        } catch(IOException | ElasticsearchException e) {
+            throw new InternalServerException("There was a problem processing your request", e);
+        }
+    }
+
+    /**
+     * Joins the title files and writes them to a binary snapshot, from which the films index can be rebuilt without parsing them
+     */
+    @Operation(summary = "Writes the joined title files to a snapshot")
+    @ApiResponse(responseCode = "200", description = "Operation successful", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "500", description = "Internal Error", content = { @Content(mediaType = "application/json")})
+    @Parameter(name = "filmsPath", description = "Local file path of the films tsv, plain or gzipped", required = true)
+    @Parameter(name = "ratingsPath", description = "Local file path of the ratings tsv, plain or gzipped", required = true)
+    @Parameter(name = "akasPath", description = "Local file path of the akas tsv, plain or gzipped", required = true)
+    @Parameter(name = "crewPath", description = "Local file path of the crew tsv, plain or gzipped", required = true)
+    @Parameter(name = "episodesPath", description = "Local file path of the episodes tsv, plain or gzipped", required = true)
+    @Parameter(name = "principalsPath", description = "Local file path of the principals tsv, plain or gzipped", required = true)
+    @Parameter(name = "nameBasicsPath", description = "Local file path of the name basics tsv, plain or gzipped", required = true)
+    @Parameter(name = "snapshotPath", description = "Local file path the snapshot is written to", required = true)
+    @PostMapping("/write_snapshot")
+    public JobStatus writeSnapshot(
+            @RequestParam String filmsPath,
+            @RequestParam String ratingsPath,
+            @RequestParam String akasPath,
+            @RequestParam String crewPath,
+            @RequestParam String episodesPath,
+            @RequestParam String principalsPath,
+            @RequestParam String nameBasicsPath,
+            @RequestParam String snapshotPath) {
+        return IndexingJobs.start(SNAPSHOT, snapshotPath, job -> new IndexingUtils(job).writeSnapshot(
+                filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalsPath, nameBasicsPath, snapshotPath)).getStatus();
+    }
+
+    /**
+     * Creates a new version of the films index and indexes every title of a snapshot on it.
+     * The films alias keeps pointing to the previous version until the new one is complete
+     */
+    @Operation(summary = "Creates a new version of the films index from a snapshot")
+    @ApiResponse(responseCode = "200", description = "Operation successful", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "500", description = "Internal Error", content = { @Content(mediaType = "application/json")})
+    @Parameter(name = "snapshotPath", description = "Local file path of a snapshot written by write_snapshot", required = true)
+    @PostMapping("/index_snapshot")
+    public JobStatus indexSnapshot(@RequestParam String snapshotPath) {
+        IndexingJobs.checkNotRunning(INDEX);
+
         try {
-            tryCreateIndex();
+            var target = VersionedIndex.create(INDEX, "custom_standard_analyzer.json", "mapping.json");
 
-            //Create the index for storing films
-            client.indices().create(c -> c.index(INDEX));
+            return IndexingJobs.start(INDEX, target, job -> new IndexingUtils(job).indexSnapshot(snapshotPath, target)).getStatus();
 
-            putSettings();
+        } catch(IOException | ElasticsearchException e) {
+            throw new InternalServerException("There was a problem processing your request", e);
+        }
+    }
 
-            //Inserts the mapping for the films collection
-            putMapping();
+    /**
+     * Removes and creates the names index, puts its mapping and indexes every person of the name basics file
+     */
+    @Operation(summary = "Creates the names index, puts mapping and index the people")
+    @ApiResponse(responseCode = "200", description = "Operation successful", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "500", description = "Internal Error", content = { @Content(mediaType = "application/json")})
+    @Parameter(name = "nameBasicsPath", description = "Local file path of the name basics tsv, plain or gzipped", required = true)
+    @PostMapping("/index_names")
+    public JobStatus indexNames(@RequestParam String nameBasicsPath) {
+        IndexingJobs.checkNotRunning(NAMES_INDEX);
 
-            new Thread(() -> new IndexingUtils().indexData(filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalsPath, nameBasicsPath)).start();
+        try {
+            tryCreateIndex(NAMES_INDEX);
+
+            client.indices().create(c -> c.index(NAMES_INDEX));
+
+            putMapping(NAMES_INDEX, "names_mapping.json");
+
+            return IndexingJobs.start(NAMES_INDEX, NAMES_INDEX, job -> new IndexingUtils(job).indexNames(nameBasicsPath)).getStatus();
 
         } catch(IOException | ElasticsearchException e) {
             throw new InternalServerException("There was a problem processing your request", e);
         }
     }
 
-    private void putSettings() throws IOException, ElasticsearchException {
-        client.indices().close(_0 -> _0.index(INDEX));
+    /**
+     * Returns the status of every indexing job known, the oldest first
+     */
+    @Operation(summary = "Returns the status of the indexing jobs")
+    @ApiResponse(responseCode = "200", description = "Jobs obtained", content = { @Content(mediaType = "application/json")})
+    @GetMapping("/jobs")
+    public List<JobStatus> getJobs() {
+        return IndexingJobs.list().stream().map(IndexingJob::getStatus).toList();
+    }
 
-        var customStandard = getClass().getClassLoader().getResourceAsStream("custom_standard_analyzer.json");
+    /**
+     * Returns the progress of an indexing job: documents and bytes per second, bulk latency percentiles and estimated time left
+     * @param id of the job, returned when the load was started
+     */
+    @Operation(summary = "Returns the progress of an indexing job")
+    @ApiResponse(responseCode = "200", description = "Job obtained", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "400", description = "Job does not exist", content = { @Content(mediaType = "application/json")})
+    @Parameter(name = "id", description = "Id of the job", required = true)
+    @GetMapping("/jobs/{id}")
+    public JobStatus getJob(@PathVariable String id) {
+        return getIndexingJob(id).getStatus();
+    }
+
+    /**
+     * Cancels an indexing job. The index of a cancelled full load is removed, and the published one is kept
+     * @param id of the job, returned when the load was started
+     */
+    @Operation(summary = "Cancels an indexing job")
+    @ApiResponse(responseCode = "200", description = "Job cancelled", content = { @Content(mediaType = "application/json")})
+    @ApiResponse(responseCode = "400", description = "Job does not exist", content = { @Content(mediaType = "application/json")})
+    @Parameter(name = "id", description = "Id of the job", required = true)
+    @DeleteMapping("/jobs/{id}")
+    public JobStatus cancelJob(@PathVariable String id) {
+        var job = getIndexingJob(id);
+        job.cancel();
+
+        return job.getStatus();
+    }
+
+    /**
+     * Returns the figures of the cache of the searches, for tuning its capacity
+     */
+    @Operation(summary = "Returns the hit ratio and size of the query cache")
+    @ApiResponse(responseCode = "200", description = "Figures obtained", content = { @Content(mediaType = "application/json")})
+    @GetMapping("/cache")
+    public CacheStats getCacheStats() {
+        return QueryCache.getStats();
+    }
 
-        client.indices().putSettings(_0 -> _0.withJson(customStandard));
+    /**
+     * Removes every response of the cache of the searches
+     */
+    @Operation(summary = "Empties the query cache")
+    @ApiResponse(responseCode = "200", description = "Cache emptied", content = { @Content(mediaType = "application/json")})
+    @DeleteMapping("/cache")
+    public CacheStats clearCache() {
+        QueryCache.invalidate();
+
+        return QueryCache.getStats();
+    }
+
+    /**
+     * Returns the state of the pool of connections to Elasticsearch, the time requests wait for a connection and the latency of each node
+     */
+    @Operation(summary = "Returns the usage of the connections to Elasticsearch")
+    @ApiResponse(responseCode = "200", description = "Figures obtained", content = { @Content(mediaType = "application/json")})
+    @GetMapping("/connections")
+    public ConnectionStats getConnectionStats() {
+        return connection.getStats();
+    }
 
-        client.indices().open(_0 -> _0.index(INDEX));
+    private IndexingJob getIndexingJob(String id) {
+        return IndexingJobs.get(id).orElseThrow(() -> new JobDoesNotExistException("Job '" + id + "' does not exist"));
     }
 
     /**
-     * Puts the mapping for the field index
+     * Puts the mapping for the index given
+     * @param index name of the index
+     * @param resource file with the mapping
      */
-    private void putMapping() throws IOException, ElasticsearchException {
-        var mapping = getClass().getClassLoader().getResourceAsStream("mapping.json");
+    private void putMapping(String index, String resource) throws IOException, ElasticsearchException {
+        var mapping = getClass().getClassLoader().getResourceAsStream(resource);
 
-        client.indices().putMapping(_0 -> _0.index(INDEX).withJson(mapping));
+        client.indices().putMapping(_0 -> _0.index(index).withJson(mapping));
     }
 }
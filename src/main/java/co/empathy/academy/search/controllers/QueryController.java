@@ -1,16 +1,36 @@
 package co.empathy.academy.search.controllers;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
 import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.Rescore;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.elasticsearch.core.search.ScoreMode;
 import co.elastic.clients.json.JsonData;
-import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
-import co.empathy.academy.search.exception.types.InternalServerException;
+import co.empathy.academy.search.utils.BrowseLeaderboard;
+import co.empathy.academy.search.utils.CursorCodec;
 import co.empathy.academy.search.utils.ElasticUtils;
+import co.empathy.academy.search.utils.HitStreamer;
+import co.empathy.academy.search.utils.MultiSearch;
+import co.empathy.academy.search.utils.NameEnricher;
+import co.empathy.academy.search.utils.Popularity;
+import co.empathy.academy.search.utils.QueryCache;
+import co.empathy.academy.search.utils.SourceProjection;
 import co.empathy.academy.search.utils.SuggestionSearch;
+import co.empathy.academy.search.utils.TitleAutocomplete;
+import co.empathy.academy.search.utils.TypeaheadBuilder;
+import co.empathy.academy.search.utils.TypeaheadIndex;
+import co.empathy.academy.search.utils.clases.Completion;
+import co.empathy.academy.search.utils.clases.SearchCursor;
+import co.empathy.academy.search.utils.clases.SearchSpec;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -18,25 +38,56 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "Query controller", description = "Allows to perform queries on the IMDB database")
 @RestController
 @RequestMapping("/api")
 public class QueryController {
-    private final ElasticsearchClient client = ElasticUtils.getClient();
+    private static final String INDEX = "films";
+    //Time a point in time of a cursor pagination is kept between two pages
+    private static final String CURSOR_KEEP_ALIVE = "1m";
+    //Value of the cursor parameter starting a new pagination
+    private static final String FIRST_PAGE = "*";
+    private static final int DEFAULT_SIZE = 10;
+    //Hits rescored by their exact popularity at least, more if the page goes deeper. Hits ranked below it are never rescored
+    private static final int RESCORE_WINDOW = 500;
+    //Searches a batch can have, so a single request can not take too much of the cluster
+    private static final int MAX_BATCH_SEARCHES = 50;
+    private static final int DEFAULT_COMPLETIONS = 10;
+    private static final int MAX_COMPLETIONS = 50;
+    private static final Logger logger = LoggerFactory.getLogger(QueryController.class);
+    //The searches complete futures, so no servlet thread waits for Elasticsearch
+    private final ElasticsearchAsyncClient client;
+    private final RestClient restClient;
+
+    public QueryController(ElasticsearchAsyncClient client, RestClient restClient) {
+        this.client = client;
+        this.restClient = restClient;
+    }
 
     /**
-     * Returns the name of the indices currently stored on the elastic container
-     * @return Json with the names
+     * Runs a search on the films index. The responses are cached until they expire or a load finishes.
+     * With a cursor, the hits are paged with search_after on a point in time instead, so deep pages cost the same as the first one
+     * @return Json with the hits, and the buckets if an aggregation was asked. With a cursor, also the one of the next page
      */
     @Operation(summary = "Performs a query on the database")
     @Parameter(name = "q", description = "String with the query. Mandatory field")
@@ -47,11 +98,18 @@ public class QueryController {
     @Parameter(name = "from", description = "Number of hits that is going to be skipped")
     @Parameter(name = "size", description = "Size of hits to be returned")
     @Parameter(name = "directorId", description = "Id of the director for getting his films")
+    @Parameter(name = "preset", description = "Fields of the sources returned: card for the title, year, rating and genres, or full for the whole documents. Full by default")
+    @Parameter(name = "fields", description = "Fields of the sources returned besides the ones of the preset, which the full preset returns already. Can be one or more, separated by commas")
+    @Parameter(name = "exclude", description = "Fields removed from the sources returned. Can be one or more, separated by commas")
+    @Parameter(name = "enrich", description = "If true, directors and principals are replaced with their documents of the names index")
+    @Parameter(name = "cursor", description = "Pages with a cursor instead of from: * for the first page, then the cursor returned with the previous one. It is null on the last page")
     @ApiResponse(responseCode = "200", description="Documents obtained", content = { @Content(mediaType= "application/json")})
     @ApiResponse(responseCode = "400", description="Wrong request", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "410", description="The cursor has expired", content = { @Content(mediaType= "application/json")})
     @ApiResponse(responseCode = "500", description="Server Internal Error", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "503", description="ElasticSearch is overloaded", content = { @Content(mediaType= "application/json")})
     @GetMapping("/search")
-    public String search(
+    public CompletableFuture<String> search(
             @RequestParam String q,
             @RequestParam(required = false) Optional<List<String>> type,
             @RequestParam(required = false) Optional<List<String>> genre,
@@ -59,16 +117,322 @@ public class QueryController {
             @RequestParam(required = false) Optional<String> gte,
             @RequestParam(required = false) Optional<String> from,
             @RequestParam(required = false) Optional<String> size,
-            @RequestParam(required = false) Optional<String> directorId) {
+            @RequestParam(required = false) Optional<String> directorId,
+            @RequestParam(required = false) Optional<String> preset,
+            @RequestParam(required = false) Optional<List<String>> fields,
+            @RequestParam(required = false) Optional<List<String>> exclude,
+            @RequestParam(required = false) Optional<Boolean> enrich,
+            @RequestParam(required = false) Optional<String> cursor) {
+
+        //Every pagination has its own point in time, so its pages are not cached
+        if(cursor.isPresent())
+            return runCursorQuery(cursor.get(), q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude, enrich);
+
+        var key = cacheKey(q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude, enrich);
+
+        return QueryCache.getAsync(key, () -> runQuery(q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude, enrich));
+    }
 
-        var request = new SearchRequest.Builder().index("films");
+    /**
+     * Builds a key equal for every request returning the same response: the lists are sorted
+     * and the missing parameters take the value Elasticsearch gives them
+     */
+    private String cacheKey(String q, Optional<List<String>> type, Optional<List<String>> genre, Optional<String> agg, Optional<String> gte,
+                            Optional<String> from, Optional<String> size, Optional<String> directorId, Optional<String> preset,
+                            Optional<List<String>> fields, Optional<List<String>> exclude, Optional<Boolean> enrich) {
+        return String.join("\u0000",
+                q.trim(),
+                type.map(x -> x.stream().sorted().distinct().toList().toString()).orElse(""),
+                genre.map(x -> x.stream().sorted().distinct().toList().toString()).orElse(""),
+                agg.orElse(""),
+                gte.map(String::trim).orElse(""),
+                String.valueOf(from.map(x -> Integer.valueOf(x.trim())).orElse(0)),
+                String.valueOf(size.map(x -> Integer.valueOf(x.trim())).orElse(DEFAULT_SIZE)),
+                directorId.orElse(""),
+                preset.map(String::trim).orElse(SourceProjection.FULL),
+                fields.map(x -> x.stream().sorted().distinct().toList().toString()).orElse(""),
+                exclude.map(x -> x.stream().sorted().distinct().toList().toString()).orElse(""),
+                String.valueOf(enrich.orElse(false)));
+    }
+
+    private CompletableFuture<String> runQuery(String q, Optional<List<String>> type, Optional<List<String>> genre, Optional<String> agg, Optional<String> gte,
+                                               Optional<String> from, Optional<String> size, Optional<String> directorId, Optional<String> preset,
+                                               Optional<List<String>> fields, Optional<List<String>> exclude, Optional<Boolean> enrich) {
+        //Browsing without aggregations is served from the leaderboard, unless it can not tell the page for sure
+        if(q.isBlank() && agg.isEmpty() && directorId.isEmpty()) {
+            var page = BrowseLeaderboard.page(type.orElse(List.of()), genre.orElse(List.of()), gte.map(x -> Double.valueOf(x.trim())).orElse(null),
+                    from.map(x -> Integer.parseInt(x.trim())).orElse(0), size.map(x -> Integer.parseInt(x.trim())).orElse(DEFAULT_SIZE));
+
+            //An empty page is searched anyway, so it gets the same response as from Elasticsearch
+            if(page.isPresent() && !page.get().isEmpty())
+                return getDocuments(page.get(), preset, fields, exclude, enrich.orElse(false));
+        }
 
-        from.ifPresent(f -> request.from(Integer.valueOf(f)));
-        size.ifPresent(s -> request.size(Integer.valueOf(s)));
+        var request = buildSearch(q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude).index(INDEX).build();
+
+        return runSearch(request).thenCompose(response -> getSearchResult(response, agg, enrich));
+    }
+
+    /**
+     * Fetches the documents of a page of hits with a single multi-get, and returns them in the order given like a search would
+     */
+    private CompletableFuture<String> getDocuments(List<String> ids, Optional<String> preset, Optional<List<String>> fields,
+                                                   Optional<List<String>> exclude, boolean enrich) {
+        var request = new MgetRequest.Builder().index(INDEX).ids(ids);
+        SourceProjection.addProjection(preset, fields, exclude, request);
+
+        return client.mget(request.build(), JsonData.class)
+                .handle((response, e) -> {
+                    if(e != null)
+                        throw ElasticUtils.toApiException(e);
+
+                    return response.docs().stream()
+                            .filter(x -> x.isResult() && x.result().found() && x.result().source() != null)
+                            .map(MultiGetResponseItem::result)
+                            .toList();
+                })
+                .thenCompose(documents -> getHits(documents.stream().map(GetResult::id).toList(),
+                        documents.stream().map(x -> x.source().toJson().asJsonObject()).toList(), enrich))
+                .thenApply(hits -> Json.createObjectBuilder().add("hits", hits).build().toString());
+    }
+
+    /**
+     * Returns the hits of a search, or the suggestions that came with it if it has neither hits nor buckets
+     */
+    private CompletableFuture<String> getSearchResult(ResponseBody<JsonData> response, Optional<String> agg, Optional<Boolean> enrich) {
+        if(response.hits().hits().isEmpty() && response.aggregations().size() == 0) {
+            return CompletableFuture.completedFuture(SuggestionSearch.getResult(response));
+        } else {
+            return getResult(response, agg.orElse(null), enrich.orElse(false));
+        }
+    }
+
+    /**
+     * Runs several searches on a single request to Elasticsearch, for the pages showing many lists of titles at once.
+     * Each search is cached like the ones of the search endpoint, and only the ones not cached are sent
+     * @return Json array with the result of each search, on the same order. A search that failed gets its error and status instead
+     */
+    @Operation(summary = "Performs several queries on the database at once")
+    @ApiResponse(responseCode = "200", description="Documents obtained", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "400", description="Wrong request", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "500", description="Server Internal Error", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "503", description="ElasticSearch is overloaded", content = { @Content(mediaType= "application/json")})
+    @PostMapping("/search/batch")
+    public CompletableFuture<String> batchSearch(@RequestBody List<SearchSpec> searches) {
+        if(searches.isEmpty() || searches.size() > MAX_BATCH_SEARCHES)
+            throw new IllegalArgumentException("A batch must have from 1 to " + MAX_BATCH_SEARCHES + " searches");
+
+        if(searches.stream().anyMatch(x -> x == null || x.q() == null))
+            throw new IllegalArgumentException("Every search of a batch must have a q");
+
+        long generation = QueryCache.generation();
+        var keys = searches.stream().map(this::cacheKey).toList();
+        var results = new String[searches.size()];
+        List<Integer> missing = new ArrayList<>();
+
+        for(int i = 0; i < searches.size(); i++) {
+            results[i] = QueryCache.lookup(keys.get(i));
+
+            if(results[i] == null)
+                missing.add(i);
+        }
+
+        if(missing.isEmpty())
+            return CompletableFuture.completedFuture("[" + String.join(",", results) + "]");
+
+        var requests = missing.stream().map(i -> buildSearch(searches.get(i)).index(INDEX).build()).toList();
+
+        return MultiSearch.search(restClient, client._jsonpMapper(), INDEX, requests).thenCompose(responses -> {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+            for(int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                var search = searches.get(i);
+                var item = responses.get(j);
+
+                if(item.isFailure()) {
+                    results[i] = getFailure(item.failure());
+                } else {
+                    pending.add(getSearchResult(item.result(), Optional.ofNullable(search.agg()), Optional.ofNullable(search.enrich()))
+                            .thenAccept(result -> {
+                                results[i] = result;
+                                QueryCache.put(keys.get(i), result, generation);
+                            }));
+                }
+            }
+
+            return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                    .thenApply(x -> "[" + String.join(",", results) + "]");
+        });
+    }
+
+    private String cacheKey(SearchSpec search) {
+        return cacheKey(search.q(), Optional.ofNullable(search.type()), Optional.ofNullable(search.genre()), Optional.ofNullable(search.agg()),
+                Optional.ofNullable(search.gte()), Optional.ofNullable(search.from()), Optional.ofNullable(search.size()),
+                Optional.ofNullable(search.directorId()), Optional.ofNullable(search.preset()), Optional.ofNullable(search.fields()),
+                Optional.ofNullable(search.exclude()), Optional.ofNullable(search.enrich()));
+    }
+
+    private SearchRequest.Builder buildSearch(SearchSpec search) {
+        return buildSearch(search.q(), Optional.ofNullable(search.type()), Optional.ofNullable(search.genre()), Optional.ofNullable(search.agg()),
+                Optional.ofNullable(search.gte()), Optional.ofNullable(search.from()), Optional.ofNullable(search.size()),
+                Optional.ofNullable(search.directorId()), Optional.ofNullable(search.preset()), Optional.ofNullable(search.fields()),
+                Optional.ofNullable(search.exclude()));
+    }
+
+    /**
+     * Result of a search of a batch that failed, so the rest of them are still returned
+     */
+    private String getFailure(ErrorResponse failure) {
+        var error = failure.error();
+
+        return Json.createObjectBuilder()
+                .add("error", error.reason() != null ? error.reason() : error.type())
+                .add("status", failure.status())
+                .build()
+                .toString();
+    }
+
+    /**
+     * Runs a page of a cursor pagination. Hits are sorted by score and then by tconst, so every hit has a distinct position to continue from.
+     * The buckets of the aggregation come only with the first page, and the point in time is closed after the last one
+     */
+    private CompletableFuture<String> runCursorQuery(String token, String q, Optional<List<String>> type, Optional<List<String>> genre,
+                                                     Optional<String> agg, Optional<String> gte, Optional<String> from, Optional<String> size,
+                                                     Optional<String> directorId, Optional<String> preset, Optional<List<String>> fields,
+                                                     Optional<List<String>> exclude, Optional<Boolean> enrich) {
+        if(from.isPresent())
+            throw new IllegalArgumentException("from can not be used with a cursor, each page starts after the previous one");
+
+        boolean firstPage = token.isBlank() || token.trim().equals(FIRST_PAGE);
+        var start = firstPage ? openPointInTime().thenApply(x -> new SearchCursor(x, List.of()))
+                : CompletableFuture.completedFuture(CursorCodec.decode(token));
+        var pageAgg = firstPage ? agg : Optional.<String>empty();
+        int pageSize = size.map(x -> Integer.valueOf(x.trim())).orElse(DEFAULT_SIZE);
+
+        return start.thenCompose(cursor -> {
+            var request = buildSearch(q, type, genre, pageAgg, gte, Optional.empty(), size, directorId, preset, fields, exclude, true)
+                    .pit(_0 -> _0.id(cursor.pitId()).keepAlive(_1 -> _1.time(CURSOR_KEEP_ALIVE)))
+                    .sort(_0 -> _0.score(_1 -> _1.order(SortOrder.Desc)))
+                    .sort(_0 -> _0.field(_1 -> _1.field("tconst").order(SortOrder.Asc)));
+
+            if(!cursor.searchAfter().isEmpty())
+                request.searchAfter(cursor.searchAfter());
+
+            //Only the first page can come back empty without a previous one
+            if(firstPage && !q.isBlank())
+                SuggestionSearch.addSuggestions(q.trim(), request);
+
+            return runSearch(request.build()).thenCompose(response -> {
+                var hits = response.hits().hits();
+                //Elasticsearch can give a new id to the point in time on each search
+                var pitId = response.pitId() != null ? response.pitId() : cursor.pitId();
+
+                if(hits.size() < pageSize || pageSize == 0) {
+                    closePointInTime(pitId);
+
+                    if(firstPage && hits.isEmpty() && response.aggregations().size() == 0)
+                        return CompletableFuture.completedFuture(SuggestionSearch.getResult(response));
+
+                    return getResult(response, pageAgg.orElse(null), enrich.orElse(false), null);
+                }
+
+                var next = CursorCodec.encode(new SearchCursor(pitId, hits.get(hits.size() - 1).sort()));
+
+                return getResult(response, pageAgg.orElse(null), enrich.orElse(false), next);
+            });
+        });
+    }
+
+    private CompletableFuture<String> openPointInTime() {
+        return client.openPointInTime(_0 -> _0.index(INDEX).keepAlive(_1 -> _1.time(CURSOR_KEEP_ALIVE)))
+                .handle((response, e) -> {
+                    if(e != null)
+                        throw ElasticUtils.toApiException(e);
+
+                    return response.id();
+                });
+    }
+
+    /**
+     * Frees the point in time of a finished pagination, without waiting for it.
+     * It expires on its own anyway, so failing to close it is not an error
+     */
+    private void closePointInTime(String pitId) {
+        client.closePointInTime(_0 -> _0.id(pitId)).whenComplete((response, e) -> {
+            if(e != null)
+                logger.warn("Could not close the point in time of a cursor", e);
+        });
+    }
+
+    /**
+     * Runs the same search as the search endpoint, copying the source of the hits from the response of Elasticsearch
+     * to the output as they are read, without building them in memory. Meant for big pages, so the responses are not cached
+     * @return the hits, and the buckets if an aggregation was asked
+     */
+    @Operation(summary = "Performs a query on the database, streaming the hits to the response")
+    @Parameter(name = "q", description = "String with the query. Mandatory field")
+    @Parameter(name = "type", description = "Title type. It must match exactly. Can be one or more, separated by commas")
+    @Parameter(name = "genre", description = "Genre of the field. It must match exactly. Can be one or more, separated by commas")
+    @Parameter(name = "agg", description = "Field for aggregating the query. It must match exactly")
+    @Parameter(name = "gte", description = "Specify a value and only films with higher averageRating will be shown. Expects number with a decimal")
+    @Parameter(name = "from", description = "Number of hits that is going to be skipped")
+    @Parameter(name = "size", description = "Size of hits to be returned")
+    @Parameter(name = "directorId", description = "Id of the director for getting his films")
+    @Parameter(name = "preset", description = "Fields of the sources returned: card for the title, year, rating and genres, or full for the whole documents. Full by default")
+    @Parameter(name = "fields", description = "Fields of the sources returned besides the ones of the preset, which the full preset returns already. Can be one or more, separated by commas")
+    @Parameter(name = "exclude", description = "Fields removed from the sources returned. Can be one or more, separated by commas")
+    @ApiResponse(responseCode = "200", description="Documents obtained", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "400", description="Wrong request", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "500", description="Server Internal Error", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "503", description="ElasticSearch is overloaded", content = { @Content(mediaType= "application/json")})
+    @GetMapping(value = "/search/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<StreamingResponseBody> streamSearch(
+            @RequestParam String q,
+            @RequestParam(required = false) Optional<List<String>> type,
+            @RequestParam(required = false) Optional<List<String>> genre,
+            @RequestParam(required = false) Optional<String> agg,
+            @RequestParam(required = false) Optional<String> gte,
+            @RequestParam(required = false) Optional<String> from,
+            @RequestParam(required = false) Optional<String> size,
+            @RequestParam(required = false) Optional<String> directorId,
+            @RequestParam(required = false) Optional<String> preset,
+            @RequestParam(required = false) Optional<List<String>> fields,
+            @RequestParam(required = false) Optional<List<String>> exclude) {
+
+        var search = buildSearch(q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude).build();
+        //The body is only written once the search succeeds, so the errors of Elasticsearch are handled like on the rest of the searches
+        return HitStreamer.search(restClient, client._jsonpMapper(), INDEX, search)
+                .thenApply(response -> output -> HitStreamer.write(response, agg.orElse(null), client._jsonpMapper(), output));
+    }
+
+    private SearchRequest.Builder buildSearch(String q, Optional<List<String>> type, Optional<List<String>> genre, Optional<String> agg, Optional<String> gte,
+                                      Optional<String> from, Optional<String> size, Optional<String> directorId, Optional<String> preset,
+                                      Optional<List<String>> fields, Optional<List<String>> exclude) {
+        var request = buildSearch(q, type, genre, agg, gte, from, size, directorId, preset, fields, exclude, false);
+
+        //The suggestions come with the hits, so a search without them needs no second request. A blank query has nothing to correct
+        if(!q.isBlank())
+            SuggestionSearch.addSuggestions(q.trim(), request);
+
+        return request;
+    }
+
+    /**
+     * Builds the search of the search endpoints, without its index so it can also run on a point in time
+     * @param sorted if the hits are going to be sorted by something else besides the score, which can not be done with a rescore
+     */
+    private SearchRequest.Builder buildSearch(String q, Optional<List<String>> type, Optional<List<String>> genre, Optional<String> agg, Optional<String> gte,
+                                      Optional<String> from, Optional<String> size, Optional<String> directorId, Optional<String> preset,
+                                      Optional<List<String>> fields, Optional<List<String>> exclude, boolean sorted) {
+        var request = new SearchRequest.Builder();
+
+        from.ifPresent(f -> request.from(Integer.valueOf(f.trim())));
+        size.ifPresent(s -> request.size(Integer.valueOf(s.trim())));
 
         var boolQuery = new BoolQuery.Builder();
 
-        addSearch(q, boolQuery);
+        addSearch(q.trim(), boolQuery);
 
         type.ifPresent(strings -> addTermFilter("titleType", strings, boolQuery));
 
@@ -78,31 +442,43 @@ public class QueryController {
 
         removeAdultFilms(boolQuery);
 
-        var functionScoreQuery = getFunctionScoreQuery(boolQuery);
+        var query = boolQuery.build()._toQuery();
 
-        request.query(_0 -> _0.functionScore(functionScoreQuery));
+        if(sorted) {
+            request.query(_0 -> _0.functionScore(getFunctionScoreQuery(query)));
+        } else {
+            int window = from.map(x -> Integer.parseInt(x.trim())).orElse(0) + size.map(x -> Integer.parseInt(x.trim())).orElse(DEFAULT_SIZE);
+
+            request.query(getRankFeatureQuery(query))
+                    .rescore(getPopularityRescore(query, Math.max(window, RESCORE_WINDOW)));
+        }
 
         directorId.ifPresent(i -> addDirectorFilter(i, boolQuery));
 
         agg.ifPresent(s -> addAgg(s, request));
 
-        var response = runSearch(request.build());
+        SourceProjection.addProjection(preset, fields, exclude, request);
 
-        if(response.hits().hits().isEmpty() && response.aggregations().size() == 0) {
-            return SuggestionSearch.run(q);
-        } else {
-            return getResult(response, agg.orElse(null));
-        }
+        return request;
     }
 
     @Operation(summary = "Retrieves the document with the specified index")
     @Parameter(name = "id", description = "Id of the document. Mandatory field")
+    @Parameter(name = "preset", description = "Fields of the sources returned: card for the title, year, rating and genres, or full for the whole documents. Full by default")
+    @Parameter(name = "fields", description = "Fields of the sources returned besides the ones of the preset, which the full preset returns already. Can be one or more, separated by commas")
+    @Parameter(name = "exclude", description = "Fields removed from the sources returned. Can be one or more, separated by commas")
+    @Parameter(name = "enrich", description = "If true, directors and principals are replaced with their documents of the names index")
     @ApiResponse(responseCode = "200", description="Documents obtained", content = { @Content(mediaType= "application/json")})
     @ApiResponse(responseCode = "400", description="Wrong request", content = { @Content(mediaType= "application/json")})
     @ApiResponse(responseCode = "500", description="Server Internal Error", content = { @Content(mediaType= "application/json")})
     @GetMapping("/id_search")
-    public String idSearch(@RequestParam String id) {
-        var request = new SearchRequest.Builder().index("films");
+    public CompletableFuture<String> idSearch(
+            @RequestParam String id,
+            @RequestParam(required = false) Optional<String> preset,
+            @RequestParam(required = false) Optional<List<String>> fields,
+            @RequestParam(required = false) Optional<List<String>> exclude,
+            @RequestParam(required = false) Optional<Boolean> enrich) {
+        var request = new SearchRequest.Builder().index(INDEX);
 
         request.query(_0 -> _0
                 .match(_1 -> _1
@@ -111,36 +487,153 @@ public class QueryController {
                 )
         );
 
-        var response = runSearch(request.build());
+        SourceProjection.addProjection(preset, fields, exclude, request);
 
-        return getResult(response, null);
+        return runSearch(request.build()).thenCompose(response -> getResult(response, null, enrich.orElse(false)));
     }
 
-    private FunctionScoreQuery getFunctionScoreQuery(BoolQuery.Builder boolQuery) {
-        var nVotesValueFactor = FieldValueFactorScoreFunction.of(_0 -> _0
-                .field("numVotes")
-                .missing(0.1)
-                .modifier(FieldValueFactorModifier.Log1p)
-                .factor(2D)
-        );
+    /**
+     * Completes the title being typed from the typeahead built by the last load, without calling Elasticsearch.
+     * If it is missing or of another index than the published one, the titles are searched on Elasticsearch instead
+     * @return Json array with the best titles starting by the text, or with a word starting by it. The more votes and the better rating, the sooner
+     */
+    @Operation(summary = "Completes the title being typed")
+    @Parameter(name = "q", description = "Beginning of the title, or of any of its words. Case and accents are ignored. Mandatory field")
+    @Parameter(name = "size", description = "Maximum number of titles returned, up to " + MAX_COMPLETIONS + ". " + DEFAULT_COMPLETIONS + " by default")
+    @ApiResponse(responseCode = "200", description="Titles obtained", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "400", description="Wrong request, or the films index does not exist", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "500", description="Server Internal Error", content = { @Content(mediaType= "application/json")})
+    @ApiResponse(responseCode = "503", description="ElasticSearch is overloaded", content = { @Content(mediaType= "application/json")})
+    @GetMapping("/autocomplete")
+    public CompletableFuture<String> autocomplete(@RequestParam String q, @RequestParam(required = false) Optional<Integer> size) {
+        int completions = size.orElse(DEFAULT_COMPLETIONS);
 
-        var scoreValueFactor = FieldValueFactorScoreFunction.of(_0 -> _0
-                .field("averageRating")
-                .missing(0.1)
-                .modifier(FieldValueFactorModifier.Ln1p)
-                .factor(2D)
-        );
+        if(completions < 1 || completions > MAX_COMPLETIONS)
+            throw new IllegalArgumentException("size must be from 1 to " + MAX_COMPLETIONS);
+
+        var typeahead = TitleAutocomplete.complete(q, completions);
+
+        if(typeahead.isPresent()) {
+            var result = Json.createArrayBuilder();
+            typeahead.get().forEach(x -> result.add(getCompletion(x)));
+
+            return CompletableFuture.completedFuture(result.build().toString());
+        }
+
+        return searchCompletions(q, completions);
+    }
+
+    /**
+     * Searches the titles starting by the text, or with a word starting by it, the most popular first.
+     * Their score is the weight the typeahead gives them, so both return the same Json
+     */
+    private CompletableFuture<String> searchCompletions(String q, int size) {
+        if(TypeaheadIndex.normalize(q).isEmpty())
+            return CompletableFuture.completedFuture(Json.createArrayBuilder().build().toString());
+
+        var request = new SearchRequest.Builder()
+                .index(INDEX)
+                .size(size)
+                .trackTotalHits(_0 -> _0.enabled(false))
+                .source(_0 -> _0.filter(_1 -> _1.includes("primaryTitle", "titleType", "startYear", "averageRating", "numVotes")))
+                .query(_0 -> _0
+                        .bool(_1 -> _1
+                                .must(_2 -> _2
+                                        .multiMatch(_3 -> _3
+                                                .query(q.trim())
+                                                .type(TextQueryType.BoolPrefix)
+                                                .fields("primaryTitle", "originalTitle")
+                                        )
+                                )
+                                //Like the typeahead, which leaves out the titles without votes and the adult ones
+                                .filter(_2 -> _2.range(_3 -> _3.field("numVotes").gte(JsonData.of(1))))
+                                .filter(_2 -> _2.term(_3 -> _3.field("isAdult").value(false)))
+                        )
+                )
+                .sort(_0 -> _0.field(_1 -> _1.field(Popularity.FIELD).order(SortOrder.Desc)));
 
+        return runSearch(request.build()).thenApply(response -> {
+            var result = Json.createArrayBuilder();
+
+            for(var hit : response.hits().hits()) {
+                if(hit.source() == null)
+                    continue;
+
+                var source = hit.source().toJson().asJsonObject();
+                double rating = source.getJsonNumber("averageRating") == null ? 0 : source.getJsonNumber("averageRating").doubleValue();
+                int votes = source.getJsonNumber("numVotes") == null ? 0 : source.getJsonNumber("numVotes").intValue();
+
+                result.add(getCompletion(new Completion(hit.id(), source.getString("primaryTitle", ""), source.getString("titleType", ""),
+                        source.getJsonNumber("startYear") == null ? 0 : source.getJsonNumber("startYear").intValue(),
+                        TypeaheadBuilder.weight(rating, votes))));
+            }
+
+            return result.build().toString();
+        });
+    }
+
+    private JsonObjectBuilder getCompletion(Completion completion) {
+        return Json.createObjectBuilder()
+                .add("id", completion.id())
+                .add("title", completion.title())
+                .add("titleType", completion.titleType())
+                .add("startYear", completion.startYear())
+                //Written from its text, so it is not widened to a double with more digits
+                .add("score", new BigDecimal(Float.toString(completion.score())));
+    }
+
+    /**
+     * Multiplies the score of the hits by the popularity the loads stored on them
+     */
+    private FunctionScoreQuery getFunctionScoreQuery(Query query) {
         return FunctionScoreQuery.of(_0 -> _0
-                .query(boolQuery.build()._toQuery())
-                .functions(Stream.of(nVotesValueFactor, scoreValueFactor)
-                        .map(x -> FunctionScore.of(_1 -> _1.fieldValueFactor(x)))
-                        .toList())
-                .scoreMode(FunctionScoreMode.Multiply)
+                .query(query)
+                .functions(_1 -> _1
+                        .fieldValueFactor(_2 -> _2
+                                .field(Popularity.FIELD)
+                                .missing((double) Popularity.UNRATED)
+                        )
+                )
                 .boostMode(FunctionBoostMode.Multiply)
         );
     }
 
+    /**
+     * Adds the popularity to the score of the hits. Unlike a function_score, a rank_feature lets Lucene skip the hits
+     * that can not reach the best ones, so broad queries only score a few of them.
+     * It adds the logarithm of the popularity instead of multiplying by it, so it only approximates the order of the rescore:
+     * a relevance of 5 with a popularity of 10 is ranked below a relevance of 20 with a popularity of 1, although its product is higher
+     */
+    private Query getRankFeatureQuery(Query query) {
+        return BoolQuery.of(_0 -> _0
+                .must(query)
+                .should(_1 -> _1
+                        .rankFeature(_2 -> _2
+                                .field(Popularity.FEATURE_FIELD)
+                                .log(_3 -> _3.scalingFactor(1F))
+                        )
+                )
+        )._toQuery();
+    }
+
+    /**
+     * Scores the best hits again as their relevance multiplied by their popularity, replacing the score of the rank_feature.
+     * It is an approximation of multiplying every hit: a hit the rank_feature leaves out of the window is never rescored,
+     * even if its product would put it on the page
+     * @param window hits scored again, which must reach the last hit of the page
+     */
+    private Rescore getPopularityRescore(Query query, int window) {
+        return Rescore.of(_0 -> _0
+                .windowSize(window)
+                .query(_1 -> _1
+                        .query(_2 -> _2.functionScore(getFunctionScoreQuery(query)))
+                        .queryWeight(0D)
+                        .rescoreQueryWeight(1D)
+                        .scoreMode(ScoreMode.Total)
+                )
+        );
+    }
+
     private void addRangeFilter(String averageRating, BoolQuery.Builder boolQuery) {
         boolQuery
                 .filter(_0 -> _0
@@ -250,45 +743,74 @@ public class QueryController {
                 );
     }
 
-    private SearchResponse<JsonData> runSearch(SearchRequest request) {
-        try {
-            return client.search(request, JsonData.class);
+    private CompletableFuture<SearchResponse<JsonData>> runSearch(SearchRequest request) {
+        return client.search(request, JsonData.class).handle((response, e) -> {
+            if(e != null)
+                throw ElasticUtils.toApiException(e);
 
-        } catch(IOException e) {
-            throw new InternalServerException("There was a problem connecting to ElasticSearch", e);
-        } catch (ElasticsearchException e) {
-            throw new IndexDoesNotExistException("There was a problem processing your request", e);
-        }
+            return response;
+        });
+    }
+
+    private CompletableFuture<JsonArrayBuilder> getHits(ResponseBody<JsonData> response, boolean enrich) {
+        var hits = response.hits().hits().stream().filter(x -> x.source() != null).toList();
+
+        return getHits(hits.stream().map(Hit::id).toList(), hits.stream().map(x -> x.source().toJson().asJsonObject()).toList(), enrich);
     }
 
-    private JsonArrayBuilder getHits(SearchResponse<JsonData> response) {
-        var hitArray = Json.createArrayBuilder();
+    private CompletableFuture<JsonArrayBuilder> getHits(List<String> ids, List<JsonObject> sources, boolean enrich) {
+        var enriched = enrich ? NameEnricher.enrich(sources) : CompletableFuture.completedFuture(sources);
+
+        return enriched.thenApply(values -> {
+            var hitArray = Json.createArrayBuilder();
 
-        response.hits().hits().stream().filter(x -> x.source() != null).map(x ->
-                Json.createObjectBuilder()
-                        .add("id", x.id())
-                        .add("source", x.source().toJson())
-                        .build()
-        ).toList().forEach(hitArray::add);
+            for(int i = 0; i < ids.size(); i++) {
+                hitArray.add(Json.createObjectBuilder()
+                        .add("id", ids.get(i))
+                        .add("source", values.get(i))
+                        .build());
+            }
+
+            return hitArray;
+        });
+    }
 
-        return hitArray;
+    private CompletableFuture<String> getResult(ResponseBody<JsonData> response, String aggName, boolean enrich)  {
+        return getResultBuilder(response, aggName, enrich).thenApply(x -> x.build().toString());
+    }
+
+    /**
+     * Result of a page of a cursor pagination
+     * @param cursor of the next page, null on the last one
+     */
+    private CompletableFuture<String> getResult(ResponseBody<JsonData> response, String aggName, boolean enrich, String cursor)  {
+        return getResultBuilder(response, aggName, enrich).thenApply(result -> {
+            if(cursor == null)
+                result.addNull("cursor");
+            else
+                result.add("cursor", cursor);
+
+            return result.build().toString();
+        });
     }
 
-    private String getResult(SearchResponse<JsonData> response, String aggName)  {
-        var result = Json.createObjectBuilder();
-        result.add("hits", getHits(response));
+    private CompletableFuture<JsonObjectBuilder> getResultBuilder(ResponseBody<JsonData> response, String aggName, boolean enrich)  {
+        return getHits(response, enrich).thenApply(hits -> {
+            var result = Json.createObjectBuilder();
+            result.add("hits", hits);
 
-        if(aggName != null)
-            result.add("aggs", getAggs(response, aggName));
+            if(aggName != null)
+                result.add("aggs", getAggs(response, aggName));
 
-        return result.build().toString();
+            return result;
+        });
     }
 
-    private JsonArrayBuilder getAggs(SearchResponse<JsonData> response, String aggName) {
+    private JsonArrayBuilder getAggs(ResponseBody<JsonData> response, String aggName) {
         var list = response.aggregations().get(aggName).sterms().buckets().array();
 
         var buckets = list.stream()
-                .map(x -> Json.createObjectBuilder().add("key", x.key()).add("doc_count", x.docCount()).build());
+                .map(x -> Json.createObjectBuilder().add("key", x.key().stringValue()).add("doc_count", x.docCount()).build());
 
         var result = Json.createArrayBuilder();
 
@@ -40,7 +40,7 @@ public class ApiError {
     ApiError(HttpStatus status, Throwable ex) {
         this(status);
         this.message = "Unexpected error";
-        this.debugMessage = ex.getLocalizedMessage();
+        this.debugMessage = ex == null ? null : ex.getLocalizedMessage();
     }
 
     ApiError(HttpStatus status, String message, Throwable ex) {
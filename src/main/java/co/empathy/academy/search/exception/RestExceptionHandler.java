@@ -1,8 +1,11 @@
 package co.empathy.academy.search.exception;
 
+import co.empathy.academy.search.exception.types.CursorExpiredException;
 import co.empathy.academy.search.exception.types.IndexAlreadyExistsException;
 import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
 import co.empathy.academy.search.exception.types.InternalServerException;
+import co.empathy.academy.search.exception.types.JobDoesNotExistException;
+import co.empathy.academy.search.exception.types.ServiceUnavailableException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -21,7 +24,7 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
      * @param request in which the exception occurred
      * @return JSON with the response and the error code
      */
-    @ExceptionHandler(value = { IndexAlreadyExistsException.class, IndexDoesNotExistException.class, IllegalArgumentException.class })
+    @ExceptionHandler(value = { IndexAlreadyExistsException.class, IndexDoesNotExistException.class, JobDoesNotExistException.class, IllegalArgumentException.class })
     protected ResponseEntity<Object> handleConflictBadRequest(RuntimeException e, WebRequest request) {
         return buildResponseEntity(new ApiError(HttpStatus.BAD_REQUEST, e.getMessage(), e.getCause()));
     }
@@ -45,4 +48,26 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
     protected ResponseEntity<Object> handleConflictInternal(RuntimeException e, WebRequest request) {
         return buildResponseEntity(new ApiError(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e.getCause()));
     }
+
+    /**
+     * Handler for the cursors whose point in time has expired
+     * @param e exception that was thrown
+     * @param request in which the exception occurred
+     * @return JSON with the response and the error code
+     */
+    @ExceptionHandler(value = { CursorExpiredException.class })
+    protected ResponseEntity<Object> handleGone(RuntimeException e, WebRequest request) {
+        return buildResponseEntity(new ApiError(HttpStatus.GONE, e.getMessage(), e.getCause()));
+    }
+
+    /**
+     * Handler for the requests Elasticsearch can not take for now
+     * @param e exception that was thrown
+     * @param request in which the exception occurred
+     * @return JSON with the response and the error code
+     */
+    @ExceptionHandler(value = { ServiceUnavailableException.class })
+    protected ResponseEntity<Object> handleUnavailable(RuntimeException e, WebRequest request) {
+        return buildResponseEntity(new ApiError(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e.getCause()));
+    }
 }
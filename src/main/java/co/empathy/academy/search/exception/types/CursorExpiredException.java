@@ -0,0 +1,10 @@
+package co.empathy.academy.search.exception.types;
+
+/**
+ * Exception used when the user continues a cursor pagination whose point in time has expired
+ */
+public class CursorExpiredException extends RuntimeException {
+    public CursorExpiredException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,10 @@
+package co.empathy.academy.search.exception.types;
+
+/**
+ * Exception used when the user asks for an indexing job that does not exist
+ */
+public class JobDoesNotExistException extends RuntimeException {
+    public JobDoesNotExistException(String s) {
+        super(s);
+    }
+}
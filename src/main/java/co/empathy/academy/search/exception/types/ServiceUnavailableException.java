@@ -0,0 +1,10 @@
+package co.empathy.academy.search.exception.types;
+
+/**
+ * Exception used when Elasticsearch can not take a request for now, like when it is overloaded
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -1,137 +1,246 @@
 package co.empathy.academy.search.utils;
 
 import co.empathy.academy.search.utils.clases.*;
-import jakarta.json.Json;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Pattern;
-
-public class BatchReader {
-    private static final Pattern DELIMITER = Pattern.compile("\t");
-    private final BufferedReader filmsReader;
-    private final BufferedReader ratingsReader;
-    private final BufferedReader akasReader;
-    private final BufferedReader crewReader;
-    private final BufferedReader episodesPath;
-    private final BufferedReader principalReader;
-    private final Map<String, String[]> nameBasics;
+
+public class BatchReader implements DocumentSource {
+    //Titles read at once when catching up with the titles before a resumed load
+    private static final int CATCH_UP_BATCH = 10000;
+    private final TsvReader filmsReader;
+    private final TsvReader ratingsReader;
+    private final TsvReader akasReader;
+    private final TsvReader crewReader;
+    private final TsvReader episodesReader;
+    private final TsvReader principalReader;
+    private final NameLookup nameBasics;
+    private final SeriesRollups rollups = new SeriesRollups();
+    private final TypeaheadBuilder typeahead = new TypeaheadBuilder();
+    private final LeaderboardBuilder leaderboard = new LeaderboardBuilder();
+    private final JoinCursor joinCursor;
     private final int batchSize;
     private boolean hasFinished;
-    private List<String> filmsHeaders;
-    private List<String> ratingsHeaders;
-    private List<String> akasHeaders;
-    private List<String> crewHeaders;
-    private List<String> episodesHeaders;
-    private List<String> principalHeaders;
-    private List<String> nameHeaders;
-
-    public BatchReader(String filmsPath, String ratingsPath, String akasPath, String crewPath, String episodesPath, String principalPath, String nameBasicsPath, int batchSize) throws IOException {
-        this.filmsReader = new BufferedReader(new FileReader(filmsPath));
-        this.ratingsReader = new BufferedReader(new FileReader(ratingsPath));
-        this.akasReader = new BufferedReader(new FileReader(akasPath));
-        this.crewReader = new BufferedReader(new FileReader(crewPath));
-        this.episodesPath = new BufferedReader(new FileReader(episodesPath));
-        this.principalReader = new BufferedReader(new FileReader(principalPath));
-        //nameBasics = Files.readAllLines(Path.of(nameBasicsPath)).stream().map(DELIMITER::split)
-         //       .collect(Collectors.toMap(a -> a[0], a -> a));
-        nameBasics = null;
+    private final List<String> filmsHeaders;
+    private final List<String> ratingsHeaders;
+    private final List<String> akasHeaders;
+    private final List<String> crewHeaders;
+    private final List<String> episodesHeaders;
+    private final List<String> principalHeaders;
+
+    /**
+     * @param resumeOffsets offsets of a previous reader over the same files, to continue from there. Can be null
+     */
+    public BatchReader(String filmsPath, String ratingsPath, String akasPath, String crewPath, String episodesPath, String principalPath, String nameBasicsPath, int batchSize, long[] resumeOffsets) throws IOException {
+        this.filmsReader = new TsvReader(filmsPath);
+        this.ratingsReader = new TsvReader(ratingsPath);
+        this.akasReader = new TsvReader(akasPath);
+        this.crewReader = new TsvReader(crewPath);
+        this.episodesReader = new TsvReader(episodesPath);
+        this.principalReader = new TsvReader(principalPath);
+        this.nameBasics = new NameLookup(nameBasicsPath);
         this.batchSize = batchSize;
         this.hasFinished = false;
 
-        skipFirstLines();
+        this.filmsHeaders = filmsReader.getHeaders();
+        this.ratingsHeaders = ratingsReader.getHeaders();
+        this.akasHeaders = akasReader.getHeaders();
+        this.crewHeaders = crewReader.getHeaders();
+        this.episodesHeaders = episodesReader.getHeaders();
+        this.principalHeaders = principalReader.getHeaders();
+
+        //The order of the readers must match the sections of RowBatch
+        this.joinCursor = new JoinCursor(filmsReader, List.of(ratingsReader, akasReader, crewReader, principalReader, episodesReader), resumeOffsets);
+
+        //The roll-ups, typeahead and leaderboard of a resumed load need the titles loaded before it stopped too
+        if(resumeOffsets != null) {
+            rollups.addUntil(episodesPath, ratingsPath, joinCursor.nextId());
+            addTitlesUntil(filmsPath, ratingsPath, joinCursor.nextId());
+        }
     }
 
-    public boolean hasFinished() {
-        return this.hasFinished;
+    /**
+     * Adds the titles with a tconst lower than the one given to the typeahead and the leaderboard, reading the films and ratings files again
+     */
+    private void addTitlesUntil(String filmsPath, String ratingsPath, int tconst) throws IOException {
+        var films = new TsvReader(filmsPath);
+        var ratings = new TsvReader(ratingsPath);
+        var cursor = new TsvCursor();
+
+        try {
+            var join = new JoinCursor(films, List.of(ratings), null);
+            boolean more = true;
+
+            while(more) {
+                var batch = new RowBatch(CATCH_UP_BATCH, 2);
+
+                while(batch.titles() < CATCH_UP_BATCH && (more = join.next(batch))) {
+                    int title = batch.titles() - 1;
+
+                    if(batch.id(title, cursor) >= tconst) {
+                        more = false;
+                        break;
+                    }
+
+                    typeahead.add(batch, title, 0, 1, cursor);
+                    leaderboard.add(batch, title, 0, 1, cursor);
+                }
+            }
+        } finally {
+            films.close();
+            ratings.close();
+        }
+    }
+
+    /**
+     * Returns the headers of the file of a section of the batches, like RowBatch.FILM
+     */
+    public List<String> getHeaders(int section) {
+        return switch(section) {
+            case RowBatch.FILM -> filmsHeaders;
+            case RowBatch.RATING -> ratingsHeaders;
+            case RowBatch.AKAS -> akasHeaders;
+            case RowBatch.CREW -> crewHeaders;
+            case RowBatch.PRINCIPALS -> principalHeaders;
+            case RowBatch.EPISODE -> episodesHeaders;
+            default -> throw new IllegalArgumentException("There is no section " + section);
+        };
     }
 
-    public void skipFirstLines() throws IOException {
-        this.filmsHeaders = Arrays.stream(this.filmsReader.readLine().split(DELIMITER.pattern())).toList();
-        this.ratingsHeaders = Arrays.stream(this.ratingsReader.readLine().split(DELIMITER.pattern())).toList();
-        this.akasHeaders = Arrays.stream(this.akasReader.readLine().split(DELIMITER.pattern())).toList();
-        this.crewHeaders = Arrays.stream(this.crewReader.readLine().split(DELIMITER.pattern())).toList();
-        this.episodesHeaders = Arrays.stream(this.episodesPath.readLine().split(DELIMITER.pattern())).toList();
-        this.principalHeaders = Arrays.stream(this.principalReader.readLine().split(DELIMITER.pattern())).toList();
-        //this.nameHeaders = Arrays.stream(nameBasics.get("nconst")).toList();
-        this.nameHeaders = null;
+    public NameLookup getNameLookup() {
+        return nameBasics;
     }
 
+    @Override
+    public boolean hasFinished() {
+        return this.hasFinished;
+    }
+
+    @Override
     public void close() throws IOException {
         this.filmsReader.close();
         this.ratingsReader.close();
         this.akasReader.close();
         this.crewReader.close();
-        this.episodesPath.close();
+        this.episodesReader.close();
         this.principalReader.close();
+        this.nameBasics.close();
     }
 
-    public List<JsonContent> getBatch() throws IOException {
-        int counter = 0;
+    @Override
+    public long[] offsets() {
+        return joinCursor.offsets();
+    }
 
-        List<JsonContent> result = new ArrayList<>();
+    @Override
+    public double progress() throws IOException {
+        return filmsReader.progress();
+    }
 
-        while(counter < batchSize) {
-            var builder = Json.createObjectBuilder();
+    @Override
+    public long[] sizes() throws IOException {
+        return new long[] { filmsReader.size(), ratingsReader.size(), akasReader.size(), crewReader.size(), principalReader.size(), episodesReader.size() };
+    }
 
-            String filmLine = filmsReader.readLine();
+    /**
+     * Adds every episode of the batch to the roll-ups of its series, and every title to the typeahead and the leaderboard,
+     * including the unchanged ones that are not written
+     */
+    @Override
+    public List<JsonContent> toJsonContents(RowBatch batch, FingerprintStore fingerprints, TsvCursor cursor, DocumentWriter writer) {
+        for(int i = 0; i < batch.titles(); i++) {
+            rollups.add(batch, i, RowBatch.EPISODE, RowBatch.RATING, cursor);
+            typeahead.add(batch, i, RowBatch.FILM, RowBatch.RATING, cursor);
+            leaderboard.add(batch, i, RowBatch.FILM, RowBatch.RATING, cursor);
+        }
 
-            if(filmLine == null) {
-                this.hasFinished = true;
-                return result;
-            }
+        return DocumentSource.super.toJsonContents(batch, fingerprints, cursor, writer);
+    }
 
-            int currentId = Integer.parseInt(filmLine.split(DELIMITER.pattern())[0].split("tt")[1]);
+    /**
+     * Returns the roll-ups of every series, once the whole files have been read
+     */
+    @Override
+    public List<JsonContent> getUpdates(FingerprintStore fingerprints) {
+        return rollups.toUpdates(fingerprints);
+    }
 
-            Film.addFilm(filmLine, builder, filmsHeaders);
+    /**
+     * Returns the typeahead of the titles read, complete once the whole files have been read
+     */
+    public TypeaheadBuilder getTypeahead() {
+        return typeahead;
+    }
+
+    /**
+     * Returns the leaderboard of the titles read, complete once the whole files have been read
+     */
+    public LeaderboardBuilder getLeaderboard() {
+        return leaderboard;
+    }
 
-            String ratingLine = ratingsReader.readLine();
-            Rating.addRating(ratingLine, builder, ratingsHeaders);
+    public List<JsonContent> getBatch() throws IOException {
+        return toJsonContents(getRawBatch(Long.MAX_VALUE));
+    }
 
-            List<String> akasLines = getLinesAndResetReader(akasReader, currentId);
-            Akas.addAkas(akasLines, builder, akasHeaders);
+    /**
+     * Copies the lines of the next titles without parsing them, so the conversion can be done on other threads
+     * @param maxBytes the batch is closed once its lines reach this size
+     * @return batch with, at most, batchSize titles
+     */
+    @Override
+    public RowBatch getRawBatch(long maxBytes) throws IOException {
+        int counter = 0;
 
-            String crewLine = crewReader.readLine();
-            Crew.addCrews(crewLine, builder, crewHeaders, nameBasics, nameHeaders);
+        var result = new RowBatch(batchSize);
 
-            List<String> principalsLines = getLinesAndResetReader(principalReader, currentId);
-            Principals.addPrincipals(principalsLines, builder, principalHeaders, nameBasics, nameHeaders);
+        while(counter < batchSize && result.bytes() < maxBytes) {
+            if(!joinCursor.next(result)) {
+                this.hasFinished = true;
+                return result;
+            }
 
-            result.add(new JsonContent(filmLine.split(DELIMITER.pattern())[0], builder.build()));
             counter++;
         }
 
         return result;
     }
 
+    /**
+     * Fingerprint of the raw lines of a title and the lines of name.basics of its directors and principals,
+     * whose names are written on the document too
+     */
+    @Override
+    public long fingerprint(RowBatch batch, int document, TsvCursor cursor) {
+        long[] hash = { batch.fingerprint(document) };
 
-    private List<String> getLinesAndResetReader(BufferedReader reader, int currentId) throws IOException {
-        boolean nextId = false;
-        List<String> lines = new ArrayList<>();
+        if(batch.section(document, RowBatch.CREW, cursor).nextLine())
+            cursor.skip(Crew.DIRECTORS).strings(',', x -> hash[0] = nameBasics.fingerprint(x, hash[0]));
 
-        while(!nextId) {
-            reader.mark(10000);
-            String line = reader.readLine();
+        batch.section(document, RowBatch.PRINCIPALS, cursor);
+        while(cursor.nextLine())
+            hash[0] = nameBasics.fingerprint(cursor.skip(Principals.NCONST).string(), hash[0]);
 
-            if(line == null)
-                nextId = true;
-            else {
-                int id = Integer.parseInt(line.split(DELIMITER.pattern())[0].split("tt")[1]);
-
-                if (id > currentId)
-                    nextId = true;
-                else
-                    lines.add(line);
-            }
-        }
-
-        reader.reset();
+        return hash[0];
+    }
 
-        return lines;
+    /**
+     * Writes the document of a title of a batch of raw lines. Safe to call from several threads at once
+     * @param batch lines of the titles
+     * @param document position of the title on the batch
+     * @param cursor used for reading the lines
+     * @param writer where the fields of the title are written
+     * @return tconst of the title
+     */
+    @Override
+    public String writeDocument(RowBatch batch, int document, TsvCursor cursor, DocumentWriter writer) {
+        String id = Film.addFilm(batch.section(document, RowBatch.FILM, cursor), writer, filmsHeaders);
+        Rating.addRating(batch.section(document, RowBatch.RATING, cursor), writer, ratingsHeaders);
+        Akas.addAkas(batch.section(document, RowBatch.AKAS, cursor), writer, akasHeaders);
+        Crew.addCrews(batch.section(document, RowBatch.CREW, cursor), writer, crewHeaders, nameBasics);
+        Principals.addPrincipals(batch.section(document, RowBatch.PRINCIPALS, cursor), writer, principalHeaders, nameBasics);
+        Episode.addEpisode(batch.section(document, RowBatch.EPISODE, cursor), writer, episodesHeaders);
+
+        return id;
     }
 }
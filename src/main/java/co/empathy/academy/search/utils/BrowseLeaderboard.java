@@ -0,0 +1,46 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Holds the leaderboard of the published films index, which serves the searches without query text
+ */
+public class BrowseLeaderboard {
+    private static final PublishedFile<Leaderboard> leaderboard =
+            new PublishedFile<>("films.leaderboard", "films", "leaderboard", Leaderboard::open, Leaderboard::getIndex);
+
+    private BrowseLeaderboard() {}
+
+    /**
+     * @see PublishedFile#open
+     */
+    public static void open(Path file) {
+        leaderboard.open(file);
+    }
+
+    /**
+     * @see PublishedFile#buildingPath
+     */
+    public static Path buildingPath(String index) {
+        return leaderboard.buildingPath(index);
+    }
+
+    /**
+     * @see PublishedFile#publish
+     */
+    public static void publish(Path built) throws IOException {
+        leaderboard.publish(built);
+    }
+
+    /**
+     * Returns the ids of a page of the most popular titles, as a search without query text would
+     * @return empty if there is no leaderboard, it is not of the index published or it can not tell the page for sure
+     * @see Leaderboard#page
+     */
+    public static Optional<List<String>> page(List<String> types, List<String> genres, Double minRating, int from, int size) {
+        return leaderboard.get().flatMap(x -> x.page(types, genres, minRating, from, size));
+    }
+}
@@ -0,0 +1,170 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.json.JsonpMapper;
+import co.empathy.academy.search.utils.clases.JsonContent;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends batches of documents to an index.
+ * Items rejected because Elasticsearch is overloaded are retried with exponential backoff,
+ * and the ones that fail for any other reason, or keep being rejected, go to the dead letter file.
+ * Documents are indexed, updated or deleted depending on their operation.
+ * The body of the requests is written by hand from the bytes of the documents, so they are never parsed again
+ */
+public class BulkSender {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int NOT_FOUND = 404;
+    private static final int MAX_RETRIES = 6;
+    private static final long INITIAL_BACKOFF_MILLIS = 250;
+    //Name of the bulk action of each operation
+    private static final String[] ACTIONS = { "index", "update", "delete" };
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+    private static final int INITIAL_BODY_BYTES = 1 << 22;
+    private final RestClient client;
+    private final JsonpMapper mapper;
+    private final String endpoint;
+    private final BulkThrottle throttle;
+    private final DeadLetterWriter deadLetters;
+    //Updated with the documents acknowledged by Elasticsearch. Can be null
+    private final FingerprintStore fingerprints;
+    //Updated with the partial updates acknowledged by Elasticsearch. Can be null
+    private final FingerprintStore updateFingerprints;
+    //Receives the latency of every request
+    private final IndexingJob job;
+    //Body of the requests, reused by each sender thread
+    private final ThreadLocal<DocumentWriter> bodies = ThreadLocal.withInitial(() -> new DocumentWriter(INITIAL_BODY_BYTES));
+
+    public BulkSender(RestClient client, JsonpMapper mapper, String index, BulkThrottle throttle, DeadLetterWriter deadLetters,
+                      FingerprintStore fingerprints, FingerprintStore updateFingerprints, IndexingJob job) {
+        this.client = client;
+        this.mapper = mapper;
+        this.endpoint = "/" + index + "/_bulk";
+        this.throttle = throttle;
+        this.deadLetters = deadLetters;
+        this.fingerprints = fingerprints;
+        this.updateFingerprints = updateFingerprints;
+        this.job = job;
+    }
+
+    /**
+     * Sends the documents, waiting for the throttle before each request
+     * @return number of documents indexed
+     */
+    public long send(List<JsonContent> documents) throws IOException, InterruptedException {
+        List<JsonContent> pending = documents;
+        long indexed = 0;
+
+        for(int attempt = 0; !pending.isEmpty(); attempt++) {
+            if(attempt > MAX_RETRIES) {
+                for(JsonContent document : pending)
+                    deadLetters.write(document, "Rejected after " + MAX_RETRIES + " retries");
+
+                break;
+            }
+
+            if(attempt > 0)
+                Thread.sleep(INITIAL_BACKOFF_MILLIS << (attempt - 1));
+
+            List<JsonContent> rejected = new ArrayList<>();
+
+            throttle.acquire();
+            try {
+                long start = System.nanoTime();
+                var response = bulk(pending);
+                long latencyMillis = (System.nanoTime() - start) / 1_000_000;
+                job.recordBulk(latencyMillis);
+
+                indexed += checkItems(response, pending, rejected);
+
+                throttle.onResponse(latencyMillis, rejected.size());
+
+            } catch(ResponseException e) {
+                if(e.getResponse().getStatusLine().getStatusCode() != TOO_MANY_REQUESTS)
+                    throw e;
+
+                throttle.onRejection();
+                rejected = pending;
+            } finally {
+                throttle.release();
+            }
+
+            pending = rejected;
+        }
+
+        return indexed;
+    }
+
+    private BulkResponse bulk(List<JsonContent> documents) throws IOException {
+        var body = bodies.get();
+        body.reset();
+
+        for(JsonContent document : documents) {
+            body.startObject()
+                    .startObject(ACTIONS[document.operation().ordinal()])
+                    .field("_id", document.id())
+                    .endObject()
+                    .endObject()
+                    .raw((byte) '\n');
+
+            if(!document.isDeletion())
+                body.raw(document.source(), document.offset(), document.length()).raw((byte) '\n');
+        }
+
+        var request = new Request("POST", endpoint);
+        request.setEntity(new ByteArrayEntity(body.data(), 0, body.size(), NDJSON));
+
+        try(var content = client.performRequest(request).getEntity().getContent();
+            var parser = mapper.jsonProvider().createParser(content)) {
+            return BulkResponse._DESERIALIZER.deserialize(parser, mapper);
+        }
+    }
+
+    /**
+     * Adds the items rejected by an overloaded cluster to the list, and writes the failed ones as dead letters.
+     * Deleting or updating a document that does not exist is not a failure, updates of a series missing from the files are discarded
+     * @return number of items indexed
+     */
+    private long checkItems(BulkResponse response, List<JsonContent> documents, List<JsonContent> rejected) throws IOException {
+        long indexed = 0;
+        var items = response.items();
+
+        for(int i = 0; i < items.size(); i++) {
+            var item = items.get(i);
+            var document = documents.get(i);
+
+            if(item.status() == TOO_MANY_REQUESTS) {
+                rejected.add(document);
+            } else if(item.error() != null && !(document.operation() != JsonContent.Operation.INDEX && item.status() == NOT_FOUND)) {
+                deadLetters.write(document, item.error().type() + ": " + item.error().reason());
+            } else {
+                indexed++;
+                updateFingerprint(document);
+            }
+        }
+
+        return indexed;
+    }
+
+    private void updateFingerprint(JsonContent document) throws IOException {
+        boolean update = document.operation() == JsonContent.Operation.UPDATE;
+        var store = update ? updateFingerprints : fingerprints;
+
+        if(store == null)
+            return;
+
+        //Updates without fingerprint clear the previous one
+        if(document.isDeletion() || (update && document.fingerprint() == 0))
+            store.remove(FingerprintStore.key(document.id()));
+        else
+            store.put(FingerprintStore.key(document.id()), document.fingerprint());
+    }
+}
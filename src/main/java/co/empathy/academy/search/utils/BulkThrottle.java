@@ -0,0 +1,83 @@
+package co.empathy.academy.search.utils;
+
+/**
+ * Adapts the size and concurrency of the bulk requests to the latency and rejections of Elasticsearch.
+ * The size is a budget of bytes of raw lines per request, that grows while requests are fast
+ * and shrinks when they are slow or rejected. Concurrency only grows after several healthy requests
+ */
+public class BulkThrottle {
+    private static final long MIN_BYTES = 1L << 20;
+    private static final long MAX_BYTES = 32L << 20;
+    private static final long INITIAL_BYTES = 8L << 20;
+    //Requests slower than this shrink the budget, and requests faster than half of it grow it
+    private static final long TARGET_LATENCY_MILLIS = 2000;
+    //Healthy requests needed before allowing one more concurrent request
+    private static final int HEALTHY_REQUESTS_TO_GROW = 8;
+    private final int maxConcurrency;
+    private long byteBudget = INITIAL_BYTES;
+    private int concurrency;
+    private int inFlight;
+    private int healthyRequests;
+
+    public BulkThrottle(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = maxConcurrency;
+    }
+
+    /**
+     * @return bytes of raw lines the next request should carry
+     */
+    public synchronized long getByteBudget() {
+        return byteBudget;
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Waits until a new request can be sent without going over the current concurrency
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while(inFlight >= concurrency)
+            wait();
+
+        inFlight++;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Records a request that reached Elasticsearch
+     * @param latencyMillis time the request took
+     * @param rejected items rejected because Elasticsearch was overloaded
+     */
+    public synchronized void onResponse(long latencyMillis, int rejected) {
+        if(rejected > 0) {
+            onRejection();
+        } else if(latencyMillis > TARGET_LATENCY_MILLIS) {
+            byteBudget = Math.max(MIN_BYTES, byteBudget * 4 / 5);
+            healthyRequests = 0;
+        } else if(latencyMillis < TARGET_LATENCY_MILLIS / 2) {
+            byteBudget = Math.min(MAX_BYTES, byteBudget * 11 / 10);
+
+            if(++healthyRequests >= HEALTHY_REQUESTS_TO_GROW && concurrency < maxConcurrency) {
+                concurrency++;
+                healthyRequests = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records a request, or some of its items, rejected because Elasticsearch was overloaded
+     */
+    public synchronized void onRejection() {
+        byteBudget = Math.max(MIN_BYTES, byteBudget / 2);
+        concurrency = Math.max(1, concurrency - 1);
+        healthyRequests = 0;
+    }
+}
@@ -0,0 +1,69 @@
+package co.empathy.academy.search.utils;
+
+import jakarta.json.Json;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Position of a load that can be resumed. Every document up to lastKey has been acknowledged,
+ * and the input files have to be read from the offsets given
+ * @param index where the documents are being sent
+ * @param lastKey number of the id of the last document acknowledged
+ * @param documents amount of documents acknowledged
+ * @param offsets where each input file has to be read from
+ * @param sizes of the input files, for checking they have not changed
+ */
+public record Checkpoint(String index, long lastKey, long documents, List<Long> offsets, List<Long> sizes) {
+    private static final String EXTENSION = ".checkpoint";
+
+    /**
+     * Returns the file where the checkpoints of the loads of an index are written, next to the input file given
+     */
+    public static Path path(String inputPath, String index) {
+        return Path.of(inputPath).toAbsolutePath().resolveSibling(index + EXTENSION);
+    }
+
+    public static Optional<Checkpoint> load(Path path) throws IOException {
+        if(!Files.exists(path))
+            return Optional.empty();
+
+        try(var reader = Json.createReader(Files.newBufferedReader(path))) {
+            JsonObject json = reader.readObject();
+
+            return Optional.of(new Checkpoint(
+                    json.getString("index"),
+                    json.getJsonNumber("lastKey").longValue(),
+                    json.getJsonNumber("documents").longValue(),
+                    json.getJsonArray("offsets").getValuesAs(JsonNumber::longValue),
+                    json.getJsonArray("sizes").getValuesAs(JsonNumber::longValue)));
+        }
+    }
+
+    /**
+     * Writes the checkpoint, replacing the previous one in a single step so a crash never leaves half a file
+     */
+    public void save(Path path) throws IOException {
+        var json = Json.createObjectBuilder()
+                .add("index", index)
+                .add("lastKey", lastKey)
+                .add("documents", documents)
+                .add("offsets", Json.createArrayBuilder(offsets))
+                .add("sizes", Json.createArrayBuilder(sizes))
+                .build();
+
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temporary, json.toString());
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long[] offsetsArray() {
+        return offsets.stream().mapToLong(Long::longValue).toArray();
+    }
+}
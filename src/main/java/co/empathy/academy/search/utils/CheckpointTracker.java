@@ -0,0 +1,84 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Follows the batches of a load, that are sent in any order by several threads,
+ * and periodically writes a checkpoint after the last batch that has every previous one acknowledged too
+ */
+public class CheckpointTracker {
+    //Minimum time between two writes of the checkpoint file
+    private static final long INTERVAL_MILLIS = 10000;
+    private final Path path;
+    private final String index;
+    private final long[] sizes;
+    //Position after each batch read and not acknowledged yet, by its sequence number
+    private final Map<Long, Checkpoint> pending = new HashMap<>();
+    private final Set<Long> acknowledged = new HashSet<>();
+    private long nextSequence;
+    //Documents of every batch registered, plus the ones of the checkpoint the load started from
+    private long registeredDocuments;
+    private Checkpoint last;
+    private long lastSave = System.currentTimeMillis();
+
+    /**
+     * @param start checkpoint the load is resumed from. Can be null
+     */
+    public CheckpointTracker(Path path, String index, long[] sizes, Checkpoint start) {
+        this.path = path;
+        this.index = index;
+        this.sizes = sizes;
+        this.last = start;
+        this.registeredDocuments = start == null ? 0 : start.documents();
+    }
+
+    /**
+     * Registers the position of the inputs after a batch. Must be called in the order the batches are read
+     * @param sequence number of the batch
+     * @param lastKey number of the id of the last document of the batch
+     * @param documents amount of documents of the batch
+     * @param offsets of the inputs after the batch
+     */
+    public synchronized void register(long sequence, long lastKey, int documents, long[] offsets) {
+        registeredDocuments += documents;
+
+        pending.put(sequence, new Checkpoint(index, lastKey, registeredDocuments,
+                Arrays.stream(offsets).boxed().toList(), Arrays.stream(sizes).boxed().toList()));
+    }
+
+    /**
+     * Marks a batch as acknowledged, or written as dead letters
+     */
+    public synchronized void acknowledge(long sequence) throws IOException {
+        acknowledged.add(sequence);
+
+        while(acknowledged.remove(nextSequence))
+            last = pending.remove(nextSequence++);
+
+        if(last != null && System.currentTimeMillis() - lastSave >= INTERVAL_MILLIS) {
+            last.save(path);
+            lastSave = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Writes the last position with every previous document acknowledged, if there is any
+     */
+    public synchronized void saveLast() throws IOException {
+        if(last != null)
+            last.save(path);
+    }
+
+    /**
+     * Returns the last position with every previous document acknowledged. Null if there is none yet
+     */
+    public synchronized Checkpoint getLast() {
+        return last;
+    }
+}
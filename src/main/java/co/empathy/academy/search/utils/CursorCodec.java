@@ -0,0 +1,84 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.empathy.academy.search.utils.clases.SearchCursor;
+import jakarta.json.Json;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.JsonException;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Converts the position of a cursor pagination to the opaque token returned to the clients and back.
+ * The token is the point in time and the sort values as JSON, encoded in URL safe base64
+ */
+public class CursorCodec {
+    private static final String PIT = "pit";
+    private static final String AFTER = "after";
+
+    private CursorCodec() {}
+
+    public static String encode(SearchCursor cursor) {
+        var after = Json.createArrayBuilder();
+
+        for(FieldValue value : cursor.searchAfter()) {
+            if(value.isDouble())
+                after.add(value.doubleValue());
+            else if(value.isLong())
+                after.add(value.longValue());
+            else if(value.isBoolean())
+                after.add(value.booleanValue());
+            else if(value.isString())
+                after.add(value.stringValue());
+            else
+                after.addNull();
+        }
+
+        var json = Json.createObjectBuilder()
+                .add(PIT, cursor.pitId())
+                .add(AFTER, after)
+                .build()
+                .toString();
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not returned by encode
+     */
+    public static SearchCursor decode(String token) {
+        try {
+            var json = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            JsonObject object;
+
+            try(var reader = Json.createReader(new StringReader(json))) {
+                object = reader.readObject();
+            }
+
+            List<FieldValue> after = new ArrayList<>();
+
+            for(JsonValue value : object.getJsonArray(AFTER)) {
+                if(value instanceof JsonNumber number)
+                    after.add(number.isIntegral() ? FieldValue.of(number.longValue()) : FieldValue.of(number.doubleValue()));
+                else if(value instanceof JsonString string)
+                    after.add(FieldValue.of(string.getString()));
+                else if(value == JsonValue.TRUE || value == JsonValue.FALSE)
+                    after.add(FieldValue.of(value == JsonValue.TRUE));
+                else
+                    after.add(FieldValue.NULL);
+            }
+
+            return new SearchCursor(object.getString(PIT), after);
+
+        } catch(IllegalArgumentException | JsonException | ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("The cursor is not valid, it must be the one returned with the previous page", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.JsonContent;
+import jakarta.json.Json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes the documents that could not be indexed to an NDJSON file, one line per document with the error.
+ * The file is only created when the first document fails
+ */
+public class DeadLetterWriter {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private final Path path;
+    private BufferedWriter writer;
+    private long written;
+
+    /**
+     * @param directory where the file is created
+     * @param index the documents were meant for, used for the name of the file
+     */
+    public DeadLetterWriter(Path directory, String index) {
+        this.path = directory.resolve("dead-letters-" + index + "-" + LocalDateTime.now().format(FORMATTER) + ".ndjson");
+    }
+
+    public synchronized void write(JsonContent document, String error) throws IOException {
+        if(writer == null)
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+
+        //The document is copied as it is, since it is already JSON
+        writer.write("{\"id\":" + Json.createValue(document.id()) + ",\"error\":" + Json.createValue(error) + ",\"document\":" + document.json() + "}");
+        writer.newLine();
+        written++;
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void close() throws IOException {
+        if(writer != null)
+            writer.close();
+    }
+}
@@ -0,0 +1,121 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.JsonContent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Source of documents for the indexing pipeline.
+ * The raw lines are read on a single thread and converted into documents on several
+ */
+public interface DocumentSource {
+    //Initial size of the array the documents of a batch are written to
+    int INITIAL_BATCH_BYTES = 1 << 20;
+
+    boolean hasFinished();
+
+    /**
+     * Copies the lines of the next documents without parsing them
+     * @param maxBytes the batch is closed once its lines reach this size
+     */
+    RowBatch getRawBatch(long maxBytes) throws IOException;
+
+    /**
+     * Returns the offset on each input file where the next batch starts, so a load can be resumed from there
+     */
+    long[] offsets() throws IOException;
+
+    /**
+     * @return fraction of the input already read, from 0 to 1
+     */
+    double progress() throws IOException;
+
+    /**
+     * Returns the size of each input file, in the same order as the offsets
+     */
+    long[] sizes() throws IOException;
+
+    /**
+     * Writes the fields of one of the documents of a batch of raw lines into an object already started.
+     * Must be safe to call from several threads at once
+     * @param batch containing the lines
+     * @param document position of the document on the batch
+     * @param cursor used for reading the lines, owned by the calling thread
+     * @param writer where the fields are written, owned by the calling thread
+     * @return id of the document
+     */
+    String writeDocument(RowBatch batch, int document, TsvCursor cursor, DocumentWriter writer);
+
+    /**
+     * Computes the fingerprint of a document, which changes whenever anything written on it does.
+     * By default, the one of its raw lines. Must be safe to call from several threads at once
+     */
+    default long fingerprint(RowBatch batch, int document, TsvCursor cursor) {
+        return batch.fingerprint(document);
+    }
+
+    /**
+     * Builds every document of a batch of raw lines
+     */
+    default List<JsonContent> toJsonContents(RowBatch batch) {
+        return toJsonContents(batch, null, new TsvCursor(), new DocumentWriter(INITIAL_BATCH_BYTES));
+    }
+
+    /**
+     * Writes the documents of a batch one after the other, and copies them into a single array shared by the contents returned
+     * @param fingerprints if given, only the documents whose lines changed are written, with their fingerprint. Can be null
+     * @param cursor used for reading the lines, owned by the calling thread
+     * @param writer reused for every batch, owned by the calling thread
+     */
+    default List<JsonContent> toJsonContents(RowBatch batch, FingerprintStore fingerprints, TsvCursor cursor, DocumentWriter writer) {
+        int titles = batch.titles();
+        var ids = new String[titles];
+        var ends = new int[titles];
+        var documentFingerprints = new long[titles];
+        int count = 0;
+
+        writer.reset();
+
+        for(int i = 0; i < titles; i++) {
+            long fingerprint = 0;
+
+            if(fingerprints != null) {
+                //The fingerprint is computed over the raw lines, so unchanged documents are never written
+                fingerprint = fingerprint(batch, i, cursor);
+
+                if(!fingerprints.hasChanged(batch.id(i, cursor), fingerprint))
+                    continue;
+            }
+
+            writer.startObject();
+            ids[count] = writeDocument(batch, i, cursor, writer);
+            writer.endObject();
+
+            ends[count] = writer.size();
+            documentFingerprints[count] = fingerprint;
+            count++;
+        }
+
+        var data = Arrays.copyOf(writer.data(), writer.size());
+        List<JsonContent> result = new ArrayList<>(count);
+
+        for(int i = 0, start = 0; i < count; start = ends[i++])
+            result.add(new JsonContent(ids[i], JsonContent.Operation.INDEX, data, start, ends[i] - start, documentFingerprints[i]));
+
+        return result;
+    }
+
+    /**
+     * Returns the partial updates computed from the whole input, sent once every document has been indexed
+     * @param fingerprints of the updates sent by the previous load. If given, only the updates that changed are returned,
+     *                     plus the ones clearing the fields of the documents that do not get an update anymore. Can be null
+     */
+    default List<JsonContent> getUpdates(FingerprintStore fingerprints) {
+        return List.of();
+    }
+
+    void close() throws IOException;
+}
@@ -0,0 +1,277 @@
+package co.empathy.academy.search.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes JSON straight into a reusable byte array, without building any object tree.
+ * Commas are added automatically, and strings read from a tsv are escaped byte by byte, without decoding them.
+ * Not thread safe, each thread uses its own writer
+ */
+public class DocumentWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    //Field names already encoded with their quotes and colon. Documents repeat the same few names
+    private final Map<String, byte[]> names = new HashMap<>();
+    private byte[] data;
+    private int size;
+    //For each open object or array, whether it has a value already, so the next one needs a comma
+    private boolean[] hasValue = new boolean[16];
+    private int depth;
+    //A field name was just written, so the next value goes right after its colon
+    private boolean afterName;
+
+    public DocumentWriter(int initialBytes) {
+        this.data = new byte[initialBytes];
+    }
+
+    /**
+     * Discards everything written, keeping the array for the next documents
+     */
+    public void reset() {
+        size = 0;
+        depth = 0;
+        hasValue[0] = false;
+        afterName = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    public DocumentWriter startObject() {
+        beforeValue();
+        return open((byte) '{');
+    }
+
+    public DocumentWriter startObject(String name) {
+        return name(name).open((byte) '{');
+    }
+
+    public DocumentWriter endObject() {
+        return close((byte) '}');
+    }
+
+    public DocumentWriter startArray() {
+        beforeValue();
+        return open((byte) '[');
+    }
+
+    public DocumentWriter startArray(String name) {
+        return name(name).open((byte) '[');
+    }
+
+    public DocumentWriter endArray() {
+        return close((byte) ']');
+    }
+
+    /**
+     * Writes the name of a field. Its value has to be written next
+     */
+    public DocumentWriter name(String name) {
+        beforeValue();
+        write(names.computeIfAbsent(name, x -> ("\"" + x + "\":").getBytes(StandardCharsets.UTF_8)));
+        afterName = true;
+
+        return this;
+    }
+
+    public DocumentWriter field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public DocumentWriter field(String name, int value) {
+        return name(name).value(value);
+    }
+
+    public DocumentWriter field(String name, float value) {
+        return name(name).value(value);
+    }
+
+    public DocumentWriter field(String name, double value) {
+        return name(name).value(value);
+    }
+
+    public DocumentWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    public DocumentWriter value(String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        return value(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Writes a string value from UTF-8 bytes, escaping them as needed
+     */
+    public DocumentWriter value(ByteBuffer buffer, int start, int end) {
+        beforeValue();
+        ensureCapacity(end - start + 2);
+        data[size++] = '"';
+
+        for(int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+
+            if(c == '"' || c == '\\') {
+                ensureCapacity(end - i + 2);
+                data[size++] = '\\';
+                data[size++] = c;
+            } else if(c >= 0 && c < 0x20) {
+                ensureCapacity(end - i + 7);
+                data[size++] = '\\';
+                data[size++] = 'u';
+                data[size++] = '0';
+                data[size++] = '0';
+                data[size++] = HEX[c >> 4];
+                data[size++] = HEX[c & 0xF];
+            } else {
+                data[size++] = c;
+            }
+        }
+
+        data[size++] = '"';
+
+        return this;
+    }
+
+    public DocumentWriter value(int value) {
+        beforeValue();
+        ensureCapacity(11);
+
+        //Widened, as the magnitude of Integer.MIN_VALUE does not fit on an int
+        long magnitude = value;
+        if(magnitude < 0) {
+            data[size++] = '-';
+            magnitude = -magnitude;
+        }
+
+        int start = size;
+        do {
+            data[size++] = (byte) ('0' + magnitude % 10);
+            magnitude /= 10;
+        } while(magnitude > 0);
+
+        //Digits were written from the last one
+        for(int i = start, j = size - 1; i < j; i++, j--) {
+            byte swap = data[i];
+            data[i] = data[j];
+            data[j] = swap;
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes a float with the digits it needs, instead of the ones of the double it widens to.
+     * NaN and infinities are written as null, as JSON has no numbers for them
+     */
+    public DocumentWriter value(float value) {
+        beforeValue();
+        write(Float.isFinite(value) ? Float.toString(value).getBytes(StandardCharsets.US_ASCII) : NULL);
+
+        return this;
+    }
+
+    /**
+     * NaN and infinities are written as null, as JSON has no numbers for them
+     */
+    public DocumentWriter value(double value) {
+        if(value == Math.rint(value) && Math.abs(value) < Integer.MAX_VALUE)
+            return value((int) value).raw(".0");
+
+        beforeValue();
+        write(Double.isFinite(value) ? Double.toString(value).getBytes(StandardCharsets.US_ASCII) : NULL);
+
+        return this;
+    }
+
+    public DocumentWriter nullValue() {
+        beforeValue();
+        write(NULL);
+
+        return this;
+    }
+
+    public DocumentWriter value(boolean value) {
+        beforeValue();
+        write(value ? TRUE : FALSE);
+
+        return this;
+    }
+
+    /**
+     * Copies bytes as they are, without commas or escaping
+     */
+    public DocumentWriter raw(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+
+        return this;
+    }
+
+    public DocumentWriter raw(String text) {
+        write(text.getBytes(StandardCharsets.UTF_8));
+
+        return this;
+    }
+
+    public DocumentWriter raw(byte value) {
+        ensureCapacity(1);
+        data[size++] = value;
+
+        return this;
+    }
+
+    private DocumentWriter open(byte bracket) {
+        afterName = false;
+        raw(bracket);
+
+        if(++depth == hasValue.length)
+            hasValue = Arrays.copyOf(hasValue, hasValue.length * 2);
+
+        hasValue[depth] = false;
+
+        return this;
+    }
+
+    private DocumentWriter close(byte bracket) {
+        depth--;
+
+        //Documents written one after the other are not separated by commas
+        if(depth == 0)
+            hasValue[0] = false;
+
+        return raw(bracket);
+    }
+
+    private void beforeValue() {
+        if(afterName) {
+            afterName = false;
+            return;
+        }
+
+        if(hasValue[depth])
+            raw((byte) ',');
+
+        hasValue[depth] = true;
+    }
+
+    private void write(byte[] bytes) {
+        raw(bytes, 0, bytes.length);
+    }
+
+    private void ensureCapacity(int extra) {
+        if(size + extra > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+    }
+}
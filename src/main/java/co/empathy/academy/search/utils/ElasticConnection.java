@@ -0,0 +1,220 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import co.empathy.academy.search.configuration.ElasticProperties;
+import co.empathy.academy.search.utils.clases.ConnectionStats;
+import co.empathy.academy.search.utils.clases.NodeStats;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.sniff.Sniffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of connections to Elasticsearch shared by every request of the application, with the clients built over it.
+ * Records how long the requests wait for a connection of the pool and the latency of each node, so the pool can be sized
+ */
+public class ElasticConnection implements Closeable {
+    //Attribute of the context of a connection with the time it was given to its current request
+    private static final String LEASED = ElasticConnection.class.getName() + ".leased";
+    private final InstrumentedPool pool;
+    private final RestClient restClient;
+    private final ElasticsearchClient client;
+    private final ElasticsearchAsyncClient asyncClient;
+    private final Sniffer sniffer;
+    private final LatencyHistogram leaseWait = new LatencyHistogram();
+    private final Map<String, NodeLatency> nodes = new ConcurrentHashMap<>();
+
+    public ElasticConnection(ElasticProperties properties) throws IOException {
+        var ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                .setIoThreadCount(properties.getIoThreads() > 0 ? properties.getIoThreads() : Runtime.getRuntime().availableProcessors())
+                .setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+                .setSoTimeout((int) properties.getSocketTimeout().toMillis())
+                .setSoKeepAlive(true)
+                .build());
+
+        this.pool = new InstrumentedPool(ioReactor, leaseWait);
+        pool.setMaxTotal(properties.getMaxConnections());
+        pool.setDefaultMaxPerRoute(properties.getMaxConnectionsPerNode());
+
+        var credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(properties.getUsername(), properties.getPassword()));
+        long keepAlive = properties.getKeepAlive().toMillis();
+
+        var builder = RestClient.builder(properties.getHosts().stream().map(HttpHost::create).toArray(HttpHost[]::new))
+                .setRequestConfigCallback(config -> config
+                        .setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+                        .setSocketTimeout((int) properties.getSocketTimeout().toMillis())
+                        .setConnectionRequestTimeout((int) properties.getLeaseTimeout().toMillis()))
+                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+                        .setConnectionManager(pool)
+                        .setDefaultCredentialsProvider(credentialsProvider)
+                        //The time the server asks for if it is shorter, as Elasticsearch does not send any
+                        .setKeepAliveStrategy((response, context) -> {
+                            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                            return server > 0 ? Math.min(server, keepAlive) : keepAlive;
+                        })
+                        .addInterceptorLast((HttpResponseInterceptor) (response, context) -> recordLatency(context)))
+                .setFailureListener(new RestClient.FailureListener() {
+                    @Override
+                    public void onFailure(Node node) {
+                        nodeLatency(node.getHost()).failures().incrementAndGet();
+
+                        if(sniffer != null)
+                            sniffer.sniffOnFailure();
+                    }
+                });
+
+        this.restClient = builder.build();
+        var transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
+        this.client = new ElasticsearchClient(transport);
+        this.asyncClient = new ElasticsearchAsyncClient(transport);
+
+        long discoveryInterval = properties.getDiscoveryInterval().toMillis();
+        this.sniffer = discoveryInterval <= 0 ? null : Sniffer.builder(restClient)
+                .setSniffIntervalMillis((int) discoveryInterval)
+                .setSniffAfterFailureDelayMillis((int) properties.getDiscoveryAfterFailureDelay().toMillis())
+                .build();
+    }
+
+    public ElasticsearchClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the client whose requests complete a future instead of blocking the calling thread
+     */
+    public ElasticsearchAsyncClient getAsyncClient() {
+        return asyncClient;
+    }
+
+    public RestClient getRestClient() {
+        return restClient;
+    }
+
+    /**
+     * Returns the state of the pool, the time waited for its connections and the latency of each node
+     */
+    public ConnectionStats getStats() {
+        var total = pool.getTotalStats();
+
+        return new ConnectionStats(
+                total.getMax(),
+                pool.getDefaultMaxPerRoute(),
+                total.getLeased(),
+                total.getPending(),
+                total.getAvailable(),
+                leaseWait.count(),
+                leaseWait.percentile(50),
+                leaseWait.percentile(95),
+                leaseWait.percentile(99),
+                restClient.getNodes().stream().map(x -> x.getHost().toURI()).toList(),
+                nodes.entrySet().stream()
+                        .sorted(Map.Entry.comparingByKey())
+                        .map(x -> x.getValue().toStats(x.getKey()))
+                        .toList());
+    }
+
+    /**
+     * Records the time since the connection was leased, as the request interceptors run before waiting for the pool
+     */
+    private void recordLatency(HttpContext context) {
+        var adapted = HttpClientContext.adapt(context);
+        var connection = adapted.getConnection(NHttpClientConnection.class);
+        var host = adapted.getTargetHost();
+
+        if(connection == null || host == null)
+            return;
+
+        var leased = (Long) connection.getContext().getAttribute(LEASED);
+
+        if(leased != null)
+            nodeLatency(host).latency().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leased));
+    }
+
+    private NodeLatency nodeLatency(HttpHost host) {
+        return nodes.computeIfAbsent(host.toURI(), x -> new NodeLatency(new LatencyHistogram(), new AtomicLong()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(sniffer != null)
+            sniffer.close();
+
+        restClient.close();
+    }
+
+    /**
+     * Latencies of the responses of a node, and the requests it failed
+     */
+    private record NodeLatency(LatencyHistogram latency, AtomicLong failures) {
+        private NodeStats toStats(String host) {
+            return new NodeStats(host, latency.count(), failures.get(), latency.percentile(50), latency.percentile(95), latency.percentile(99));
+        }
+    }
+
+    /**
+     * Pool that records the time from asking for a connection until getting it, including opening it if there are none idle
+     */
+    private static class InstrumentedPool extends PoolingNHttpClientConnectionManager {
+        private final LatencyHistogram leaseWait;
+
+        private InstrumentedPool(DefaultConnectingIOReactor ioReactor, LatencyHistogram leaseWait) {
+            super(ioReactor);
+            this.leaseWait = leaseWait;
+        }
+
+        @Override
+        public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout, long leaseTimeout,
+                                                               TimeUnit timeUnit, FutureCallback<NHttpClientConnection> callback) {
+            long start = System.nanoTime();
+
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit, new FutureCallback<>() {
+                @Override
+                public void completed(NHttpClientConnection connection) {
+                    long now = System.nanoTime();
+                    leaseWait.record(TimeUnit.NANOSECONDS.toMillis(now - start));
+                    connection.getContext().setAttribute(LEASED, now);
+                    if(callback != null)
+                        callback.completed(connection);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    leaseWait.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    if(callback != null)
+                        callback.failed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    if(callback != null)
+                        callback.cancelled();
+                }
+            });
+        }
+    }
+}
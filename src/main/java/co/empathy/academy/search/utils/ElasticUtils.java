@@ -1,44 +1,154 @@
 package co.empathy.academy.search.utils;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.json.jackson.JacksonJsonpMapper;
-import co.elastic.clients.transport.ElasticsearchTransport;
-import co.elastic.clients.transport.rest_client.RestClientTransport;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.empathy.academy.search.configuration.ElasticProperties;
+import co.empathy.academy.search.exception.types.CursorExpiredException;
+import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
+import co.empathy.academy.search.exception.types.InternalServerException;
+import co.empathy.academy.search.exception.types.ServiceUnavailableException;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Handles creating the connection to the Elasticsearch container
+ * Handles the connection to the Elasticsearch container, for the classes that are not Spring beans.
+ * Every caller shares the single connection created by the Spring context, so there is only one pool of connections
  */
 
 public class ElasticUtils {
-    //Credentials used for the connection
-    private static final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-    //Creation of the rest client with the corresponding credentials
-    private static final RestClient restClient = RestClient.builder(
-            new HttpHost("localhost", 9200), new HttpHost("elasticsearch", 9200)
-    ).setHttpClientConfigCallback(httpAsyncClientBuilder -> {
-        credentialsProvider.setCredentials(AuthScope.ANY,
-                new UsernamePasswordCredentials("elastic", "searchPathRules"));
-
-        return httpAsyncClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-    }).build();
-    //Transport layer
-    private static final ElasticsearchTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
-    //Elasticsearch client, that is going to be used for the communication with the Elasticsearch container
-    private static final ElasticsearchClient client = new ElasticsearchClient(transport);
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    //Type of the error of the searches on a point in time that has expired
+    private static final String MISSING_CONTEXT = "search_context_missing_exception";
+    private static final Logger logger = LoggerFactory.getLogger(ElasticUtils.class);
+    private static ElasticConnection connection;
 
     private ElasticUtils(){}
 
+    /**
+     * Creates the connection shared by every caller. Called once by the Spring context, before any request is handled
+     * @return the shared connection, the existing one if it had been created already
+     */
+    public static synchronized ElasticConnection connect(ElasticProperties properties) throws IOException {
+        if(connection == null)
+            connection = new ElasticConnection(properties);
+        else
+            logger.warn("The connection to Elasticsearch was created already, the existing one is kept");
+
+        return connection;
+    }
+
+    /**
+     * Returns the shared connection. It is not created here with the default settings, as it would ignore the ones configured,
+     * so the classes using it must not get it on their static initialization
+     * @throws IllegalStateException if the Spring context has not created it yet
+     */
+    public static synchronized ElasticConnection getConnection() {
+        if(connection == null)
+            throw new IllegalStateException("The connection to Elasticsearch has not been created yet, it is created by the Spring context");
+
+        return connection;
+    }
+
     /**
      * Returns the Elasticsearch client for connecting to it from anywhere
      * @return ElasticsearchClient
      */
     public static ElasticsearchClient getClient() {
-        return client;
+        return getConnection().getClient();
+    }
+
+    /**
+     * Returns the Elasticsearch client whose requests do not block the calling thread
+     * @return ElasticsearchAsyncClient
+     */
+    public static ElasticsearchAsyncClient getAsyncClient() {
+        return getConnection().getAsyncClient();
+    }
+
+    /**
+     * Returns the low level client, for the requests the Elasticsearch client can not build
+     * @return RestClient
+     */
+    public static RestClient getRestClient() {
+        return getConnection().getRestClient();
+    }
+
+    /**
+     * Sends a request of the low level client without blocking
+     * @return future completed on the threads of the client, failed with a ResponseException if Elasticsearch answered with an error
+     */
+    public static CompletableFuture<Response> performRequestAsync(RestClient restClient, Request request) {
+        var result = new CompletableFuture<Response>();
+
+        var cancellable = restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        result.whenComplete((response, e) -> {
+            if(result.isCancelled())
+                cancellable.cancel();
+        });
+
+        return result;
+    }
+
+    /**
+     * Converts the failure of an asynchronous request into the exception returned to the user, depending on the status Elasticsearch answered with
+     */
+    public static RuntimeException toApiException(Throwable e) {
+        var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+        if(cause instanceof ElasticsearchException elastic) {
+            var error = elastic.error();
+            boolean missingContext = MISSING_CONTEXT.equals(error.type()) || error.rootCause().stream().anyMatch(x -> MISSING_CONTEXT.equals(x.type()));
+
+            return toApiException(elastic.status(), missingContext, elastic);
+        }
+        if(cause instanceof ResponseException response)
+            //The message has the body of the response, with the type of the error
+            return toApiException(response.getResponse().getStatusLine().getStatusCode(), response.getMessage().contains(MISSING_CONTEXT), response);
+        if(cause instanceof IOException io)
+            return new InternalServerException("There was a problem connecting to ElasticSearch", io);
+        if(cause instanceof RuntimeException runtime)
+            return runtime;
+
+        return new InternalServerException("There was a problem processing your request", cause instanceof Exception exception ? exception : new RuntimeException(cause));
+    }
+
+    /**
+     * @param missingContext if the point in time or scroll searched does not exist anymore
+     */
+    private static RuntimeException toApiException(int status, boolean missingContext, Exception e) {
+        if(missingContext)
+            return new CursorExpiredException("The cursor has expired, start the pagination again", e);
+        if(status == NOT_FOUND)
+            return new IndexDoesNotExistException("The index searched does not exist", e);
+        if(status == BAD_REQUEST)
+            return new IllegalArgumentException("The request is not valid", e);
+        if(status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE)
+            return new ServiceUnavailableException("ElasticSearch can not take the request now, try again later", e);
+
+        return new InternalServerException("There was a problem processing your request", e);
     }
 }
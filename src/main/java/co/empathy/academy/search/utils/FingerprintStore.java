@@ -0,0 +1,261 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Persistent table from the number of an id, like the 1 of tt0000001, to the fingerprint of its document.
+ * It is an open addressing hash table of primitive longs stored on a memory mapped file,
+ * so it survives between loads without using heap. A single mapping of up to 2 GB limits it to MAX_CAPACITY slots,
+ * about 47 million ids at MAX_LOAD, several times the titles or names of IMDb.
+ * It also remembers which ids have been seen on the current load
+ */
+public class FingerprintStore {
+    private static final int MAGIC = 0x46505354;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    //The table doubles its capacity when it is fuller than this
+    private static final double MAX_LOAD = 0.7;
+    //Highest power of two whose table fits on a single mapping, which is indexed by int
+    static final int MAX_CAPACITY = 1 << 26;
+    //Keys are stored plus one, so zero means an empty slot
+    private static final long EMPTY = 0;
+    private final Path path;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BitSet seen = new BitSet();
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private long size;
+
+    private FingerprintStore(Path path) throws IOException {
+        this.path = path;
+
+        if(Files.exists(path)) {
+            open(path);
+        } else {
+            create(path, INITIAL_CAPACITY);
+            open(path);
+        }
+    }
+
+    /**
+     * Opens the store of the file given, creating it if it does not exist
+     */
+    public static FingerprintStore open(String path) throws IOException {
+        return new FingerprintStore(Path.of(path));
+    }
+
+    /**
+     * Creates an empty store on the file given, removing the previous one if it exists
+     */
+    public static FingerprintStore create(String path) throws IOException {
+        Files.deleteIfExists(Path.of(path));
+
+        return new FingerprintStore(Path.of(path));
+    }
+
+    /**
+     * Returns the number of the id given, ignoring its prefix
+     */
+    public static long key(String id) {
+        long result = 0;
+
+        for(int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+
+            if(c >= '0' && c <= '9')
+                result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    private static void create(Path path, int capacity) throws IOException {
+        try(var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+            table.putInt(0, MAGIC);
+            table.putInt(4, capacity);
+            table.putLong(8, 0);
+            table.force();
+        }
+    }
+
+    private void open(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.table = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+        if(table.getInt(0) != MAGIC)
+            throw new IOException(file + " is not a fingerprints file");
+
+        this.capacity = table.getInt(4);
+        this.size = table.getLong(8);
+    }
+
+    /**
+     * Marks the key as seen on this load and tells whether its fingerprint is different from the stored one
+     * @return true if the key is new or its fingerprint changed
+     */
+    public boolean hasChanged(long key, long fingerprint) {
+        synchronized(seen) {
+            seen.set((int) key);
+        }
+
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            return table.getLong(offset(slot)) == EMPTY || table.getLong(offset(slot) + 8) != fingerprint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(long key, long fingerprint) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if(size + 1 > capacity * MAX_LOAD) {
+                if(capacity >= MAX_CAPACITY)
+                    throw new IOException("The fingerprint store " + path + " is full, it holds up to " + (long) (MAX_CAPACITY * MAX_LOAD) + " ids");
+
+                resize();
+            }
+
+            int slot = find(key);
+            int offset = offset(slot);
+
+            if(table.getLong(offset) == EMPTY)
+                table.putLong(8, ++size);
+
+            table.putLong(offset, key + 1);
+            table.putLong(offset + 8, fingerprint);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long key) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+
+            if(table.getLong(offset(slot)) == EMPTY)
+                return;
+
+            table.putLong(offset(slot), EMPTY);
+            table.putLong(8, --size);
+
+            //Moves back the following slots of the cluster, so lookups do not stop at the new hole
+            for(int next = (slot + 1) & (capacity - 1); table.getLong(offset(next)) != EMPTY; next = (next + 1) & (capacity - 1)) {
+                long nextKey = table.getLong(offset(next)) - 1;
+                long nextFingerprint = table.getLong(offset(next) + 8);
+                table.putLong(offset(next), EMPTY);
+
+                int target = find(nextKey);
+                table.putLong(offset(target), nextKey + 1);
+                table.putLong(offset(target) + 8, nextFingerprint);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Calls the consumer with every stored key that has not been seen on this load
+     */
+    public void forEachUnseen(LongConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for(int slot = 0; slot < capacity; slot++) {
+                long key = table.getLong(offset(slot)) - 1;
+
+                if(key >= 0 && !seen.get((int) key))
+                    consumer.accept(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the key, or the empty slot where it should be stored
+     */
+    private int find(long key) {
+        int slot = (int) (mix(key) & (capacity - 1));
+
+        while(true) {
+            long stored = table.getLong(offset(slot));
+
+            if(stored == EMPTY || stored == key + 1)
+                return slot;
+
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+
+    /**
+     * Copies every entry to a new file with twice the capacity, replacing the current one
+     */
+    private void resize() throws IOException {
+        var resized = path.resolveSibling(path.getFileName() + ".resize");
+        Files.deleteIfExists(resized);
+        create(resized, capacity * 2);
+
+        var old = table;
+        int oldCapacity = capacity;
+
+        channel.close();
+        open(resized);
+
+        for(int slot = 0; slot < oldCapacity; slot++) {
+            long stored = old.getLong(offset(slot));
+
+            if(stored != EMPTY) {
+                int offset = offset(find(stored - 1));
+                table.putLong(offset, stored);
+                table.putLong(offset + 8, old.getLong(offset(slot) + 8));
+                table.putLong(8, ++size);
+            }
+        }
+
+        table.force();
+        channel.close();
+        Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(path);
+    }
+
+    /**
+     * Writes the changes to disk and closes the file
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            table.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Channel over the decompressed bytes of a gzip file.
+ * The file is decompressed on its own thread into a small pool of large reusable buffers,
+ * so decompression overlaps with the work of whoever reads the channel
+ */
+public class GzipChannel implements ReadableByteChannel {
+    //Size of each of the buffers the decompressed bytes are written to
+    private static final int CHUNK_SIZE = 1 << 22;
+    //Buffers that can be decompressed ahead of the reader
+    private static final int CHUNKS = 4;
+    //Size of the buffer of compressed bytes read from the file
+    private static final int INPUT_BUFFER_SIZE = 1 << 20;
+    //Marker telling the reader there are no more bytes
+    private static final Chunk END = new Chunk(new byte[0], 0);
+    private final FileChannel file;
+    private final long compressedSize;
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNKS + 1);
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(CHUNKS);
+    private final Thread decompressor;
+    private volatile long compressedPosition;
+    private volatile IOException failure;
+    private Chunk current;
+    private int position;
+    private boolean open = true;
+
+    public GzipChannel(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.compressedSize = file.size();
+
+        for(int i = 0; i < CHUNKS; i++)
+            free.add(new byte[CHUNK_SIZE]);
+
+        this.decompressor = new Thread(this::decompress, "gunzip-" + path.getFileName());
+        this.decompressor.setDaemon(true);
+        this.decompressor.start();
+    }
+
+    private void decompress() {
+        try(var input = new GZIPInputStream(Channels.newInputStream(file), INPUT_BUFFER_SIZE)) {
+            int length = CHUNK_SIZE;
+
+            while(length == CHUNK_SIZE) {
+                byte[] data = free.take();
+
+                //The buffer goes back to the pool unless it is handed to the reader
+                try {
+                    length = input.readNBytes(data, 0, data.length);
+                    compressedPosition = file.position();
+
+                    if(length > 0) {
+                        filled.put(new Chunk(data, length));
+                        data = null;
+                    }
+                } finally {
+                    if(data != null)
+                        free.offer(data);
+                }
+            }
+
+            compressedPosition = compressedSize;
+        } catch(IOException e) {
+            failure = e;
+        } catch(InterruptedException e) {
+            //The channel was closed
+            Thread.currentThread().interrupt();
+        } finally {
+            //There is always room for it, as only CHUNKS buffers exist
+            filled.offer(END);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if(!open)
+            throw new ClosedChannelException();
+
+        if(current == null || (current != END && position == current.length())) {
+            if(current != null)
+                free.add(current.data());
+
+            current = take();
+            position = 0;
+        }
+
+        if(current == END) {
+            if(failure != null)
+                throw failure;
+
+            return -1;
+        }
+
+        int length = Math.min(destination.remaining(), current.length() - position);
+        destination.put(current.data(), position, length);
+        position += length;
+
+        return length;
+    }
+
+    private Chunk take() throws InterruptedIOException {
+        try {
+            return filled.take();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the decompressed bytes");
+        }
+    }
+
+    /**
+     * @return fraction of the compressed file already decompressed, from 0 to 1
+     */
+    public double progress() {
+        return compressedSize == 0 ? 1 : (double) compressedPosition / compressedSize;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        decompressor.interrupt();
+        file.close();
+
+        if(current != null && current != END)
+            free.offer(current.data());
+
+        current = null;
+    }
+
+    /**
+     * Buffer with the amount of decompressed bytes written to it
+     */
+    private record Chunk(byte[] data, int length) {}
+}
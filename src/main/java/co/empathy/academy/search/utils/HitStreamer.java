@@ -0,0 +1,228 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.JsonpMapper;
+import co.empathy.academy.search.exception.types.InternalServerException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs searches through the low level client and copies the _source of the hits token by token into the output,
+ * on the same {hits:[{id,source}],aggs:[{key,doc_count}]} shape as the rest of the searches. No tree is built for
+ * the hits, so big pages only take the bytes of the response of Elasticsearch
+ */
+public class HitStreamer {
+    private static final JsonFactory factory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    //With typed keys, the aggregations and suggestions can be read by the Elasticsearch client if there are no hits
+    private static final String TYPED_KEYS = "typed_keys";
+
+    private HitStreamer() {}
+
+    /**
+     * Sends a search to Elasticsearch without blocking
+     * @return future with the bytes of the response, to be written with write
+     */
+    public static CompletableFuture<byte[]> search(RestClient restClient, JsonpMapper mapper, String index, SearchRequest search) {
+        var body = new ByteArrayOutputStream();
+        var generator = mapper.jsonProvider().createGenerator(body);
+        search.serialize(generator, mapper);
+        generator.close();
+
+        var request = new Request("POST", "/" + index + "/_search");
+        request.addParameter(TYPED_KEYS, "true");
+        request.setEntity(new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON));
+
+        return ElasticUtils.performRequestAsync(restClient, request)
+                .thenApply(response -> {
+                    try {
+                        return EntityUtils.toByteArray(response.getEntity());
+
+                    } catch(IOException e) {
+                        throw new InternalServerException("There was a problem connecting to ElasticSearch", e);
+                    }
+                })
+                .exceptionally(e -> {
+                    throw ElasticUtils.toApiException(e);
+                });
+    }
+
+    /**
+     * Writes the hits of a response, and the buckets of the aggregation if there was one.
+     * A response without hits or aggregation gets the suggestions instead, like the rest of the searches
+     * @param aggName name of the aggregation of the search, null if it has none
+     */
+    public static void write(byte[] response, String aggName, JsonpMapper mapper, OutputStream output) throws IOException {
+        if(aggName == null && !hasHits(response)) {
+            var parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(response));
+            var typed = SearchResponse.createSearchResponseDeserializer(JsonData._DESERIALIZER).deserialize(parser, mapper);
+
+            output.write(SuggestionSearch.getResult(typed).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        try(var parser = factory.createParser(response); var generator = factory.createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("hits");
+
+            if(moveToField(parser, "hits", 1) && moveToField(parser, "hits", 2))
+                writeHits(parser, generator);
+
+            generator.writeEndArray();
+
+            if(aggName != null) {
+                generator.writeArrayFieldStart("aggs");
+
+                //The hits are skipped already, so the aggregations are searched from where they ended
+                if(moveToField(parser, "aggregations", 1))
+                    writeBuckets(parser, generator, aggName);
+
+                generator.writeEndArray();
+            }
+
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Tells whether a response of search has any hit, without parsing the rest of it
+     */
+    public static boolean hasHits(byte[] response) {
+        try(var parser = factory.createParser(response)) {
+            return moveToField(parser, "hits", 1) && moveToField(parser, "hits", 2)
+                    && parser.nextToken() == JsonToken.START_ARRAY && parser.nextToken() != JsonToken.END_ARRAY;
+        } catch(IOException e) {
+            throw new InternalServerException("There was a problem connecting to ElasticSearch", e);
+        }
+    }
+
+    /**
+     * Moves the parser past the name of a field, skipping the values of the fields before it
+     * @param depth of the object the field is on, 1 for the fields of the response
+     * @return false if the object ended without the field
+     */
+    private static boolean moveToField(JsonParser parser, String name, int depth) throws IOException {
+        JsonToken token;
+
+        while((token = parser.nextToken()) != null) {
+            if(token == JsonToken.END_OBJECT && nesting(parser) < depth)
+                return false;
+
+            if(token == JsonToken.FIELD_NAME && nesting(parser) == depth && name.equals(parser.getCurrentName()))
+                return true;
+
+            if(token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                if(nesting(parser) > depth)
+                    parser.skipChildren();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the amount of objects and arrays the parser is in
+     */
+    private static int nesting(JsonParser parser) {
+        int result = 0;
+
+        for(var context = parser.getParsingContext(); !context.inRoot(); context = context.getParent())
+            result++;
+
+        return result;
+    }
+
+    /**
+     * Copies the id and source of every hit. Elasticsearch writes the _id of a hit before its _source
+     */
+    private static void writeHits(JsonParser parser, JsonGenerator generator) throws IOException {
+        if(parser.nextToken() != JsonToken.START_ARRAY)
+            return;
+
+        while(parser.nextToken() == JsonToken.START_OBJECT) {
+            String id = null;
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                parser.nextToken();
+
+                if("_id".equals(field)) {
+                    id = parser.getText();
+                } else if("_source".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", id);
+                    generator.writeFieldName("source");
+                    generator.copyCurrentStructure(parser);
+                    generator.writeEndObject();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the key and count of the buckets of the aggregation. With typed keys its name is prefixed by its type, like sterms#genres
+     */
+    private static void writeBuckets(JsonParser parser, JsonGenerator generator, String aggName) throws IOException {
+        if(parser.nextToken() != JsonToken.START_OBJECT)
+            return;
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            var name = parser.getCurrentName();
+            parser.nextToken();
+
+            if(!name.substring(name.indexOf('#') + 1).equals(aggName) || parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+
+                if(parser.nextToken() == JsonToken.START_ARRAY && "buckets".equals(field))
+                    while(parser.nextToken() == JsonToken.START_OBJECT)
+                        writeBucket(parser, generator);
+                else
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static void writeBucket(JsonParser parser, JsonGenerator generator) throws IOException {
+        String key = null;
+        long docCount = 0;
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            parser.nextToken();
+
+            if("key".equals(field))
+                key = parser.getText();
+            else if("doc_count".equals(field))
+                docCount = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeNumberField("doc_count", docCount);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,135 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.JobStatus;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load running on the background. The pipeline reports its progress here, and the jobs endpoints read it
+ */
+public class IndexingJob {
+    public enum State { RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    private final String id;
+    private final String type;
+    private final String index;
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LatencyHistogram bulkLatency = new LatencyHistogram();
+    private volatile double progress;
+    private volatile long endNanos;
+    private volatile State state = State.RUNNING;
+    private volatile String error;
+    private volatile String idPrefix;
+    private volatile CheckpointTracker checkpoints;
+    private volatile DeadLetterWriter deadLetters;
+    private Future<?> future;
+    private boolean cancelled;
+
+    public IndexingJob(String id, String type, String index) {
+        this.id = id;
+        this.type = type;
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void addDocuments(long amount) {
+        documents.addAndGet(amount);
+    }
+
+    /**
+     * Adds the bytes of a batch read
+     * @param progress fraction of the input read after the batch
+     */
+    public void addBytes(long amount, double progress) {
+        bytes.addAndGet(amount);
+        this.progress = progress;
+    }
+
+    public void recordBulk(long latencyMillis) {
+        bulkLatency.record(latencyMillis);
+    }
+
+    /**
+     * Reports the last acknowledged document from the checkpoints of the load
+     * @param idPrefix of the ids of the documents, like tt
+     */
+    public void track(CheckpointTracker checkpoints, DeadLetterWriter deadLetters, String idPrefix) {
+        this.checkpoints = checkpoints;
+        this.deadLetters = deadLetters;
+        this.idPrefix = idPrefix;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+
+        if(cancelled)
+            future.cancel(true);
+    }
+
+    /**
+     * Interrupts the load. The pipeline stops and the job ends as CANCELLED
+     */
+    public synchronized void cancel() {
+        if(state != State.RUNNING)
+            return;
+
+        cancelled = true;
+
+        if(future != null)
+            future.cancel(true);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    void finish(State state, String error) {
+        this.error = error;
+        this.endNanos = System.nanoTime();
+        this.state = state;
+    }
+
+    public JobStatus getStatus() {
+        double elapsed = ((state == State.RUNNING ? System.nanoTime() : endNanos) - startNanos) / 1e9;
+        double done = state == State.COMPLETED ? 1 : progress;
+        Long eta = state == State.RUNNING && done > 0 ? Math.round(elapsed * (1 - done) / done) : null;
+        var checkpoint = checkpoints == null ? null : checkpoints.getLast();
+
+        return new JobStatus(
+                id,
+                type,
+                index,
+                state.name(),
+                started.toString(),
+                elapsed,
+                documents.get(),
+                elapsed > 0 ? documents.get() / elapsed : 0,
+                bytes.get(),
+                elapsed > 0 ? bytes.get() / elapsed : 0,
+                done,
+                eta,
+                bulkLatency.count(),
+                bulkLatency.percentile(50),
+                bulkLatency.percentile(95),
+                bulkLatency.percentile(99),
+                deadLetters == null ? 0 : deadLetters.getWritten(),
+                checkpoint == null ? null : idPrefix + String.format("%07d", checkpoint.lastKey()),
+                error);
+    }
+}
@@ -0,0 +1,90 @@
+package co.empathy.academy.search.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs the loads on the background and keeps track of them by their id
+ */
+public class IndexingJobs {
+    //Finished jobs kept for querying their status. The oldest ones are forgotten first
+    private static final int FINISHED_JOBS_KEPT = 50;
+    private static final Logger logger = LoggerFactory.getLogger(IndexingJobs.class);
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    private static final Map<String, IndexingJob> jobs = new LinkedHashMap<>();
+
+    private IndexingJobs() {}
+
+    /**
+     * Starts a job. Only one job of each type can be running at the same time
+     * @param type of the load, like films or names
+     * @param index where the documents are sent
+     * @param work done by the job. It is interrupted when the job is cancelled
+     * @return the job started
+     */
+    public static synchronized IndexingJob start(String type, String index, Consumer<IndexingJob> work) {
+        checkNotRunning(type);
+
+        var job = new IndexingJob(UUID.randomUUID().toString(), type, index);
+        jobs.put(job.getId(), job);
+        forgetFinished();
+
+        job.setFuture(executor.submit(() -> {
+            try {
+                work.accept(job);
+                job.finish(IndexingJob.State.COMPLETED, null);
+            } catch(Exception e) {
+                if(job.isCancelled()) {
+                    logger.info("Job {} cancelled", job.getId());
+                    job.finish(IndexingJob.State.CANCELLED, null);
+                } else {
+                    logger.error("Job {} failed", job.getId(), e);
+                    job.finish(IndexingJob.State.FAILED, e.getCause() == null ? e.getMessage() : e.getMessage() + ": " + e.getCause().getMessage());
+                }
+            } finally {
+                //Even a load that did not finish may have changed the documents the searches return
+                QueryCache.invalidate();
+                NameEnricher.invalidate();
+            }
+        }));
+
+        return job;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if there is a job of the type given running
+     */
+    public static synchronized void checkNotRunning(String type) {
+        for(IndexingJob job : jobs.values())
+            if(job.getType().equals(type) && job.getState() == IndexingJob.State.RUNNING)
+                throw new IllegalArgumentException("There is already a " + type + " load running, job " + job.getId());
+    }
+
+    public static synchronized Optional<IndexingJob> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Returns every job known, the oldest first
+     */
+    public static synchronized List<IndexingJob> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    private static void forgetFinished() {
+        long finished = jobs.values().stream().filter(x -> x.getState() != IndexingJob.State.RUNNING).count();
+        var iterator = jobs.values().iterator();
+
+        while(finished > FINISHED_JOBS_KEPT && iterator.hasNext()) {
+            if(iterator.next().getState() != IndexingJob.State.RUNNING) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
@@ -2,52 +2,518 @@ package co.empathy.academy.search.utils;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
-import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
 import co.empathy.academy.search.exception.types.InternalServerException;
+import co.empathy.academy.search.utils.clases.JsonContent;
+import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Used for reading data from the file specified on batches
+ * Used for reading data from the file specified on batches.
+ * The work is split on three stages connected by bounded queues: one thread joining the tsv files,
+ * several threads converting the lines into documents and several threads sending bulk requests
  */
 public class IndexingUtils {
-    //Size of the batches
+    //Alias the searches read from
+    private static final String FILMS_INDEX = "films";
+    private static final String NAMES_INDEX = "names";
+    //Maximum amount of documents on a batch. Batches are usually closed before, by the byte budget of the throttle
     private static final int BATCH_SIZE = 25000;
+    //Threads converting the raw lines into documents
+    private static final int PARSERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    //Maximum bulk requests that can be on flight at the same time. The throttle may allow less
+    private static final int SENDERS = 4;
+    //Batches that can be waiting on a queue for each consumer thread
+    private static final int QUEUE_BATCHES_PER_THREAD = 2;
+    //Markers telling the consumers of a queue that there is nothing else to process
+    private static final RawBatch END_OF_ROWS = new RawBatch(-1, new RowBatch(0));
+    private static final DocumentBatch END_OF_DOCUMENTS = new DocumentBatch(-1, List.of());
+    //File next to the films tsv keeping the fingerprint of every indexed title between loads
+    private static final String FINGERPRINTS_FILE = "films.fingerprints";
+    //Same for the roll-ups sent to every series
+    private static final String ROLLUPS_FILE = "films.rollups.fingerprints";
+    private static final String FILMS_ID_PREFIX = "tt";
+    private static final String NAMES_ID_PREFIX = "nm";
     private static final Logger logger = LoggerFactory.getLogger(IndexingUtils.class);
     private final ElasticsearchClient client = ElasticUtils.getClient();
+    private final RestClient restClient = ElasticUtils.getRestClient();
+    //Job the progress is reported to
+    private final IndexingJob job;
+
+    public IndexingUtils(IndexingJob job) {
+        this.job = job;
+    }
 
     /**
      * Index the data
+     * @param index where the documents are sent. On full loads it is a new version of the films index,
+     *              that replaces the published one once it is complete
+     * @param delta if true, only the titles whose lines changed since the previous load are sent,
+     *              and the titles that are not on the files anymore are deleted
+     * @param sortInputs if true, the title files that are not sorted by tconst are sorted first, on copies next to them
+     * @param resumeFrom checkpoint of a full load that did not finish, to continue it. Can be null
      */
-    public void indexData(String filmsPath, String ratingsPath, String akasPath, String crewPath, String episodesPath, String principalPath, String nameBasicsPath) {
+    public void indexData(String filmsPath, String ratingsPath, String akasPath, String crewPath, String episodesPath, String principalPath, String nameBasicsPath,
+                          String index, boolean delta, boolean sortInputs, Checkpoint resumeFrom) {
+        var directory = Path.of(filmsPath).toAbsolutePath().getParent();
+        var fingerprintsPath = directory.resolve(FINGERPRINTS_FILE);
+        //Full loads build their fingerprints apart, so the ones of the published index are kept if the load fails
+        var buildingPath = directory.resolve(FINGERPRINTS_FILE + ".building");
+        var rollupsPath = directory.resolve(ROLLUPS_FILE);
+        var rollupsBuildingPath = directory.resolve(ROLLUPS_FILE + ".building");
+        var checkpointPath = Checkpoint.path(filmsPath, FILMS_INDEX);
+        CheckpointTracker checkpoints = null;
+        boolean published = false;
+
         try {
-            logger.info("Started indexing");
-            var batchReader = new BatchReader(filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalPath, nameBasicsPath, BATCH_SIZE);
+            logger.info("Started indexing{} on {}{}", delta ? " changes" : "", index, resumeFrom == null ? "" : ", resuming after document " + resumeFrom.documents());
+
+            //A new full load gives up the one that could be resumed, so its index is not kept anymore
+            if(!delta && resumeFrom == null) {
+                var abandoned = Checkpoint.load(checkpointPath);
+                if(abandoned.isPresent() && !abandoned.get().index().equals(index))
+                    VersionedIndex.discard(abandoned.get().index());
+
+                Files.deleteIfExists(checkpointPath);
+            }
+
+            //The name basics file is read at random, so it does not need to be sorted
+            if(sortInputs) {
+                filmsPath = TsvSorter.sorted(filmsPath);
+                ratingsPath = TsvSorter.sorted(ratingsPath);
+                akasPath = TsvSorter.sorted(akasPath);
+                crewPath = TsvSorter.sorted(crewPath);
+                episodesPath = TsvSorter.sorted(episodesPath);
+                principalPath = TsvSorter.sorted(principalPath);
+            }
+
+            var source = new BatchReader(filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalPath, nameBasicsPath, BATCH_SIZE,
+                    resumeFrom == null ? null : resumeFrom.offsetsArray());
+
+            if(resumeFrom != null && !resumeFrom.sizes().equals(Arrays.stream(source.sizes()).boxed().toList())) {
+                source.close();
+                throw new IOException("The files changed since the checkpoint, a new load has to be started");
+            }
 
-            while(!batchReader.hasFinished()) {
-                var batch = batchReader.getBatch();
+            //Only full loads are checkpointed, delta loads are short and start again from the beginning
+            if(!delta) {
+                checkpoints = new CheckpointTracker(checkpointPath, index, source.sizes(), resumeFrom);
+                job.addDocuments(resumeFrom == null ? 0 : resumeFrom.documents());
+            }
+
+            FingerprintStore fingerprints;
+            FingerprintStore rollups;
+            if(delta) {
+                fingerprints = FingerprintStore.open(fingerprintsPath.toString());
+                rollups = FingerprintStore.open(rollupsPath.toString());
+            } else if(resumeFrom != null) {
+                fingerprints = FingerprintStore.open(buildingPath.toString());
+                rollups = FingerprintStore.open(rollupsBuildingPath.toString());
+            } else {
+                fingerprints = FingerprintStore.create(buildingPath.toString());
+                rollups = FingerprintStore.create(rollupsBuildingPath.toString());
+            }
+
+            index(source, index, FILMS_ID_PREFIX, directory, fingerprints, rollups, delta, checkpoints);
+
+            //Delta loads read every title too, so their typeahead and leaderboard are complete.
+            //They are written with the index behind the alias, which is the one the searches check them against
+            var generation = delta ? Objects.requireNonNullElse(VersionedIndex.findPublished(FILMS_INDEX), index) : index;
+            source.getTypeahead().write(TitleAutocomplete.buildingPath(index), generation);
+            source.getLeaderboard().write(BrowseLeaderboard.buildingPath(index), generation);
+
+            if(!delta) {
+                VersionedIndex.publish(FILMS_INDEX, index);
+                Files.move(buildingPath, fingerprintsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(rollupsBuildingPath, rollupsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(checkpointPath);
+            }
+
+            published = true;
+            publishTitles(index);
+
+        } catch(IOException | ElasticsearchException e) {
+            throw new InternalServerException("There was a problem processing your request", e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("There was a problem processing your request", e);
+        } finally {
+            if(!delta && !published)
+                abandon(index, checkpoints, checkpointPath, buildingPath, rollupsBuildingPath);
+        }
+    }
 
-                client.bulk(_0 -> _0
-                    .operations(batch.stream()
-                        .map(x ->
-                                BulkOperation.of(_1 -> _1
-                                    .index(_2 -> _2
-                                            .index("films")
-                                            .document(x.json())
-                                            .id(x.id())
-                                    )
-                                )
-                        ).toList())
-                );
+    /**
+     * Joins the title files once and writes them to a snapshot, so the films index can be rebuilt later without parsing them
+     * @param snapshotPath file the snapshot is written to
+     */
+    public void writeSnapshot(String filmsPath, String ratingsPath, String akasPath, String crewPath, String episodesPath, String principalPath, String nameBasicsPath,
+                              String snapshotPath) {
+        try {
+            logger.info("Started writing the snapshot {}", snapshotPath);
+            var source = new BatchReader(filmsPath, ratingsPath, akasPath, crewPath, episodesPath, principalPath, nameBasicsPath, BATCH_SIZE, null);
 
+            try {
+                long titles = SnapshotWriter.write(source, Path.of(snapshotPath), job);
+                logger.info("Wrote {} titles to the snapshot {}", titles, snapshotPath);
+            } finally {
+                source.close();
             }
+        } catch(IOException e) {
+            throw new InternalServerException("There was a problem processing your request", e);
+        }
+    }
+
+    /**
+     * Indexes every title of a snapshot on a new version of the films index, and publishes it once it is complete.
+     * The fingerprints of the delta loads are not touched, they keep describing the last load from the tsv files
+     * @param index new version of the films index the documents are sent to
+     */
+    public void indexSnapshot(String snapshotPath, String index) {
+        boolean published = false;
+
+        try {
+            logger.info("Started indexing the snapshot {} on {}", snapshotPath, index);
+            var source = new SnapshotReader(snapshotPath, BATCH_SIZE, null);
+            index(source, index, FILMS_ID_PREFIX, Path.of(snapshotPath).toAbsolutePath().getParent(), null, null, false, null);
+
+            source.getTypeahead().write(TitleAutocomplete.buildingPath(index), index);
+            source.getLeaderboard().write(BrowseLeaderboard.buildingPath(index), index);
+
+            VersionedIndex.publish(FILMS_INDEX, index);
+            published = true;
+            publishTitles(index);
 
-            logger.info("Indexed");
-            batchReader.close();
         } catch(IOException | ElasticsearchException e) {
             throw new InternalServerException("There was a problem processing your request", e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("There was a problem processing your request", e);
+        } finally {
+            if(!published) {
+                discardTitles(index);
+                VersionedIndex.discard(index);
+            }
+        }
+    }
+
+    /**
+     * Index every person of the name basics file on its own index
+     */
+    public void indexNames(String nameBasicsPath) {
+        try {
+            logger.info("Started indexing names");
+            index(new NameBatchReader(nameBasicsPath, BATCH_SIZE), NAMES_INDEX, NAMES_ID_PREFIX, Path.of(nameBasicsPath).toAbsolutePath().getParent(), null, null, false, null);
+        } catch(IOException e) {
+            throw new InternalServerException("There was a problem processing your request", e);
+        }
+    }
+
+    /**
+     * Replaces the typeahead of the autocomplete and the leaderboard of the browsing with the ones of a load, once its index is published.
+     * The load is not failed if they can not be, as its index is already the one searched
+     */
+    private void publishTitles(String index) {
+        try {
+            TitleAutocomplete.publish(TitleAutocomplete.buildingPath(index));
+        } catch(IOException e) {
+            logger.warn("Could not publish the typeahead of {}, the autocomplete keeps the previous titles", index, e);
+        }
+
+        try {
+            BrowseLeaderboard.publish(BrowseLeaderboard.buildingPath(index));
+        } catch(IOException e) {
+            logger.warn("Could not publish the leaderboard of {}, browsing keeps the previous titles", index, e);
+        }
+    }
+
+    /**
+     * Removes the typeahead and leaderboard written by a load that is not going to be published
+     */
+    private void discardTitles(String index) {
+        try {
+            Files.deleteIfExists(TitleAutocomplete.buildingPath(index));
+            Files.deleteIfExists(BrowseLeaderboard.buildingPath(index));
+        } catch(IOException e) {
+            logger.warn("Could not remove the typeahead and leaderboard of {}", index, e);
+        }
+    }
+
+    /**
+     * Leaves a full load that did not finish. If it failed, its index and checkpoint are kept so it can be resumed.
+     * If it was cancelled or failed before any checkpoint, everything is removed
+     */
+    private void abandon(String index, CheckpointTracker checkpoints, Path checkpointPath, Path buildingPath, Path rollupsBuildingPath) {
+        //A resumed load builds them again
+        discardTitles(index);
+
+        try {
+            if(checkpoints != null && !job.isCancelled())
+                checkpoints.saveLast();
+
+            if(!job.isCancelled() && Files.exists(checkpointPath)) {
+                logger.warn("The load of {} stopped, it can be resumed from {}", index, checkpointPath);
+                return;
+            }
+
+            Files.deleteIfExists(checkpointPath);
+            Files.deleteIfExists(buildingPath);
+            Files.deleteIfExists(rollupsBuildingPath);
+        } catch(IOException e) {
+            logger.warn("Could not clean the checkpoint of {}", index, e);
+        }
+
+        VersionedIndex.discard(index);
+    }
+
+    /**
+     * Runs the pipeline, sending every document of the source to the index given
+     * @param idPrefix of the ids of the documents, like tt
+     * @param deadLetterDirectory where the documents that could not be indexed are written
+     * @param fingerprints of the previous load. If given, only the changed documents are sent. Can be null
+     * @param updateFingerprints of the partial updates of the previous load. If given, only the changed updates are sent. Can be null
+     * @param deleteUnseen if true, the documents of the fingerprints that are not on the source are deleted.
+     *                     Only for delta loads, a resumed full load has not seen the titles before its checkpoint
+     * @param checkpoints where the acknowledged batches are reported. Can be null
+     */
+    private void index(DocumentSource source, String index, String idPrefix, Path deadLetterDirectory, FingerprintStore fingerprints,
+                       FingerprintStore updateFingerprints, boolean deleteUnseen, CheckpointTracker checkpoints) {
+        var throttle = new BulkThrottle(SENDERS);
+        var deadLetters = new DeadLetterWriter(deadLetterDirectory, index);
+        var bulkSender = new BulkSender(restClient, client._jsonpMapper(), index, throttle, deadLetters, fingerprints, updateFingerprints, job);
+        job.track(checkpoints, deadLetters, idPrefix);
+
+        BlockingQueue<RawBatch> rowBatches = new ArrayBlockingQueue<>(PARSERS * QUEUE_BATCHES_PER_THREAD);
+        BlockingQueue<DocumentBatch> documentBatches = new ArrayBlockingQueue<>(SENDERS * QUEUE_BATCHES_PER_THREAD);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicLong indexed = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(1 + PARSERS + SENDERS);
+
+        try {
+            var reader = submit(executor, failure, () -> read(source, rowBatches, throttle, checkpoints));
+
+            List<Future<?>> parsers = new ArrayList<>();
+            for(int i = 0; i < PARSERS; i++)
+                parsers.add(submit(executor, failure, () -> parse(source, rowBatches, documentBatches, fingerprints, checkpoints)));
+
+            List<Future<?>> senders = new ArrayList<>();
+            for(int i = 0; i < SENDERS; i++)
+                senders.add(submit(executor, failure, () -> send(documentBatches, bulkSender, indexed, checkpoints)));
+
+            reader.get();
+            for(Future<?> parser : parsers)
+                parser.get();
+
+            //Only when every parser has finished, the senders can be told that no more documents will come
+            if(failure.get() == null)
+                for(int i = 0; i < SENDERS; i++)
+                    documentBatches.put(END_OF_DOCUMENTS);
+
+            for(Future<?> sender : senders)
+                sender.get();
+
+            if(failure.get() == null && fingerprints != null && deleteUnseen)
+                indexed.addAndGet(deleteUnseen(fingerprints, bulkSender, idPrefix));
+
+            if(failure.get() == null)
+                sendUpdates(source, bulkSender, updateFingerprints);
+
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch(ExecutionException | IOException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            executor.shutdownNow();
+            closeReader(source);
+            closeDeadLetters(deadLetters);
+            closeFingerprints(fingerprints);
+            closeFingerprints(updateFingerprints);
+        }
+
+        if(failure.get() != null)
+            throw new InternalServerException("There was a problem processing your request", failure.get());
+
+        logger.info("Indexed {} documents on {}", indexed.get(), index);
+
+        if(deadLetters.getWritten() > 0)
+            logger.warn("{} documents could not be indexed, they were written to {}", deadLetters.getWritten(), deadLetters.getPath());
+    }
+
+    /**
+     * First stage. Reads the files and queues the raw lines of every document
+     */
+    private void read(DocumentSource source, BlockingQueue<RawBatch> rowBatches, BulkThrottle throttle, CheckpointTracker checkpoints) throws IOException, InterruptedException {
+        var cursor = new TsvCursor();
+        long sequence = 0;
+
+        while(!source.hasFinished()) {
+            var batch = source.getRawBatch(throttle.getByteBudget());
+
+            if(batch.isEmpty())
+                continue;
+
+            job.addBytes(batch.bytes(), source.progress());
+
+            if(checkpoints != null)
+                checkpoints.register(sequence, batch.id(batch.titles() - 1, cursor), batch.titles(), source.offsets());
+
+            rowBatches.put(new RawBatch(sequence++, batch));
+        }
+
+        for(int i = 0; i < PARSERS; i++)
+            rowBatches.put(END_OF_ROWS);
+    }
+
+    /**
+     * Second stage. Converts the raw lines into documents
+     */
+    private void parse(DocumentSource source, BlockingQueue<RawBatch> rowBatches, BlockingQueue<DocumentBatch> documentBatches,
+                       FingerprintStore fingerprints, CheckpointTracker checkpoints) throws IOException, InterruptedException {
+        var cursor = new TsvCursor();
+        var writer = new DocumentWriter(DocumentSource.INITIAL_BATCH_BYTES);
+        var batch = rowBatches.take();
+
+        while(batch != END_OF_ROWS) {
+            var documents = source.toJsonContents(batch.rows(), fingerprints, cursor, writer);
+
+            if(!documents.isEmpty())
+                documentBatches.put(new DocumentBatch(batch.sequence(), documents));
+            else if(checkpoints != null)
+                checkpoints.acknowledge(batch.sequence());
+
+            batch = rowBatches.take();
+        }
+    }
+
+    /**
+     * Third stage. Sends the documents to Elasticsearch
+     */
+    private void send(BlockingQueue<DocumentBatch> documentBatches, BulkSender bulkSender, AtomicLong indexed, CheckpointTracker checkpoints) throws IOException, InterruptedException {
+        var batch = documentBatches.take();
+
+        while(batch != END_OF_DOCUMENTS) {
+            long sent = bulkSender.send(batch.documents());
+            job.addDocuments(sent);
+            logger.debug("Indexed {} documents", indexed.addAndGet(sent));
+
+            if(checkpoints != null)
+                checkpoints.acknowledge(batch.sequence());
+
+            batch = documentBatches.take();
+        }
+    }
+
+    /**
+     * Deletes the documents of the titles that were on the previous load but not on this one
+     * @return amount of documents deleted
+     */
+    private long deleteUnseen(FingerprintStore fingerprints, BulkSender bulkSender, String idPrefix) throws IOException, InterruptedException {
+        List<JsonContent> deletions = new ArrayList<>();
+        fingerprints.forEachUnseen(x -> deletions.add(JsonContent.deletion(idPrefix + String.format("%07d", x))));
+
+        long result = sendAll(deletions, bulkSender);
+
+        if(result > 0)
+            logger.info("Deleted {} documents that are not on the files anymore", result);
+
+        return result;
+    }
+
+    /**
+     * Sends the partial updates computed by the source from the whole input, like the roll-ups of the series
+     * @param fingerprints of the updates of the previous load. If given, only the changed updates are sent. Can be null
+     */
+    private void sendUpdates(DocumentSource source, BulkSender bulkSender, FingerprintStore fingerprints) throws IOException, InterruptedException {
+        var updates = source.getUpdates(fingerprints);
+
+        if(updates.isEmpty())
+            return;
+
+        long updated = sendAll(updates, bulkSender);
+        logger.info("Updated {} of {} documents with figures of the whole input", updated, updates.size());
+    }
+
+    /**
+     * Sends a list of documents on requests of BATCH_SIZE documents at most
+     * @return number of documents acknowledged
+     */
+    private long sendAll(List<JsonContent> documents, BulkSender bulkSender) throws IOException, InterruptedException {
+        long result = 0;
+
+        for(int i = 0; i < documents.size(); i += BATCH_SIZE)
+            result += bulkSender.send(documents.subList(i, Math.min(i + BATCH_SIZE, documents.size())));
+
+        return result;
+    }
+
+    /**
+     * Runs a stage of the pipeline. If it fails, the error is stored and every other stage is interrupted
+     */
+    private Future<?> submit(ExecutorService executor, AtomicReference<Exception> failure, Stage stage) {
+        return executor.submit(() -> {
+            try {
+                stage.run();
+            } catch(Exception e) {
+                failure.compareAndSet(null, e);
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * Work done by one of the threads of the pipeline
+     */
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Lines of a batch, numbered in the order they were read
+     */
+    private record RawBatch(long sequence, RowBatch rows) {}
+
+    /**
+     * Documents converted from the lines of a batch
+     */
+    private record DocumentBatch(long sequence, List<JsonContent> documents) {}
+
+    private void closeDeadLetters(DeadLetterWriter deadLetters) {
+        try {
+            deadLetters.close();
+        } catch(IOException e) {
+            logger.warn("Could not close the dead letters file", e);
+        }
+    }
+
+    private void closeFingerprints(FingerprintStore fingerprints) {
+        if(fingerprints == null)
+            return;
+
+        try {
+            fingerprints.close();
+        } catch(IOException e) {
+            logger.warn("Could not close the fingerprints file", e);
+        }
+    }
+
+    private void closeReader(DocumentSource source) {
+        try {
+            source.close();
+        } catch(IOException e) {
+            logger.warn("Could not close the tsv files", e);
         }
     }
 }
@@ -0,0 +1,124 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Joins tsv files sorted by tconst on a single sequential pass.
+ * The films file drives the join, and every other file keeps one line of lookahead,
+ * so a title can have any number of lines on each file, including none.
+ * Lines of titles that are not on the films file are skipped
+ */
+public class JoinCursor {
+    private final Input films;
+    private final List<Input> inputs;
+
+    /**
+     * @param films reader of the file driving the join
+     * @param inputs readers joined with the films file, in the order their sections are added to the batch
+     * @param resumeOffsets offsets returned by a previous cursor over the same files, to continue from there. Can be null
+     */
+    public JoinCursor(TsvReader films, List<TsvReader> inputs, long[] resumeOffsets) throws IOException {
+        this.films = new Input(films);
+        this.inputs = inputs.stream().map(Input::new).toList();
+
+        if(resumeOffsets != null) {
+            if(resumeOffsets.length != inputs.size() + 1)
+                throw new IOException("The offsets to resume from do not match the files joined");
+
+            films.seek(resumeOffsets[0]);
+            for(int i = 0; i < inputs.size(); i++)
+                inputs.get(i).seek(resumeOffsets[i + 1]);
+        }
+
+        this.films.advance();
+        for(Input input : this.inputs)
+            input.advance();
+    }
+
+    /**
+     * Adds the next title to the batch: the films line and the lines of every other file with the same tconst
+     * @return false if there are no more titles
+     */
+    public boolean next(RowBatch batch) throws IOException {
+        if(films.id == Input.END)
+            return false;
+
+        int id = films.id;
+
+        batch.nextSection();
+        films.copyMatching(id, batch);
+
+        for(Input input : inputs) {
+            batch.nextSection();
+            input.copyMatching(id, batch);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the tconst number of the title the next call to next adds
+     */
+    public int nextId() {
+        return films.id;
+    }
+
+    /**
+     * Returns the offset of the line each file will read next, the films file first.
+     * A new cursor created with them continues right after the last title returned
+     */
+    public long[] offsets() {
+        long[] result = new long[inputs.size() + 1];
+        result[0] = films.offset;
+
+        for(int i = 0; i < inputs.size(); i++)
+            result[i + 1] = inputs.get(i).offset;
+
+        return result;
+    }
+
+    /**
+     * Reader with the id of the line it has read but not consumed yet
+     */
+    private static class Input {
+        //Id of an input with no more lines
+        private static final int END = Integer.MAX_VALUE;
+        private final TsvReader reader;
+        private int id;
+        //Offset of the line of the id. The end of the file once there are no more lines
+        private long offset;
+
+        private Input(TsvReader reader) {
+            this.reader = reader;
+        }
+
+        private void advance() throws IOException {
+            int previous = id;
+
+            if(reader.nextLine()) {
+                id = reader.id();
+                offset = reader.lineOffset();
+            } else {
+                id = END;
+                offset = reader.nextLineOffset();
+            }
+
+            if(id < previous)
+                throw new IOException("The file with headers " + reader.getHeaders() + " is not sorted by tconst");
+        }
+
+        /**
+         * Skips the lines with a smaller id and copies the ones with the id given
+         */
+        private void copyMatching(int target, RowBatch batch) throws IOException {
+            while(id < target)
+                advance();
+
+            while(id == target) {
+                reader.copyLine(batch);
+                advance();
+            }
+        }
+    }
+}
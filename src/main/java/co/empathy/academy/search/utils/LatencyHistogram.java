@@ -0,0 +1,53 @@
+package co.empathy.academy.search.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies, for computing percentiles without storing every value.
+ * Buckets grow exponentially, so the percentiles returned are at most 19% above the real ones
+ */
+public class LatencyHistogram {
+    //Each power of two is split on this amount of buckets
+    private static final int BUCKETS_PER_POWER = 4;
+    private final AtomicLongArray counts = new AtomicLongArray(32 * BUCKETS_PER_POWER);
+    private final AtomicLong total = new AtomicLong();
+
+    public void record(long millis) {
+        int bucket = (int) (Math.log(Math.max(millis, 0) + 1) / Math.log(2) * BUCKETS_PER_POWER);
+
+        counts.incrementAndGet(Math.min(bucket, counts.length() - 1));
+        total.incrementAndGet();
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return latency in milliseconds under which that percentage of the values are, 0 if there are none
+     */
+    public long percentile(double percentile) {
+        long count = total.get();
+
+        if(count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for(int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+
+            if(seen >= rank)
+                return upperBound(i);
+        }
+
+        return upperBound(counts.length() - 1);
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    private static long upperBound(int bucket) {
+        return Math.round(Math.pow(2, (bucket + 1.0) / BUCKETS_PER_POWER)) - 1;
+    }
+}
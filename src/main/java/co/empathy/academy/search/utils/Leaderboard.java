@@ -0,0 +1,147 @@
+package co.empathy.academy.search.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Most popular titles of every title type and genre, written by LeaderboardBuilder and kept on the heap as primitive arrays.
+ * A browse is served by merging the boards of its types and genres, the most popular first, so it costs the titles of the page
+ * instead of scoring the whole index. Safe to use from several threads at once
+ */
+public class Leaderboard {
+    private static final String ID_PREFIX = "tt";
+    private final String index;
+    private final Map<String, Board> boards;
+
+    private Leaderboard(String index, Map<String, Board> boards) {
+        this.index = index;
+        this.boards = boards;
+    }
+
+    public static Leaderboard open(Path path) throws IOException {
+        try(var file = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(file.readInt() != LeaderboardBuilder.MAGIC)
+                throw new IOException("The file is not a leaderboard");
+            if(file.readInt() != LeaderboardBuilder.VERSION)
+                throw new IOException("The leaderboard is of an unsupported version");
+
+            var index = file.readUTF();
+            int count = file.readInt();
+            Map<String, Board> boards = new HashMap<>(count * 2);
+
+            for(int i = 0; i < count; i++) {
+                var key = file.readUTF();
+                int total = file.readInt();
+                int size = file.readInt();
+                var board = new Board(new int[size], new float[size], new double[size], total > size);
+
+                for(int j = 0; j < size; j++) {
+                    board.tconsts()[j] = file.readInt();
+                    board.popularities()[j] = file.readFloat();
+                    board.ratings()[j] = file.readDouble();
+                }
+
+                boards.put(key, board);
+            }
+
+            return new Leaderboard(index, boards);
+        }
+    }
+
+    /**
+     * Returns the index the titles of the boards were loaded on
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public int getBoards() {
+        return boards.size();
+    }
+
+    /**
+     * Returns the ids of a page of the titles of the types and genres given, the most popular first.
+     * It is empty if the boards can not tell the page for sure: when the titles left out of a board could be on it,
+     * or when titles of the same popularity are on it or next to it, as Elasticsearch orders them by their place on the index
+     * @param types of the titles, any type if it is empty
+     * @param genres of the titles, any genre if it is empty
+     * @param minRating minimum averageRating of the titles, null for any. Titles without rating have none
+     */
+    public Optional<List<String>> page(List<String> types, List<String> genres, Double minRating, int from, int size) {
+        //Left to Elasticsearch, so the wrong pages get its errors
+        if(from < 0 || size <= 0)
+            return Optional.empty();
+
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+
+        for(String type : types.isEmpty() ? List.of(LeaderboardBuilder.ANY) : types) {
+            for(String genre : genres.isEmpty() ? List.of(LeaderboardBuilder.ANY) : genres) {
+                //A type or genre without board has no titles
+                var board = boards.get(LeaderboardBuilder.key(type, genre));
+
+                if(board != null && board.tconsts().length > 0)
+                    cursors.add(new Cursor(board));
+            }
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        List<String> result = new ArrayList<>(size);
+        int matched = 0;
+        float previous = Float.NaN;
+
+        //The title after the page is read too, to know it is not tied with the last one of the page
+        while(matched <= from + size && !cursors.isEmpty()) {
+            var cursor = cursors.poll();
+            var board = cursor.board;
+            int position = cursor.position;
+            int tconst = board.tconsts()[position];
+            float popularity = board.popularities()[position];
+
+            //A title is on the board of each of its genres
+            if(seen.add(tconst) && (minRating == null || board.ratings()[position] >= minRating)) {
+                if(matched >= from && popularity == previous)
+                    return Optional.empty();
+
+                if(matched >= from && matched < from + size)
+                    result.add(ID_PREFIX + String.format("%07d", tconst));
+
+                previous = popularity;
+                matched++;
+            }
+
+            if(++cursor.position < board.tconsts().length) {
+                cursors.add(cursor);
+            } else if(board.truncated() && matched <= from + size) {
+                //The next titles of the board were left out, and could be more popular than the ones of the rest of boards
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(result);
+    }
+
+    private record Board(int[] tconsts, float[] popularities, double[] ratings, boolean truncated) {}
+
+    /**
+     * Next title of a board to merge. The cursors are sorted like the boards, by the title they point to
+     */
+    private static class Cursor implements Comparable<Cursor> {
+        private final Board board;
+        private int position;
+
+        private Cursor(Board board) {
+            this.board = board;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int comparison = Float.compare(other.board.popularities()[other.position], board.popularities()[position]);
+
+            return comparison != 0 ? comparison : Integer.compare(board.tconsts()[position], other.board.tconsts()[other.position]);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Film;
+import co.empathy.academy.search.utils.clases.Rating;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most popular titles of every title type and genre while they are loaded, and writes them for a Leaderboard.
+ * Each title counts on the board of its type and each of its genres, and on the boards of any type or any genre,
+ * so a browse filtered by several types and genres is the merge of a few boards. Adult titles are left out, like on the searches.
+ * The layout is a header with MAGIC, VERSION, the index the titles were loaded on and the number of boards,
+ * followed by every board: its key, the titles it had in total, and the tconst, popularity and rating of its best ones
+ */
+public class LeaderboardBuilder {
+    static final int MAGIC = 0x4C445242;
+    static final int VERSION = 1;
+    //Titles kept on each board, the deepest page a browse can be served from
+    static final int BOARD_SIZE = 1000;
+    //Value of the type or genre of the boards of any of them
+    static final String ANY = "";
+    //Order of the boards: the most popular first, and the lowest tconst first among the same popularity.
+    //Elasticsearch orders those by their place on the index instead, so Leaderboard does not serve the pages with them
+    static final Comparator<Entry> ORDER = Comparator.comparing(Entry::popularity).reversed().thenComparingInt(Entry::tconst);
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a title of a batch of raw lines. Safe to call from several threads at once
+     * @param filmSection section of the batch with the line of title.basics.tsv
+     * @param ratingSection section of the batch with the line of title.ratings.tsv
+     */
+    public void add(RowBatch batch, int document, int filmSection, int ratingSection, TsvCursor cursor) {
+        double rating = Popularity.MISSING;
+        double votes = Popularity.MISSING;
+        boolean rated = batch.section(document, ratingSection, cursor).nextLine();
+
+        if(rated) {
+            rating = cursor.skip(Rating.AVERAGE_RATING).doubleValue();
+            votes = cursor.intValue();
+        }
+
+        if(!batch.section(document, filmSection, cursor).nextLine())
+            return;
+
+        int tconst = cursor.intValue();
+        var titleType = cursor.string();
+
+        if(cursor.skip(Film.IS_ADULT - Film.TITLE_TYPE - 1).boolValue())
+            return;
+
+        List<String> genres = new ArrayList<>();
+        cursor.skip(Film.GENRES - Film.IS_ADULT - 1).strings(',', genres::add);
+
+        add(tconst, titleType, genres, rated ? Popularity.score(rating, votes) : Popularity.UNRATED, rated ? rating : Double.NaN);
+    }
+
+    /**
+     * Adds a title that is not adult. Safe to call from several threads at once
+     * @param averageRating NaN if the title has no rating
+     */
+    public void add(int tconst, String titleType, List<String> genres, float popularity, double averageRating) {
+        var entry = new Entry(tconst, popularity, averageRating);
+
+        board(key(titleType, ANY)).add(entry);
+        board(key(ANY, ANY)).add(entry);
+
+        for(String genre : genres) {
+            board(key(titleType, genre)).add(entry);
+            board(key(ANY, genre)).add(entry);
+        }
+    }
+
+    private Board board(String key) {
+        return boards.computeIfAbsent(key, x -> new Board());
+    }
+
+    static String key(String titleType, String genre) {
+        return titleType + "\t" + genre;
+    }
+
+    /**
+     * Writes every board. The file is written apart and moved to the path given once it is complete
+     * @param index the titles were loaded on, stored as the generation of the file
+     */
+    public void write(Path output, String index) throws IOException {
+        var temporary = output.resolveSibling(output.getFileName() + ".tmp");
+
+        try(var file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), OUTPUT_BUFFER_SIZE))) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeUTF(index);
+            file.writeInt(boards.size());
+
+            for(var board : boards.entrySet()) {
+                var entries = board.getValue().sorted();
+
+                file.writeUTF(board.getKey());
+                file.writeInt(board.getValue().total);
+                file.writeInt(entries.size());
+
+                for(Entry entry : entries) {
+                    file.writeInt(entry.tconst());
+                    file.writeFloat(entry.popularity());
+                    file.writeDouble(entry.averageRating());
+                }
+            }
+        } catch(IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    record Entry(int tconst, float popularity, double averageRating) {}
+
+    /**
+     * Best titles of a type and genre, on a heap with the worst of them on top so it is the one replaced
+     */
+    private static class Board {
+        private final PriorityQueue<Entry> best = new PriorityQueue<>(ORDER.reversed());
+        private int total;
+
+        private synchronized void add(Entry entry) {
+            total++;
+
+            if(best.size() < BOARD_SIZE) {
+                best.add(entry);
+            } else if(ORDER.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        private synchronized List<Entry> sorted() {
+            return best.stream().sorted(ORDER).toList();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.JsonpMapper;
+import co.empathy.academy.search.exception.types.InternalServerException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs several searches on a single _msearch request. The bodies are the same ones the search endpoint sends,
+ * written as NDJSON through the low level client, as the Elasticsearch client only builds a part of them for _msearch
+ */
+public class MultiSearch {
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+
+    private MultiSearch() {}
+
+    /**
+     * Sends the searches without blocking
+     * @return future with a result or a failure for each search, on the same order
+     */
+    public static CompletableFuture<List<MultiSearchResponseItem<JsonData>>> search(RestClient restClient, JsonpMapper mapper, String index, List<SearchRequest> searches) {
+        var header = ("{\"index\":\"" + index + "\"}\n").getBytes(StandardCharsets.UTF_8);
+        var body = new ByteArrayOutputStream();
+
+        for(SearchRequest search : searches) {
+            body.writeBytes(header);
+
+            var generator = mapper.jsonProvider().createGenerator(body);
+            search.serialize(generator, mapper);
+            generator.close();
+
+            body.write('\n');
+        }
+
+        var request = new Request("POST", "/_msearch");
+        //The aggregations and suggestions can only be read with their types
+        request.addParameter("typed_keys", "true");
+        request.setEntity(new ByteArrayEntity(body.toByteArray(), NDJSON));
+
+        return ElasticUtils.performRequestAsync(restClient, request)
+                .thenApply(response -> {
+                    try(var parser = mapper.jsonProvider().createParser(response.getEntity().getContent())) {
+                        return MsearchResponse.createMsearchResponseDeserializer(JsonData._DESERIALIZER).deserialize(parser, mapper).responses();
+
+                    } catch(IOException e) {
+                        throw new InternalServerException("There was a problem connecting to ElasticSearch", e);
+                    }
+                })
+                .exceptionally(e -> {
+                    throw ElasticUtils.toApiException(e);
+                });
+    }
+}
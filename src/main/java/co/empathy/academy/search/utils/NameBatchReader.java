@@ -0,0 +1,73 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Name;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the name.basics tsv on batches, for indexing every person on its own index
+ */
+public class NameBatchReader implements DocumentSource {
+    private final TsvReader namesReader;
+    private final List<String> namesHeaders;
+    private final int batchSize;
+    private boolean hasFinished;
+
+    public NameBatchReader(String nameBasicsPath, int batchSize) throws IOException {
+        this.namesReader = new TsvReader(nameBasicsPath);
+        this.namesHeaders = namesReader.getHeaders();
+        this.batchSize = batchSize;
+        this.hasFinished = false;
+    }
+
+    @Override
+    public boolean hasFinished() {
+        return this.hasFinished;
+    }
+
+    @Override
+    public RowBatch getRawBatch(long maxBytes) throws IOException {
+        int counter = 0;
+
+        var result = new RowBatch(batchSize, 1);
+
+        while(counter < batchSize && result.bytes() < maxBytes) {
+            if(!namesReader.nextLine()) {
+                this.hasFinished = true;
+                return result;
+            }
+
+            result.nextSection();
+            namesReader.copyLine(result);
+            counter++;
+        }
+
+        return result;
+    }
+
+    @Override
+    public long[] offsets() {
+        return new long[] { namesReader.nextLineOffset() };
+    }
+
+    @Override
+    public double progress() throws IOException {
+        return namesReader.progress();
+    }
+
+    @Override
+    public long[] sizes() throws IOException {
+        return new long[] { namesReader.size() };
+    }
+
+    @Override
+    public String writeDocument(RowBatch batch, int document, TsvCursor cursor, DocumentWriter writer) {
+        return Name.addPerson(batch.section(document, 0, cursor), writer, namesHeaders);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.namesReader.close();
+    }
+}
@@ -0,0 +1,169 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.json.JsonData;
+import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
+import jakarta.json.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces the directors and principals of the hits with their documents of the names index.
+ * Every name missing from an in-process LRU cache is fetched on a single multi-get per response.
+ * The cache, including the names that were not found, is emptied whenever a load finishes
+ */
+public class NameEnricher {
+    private static final String INDEX = "names";
+    //Amount of people kept on the cache
+    private static final int CACHE_SIZE = 100000;
+    //Stored on the cache for the nconst that are not on the names index
+    private static final JsonObject NOT_FOUND = JsonValue.EMPTY_JSON_OBJECT;
+    private static final Map<String, JsonObject> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(CACHE_SIZE, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+    //Incremented when the cache is emptied, so the names fetched before are not cached after it
+    private static final AtomicLong generation = new AtomicLong();
+
+    private NameEnricher() {}
+
+    /**
+     * Empties the cache, so the names are fetched again from the names index
+     */
+    public static void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Enriches the sources given, without blocking while the names are fetched
+     * @param sources of the hits
+     * @return future with the sources with the names replaced
+     */
+    public static CompletableFuture<List<JsonObject>> enrich(List<JsonObject> sources) {
+        Set<String> nconsts = new HashSet<>();
+        sources.forEach(x -> collectNconsts(x, nconsts));
+
+        return getNames(nconsts).thenApply(names -> sources.stream().map(x -> replaceNames(x, names)).toList());
+    }
+
+    private static void collectNconsts(JsonObject source, Set<String> nconsts) {
+        for(JsonObject director : objects(source, "directors"))
+            addNconst(director, nconsts);
+
+        for(JsonObject principal : objects(source, "principals"))
+            if(principal.get("name") instanceof JsonObject name)
+                addNconst(name, nconsts);
+    }
+
+    private static void addNconst(JsonObject name, Set<String> nconsts) {
+        if(name.get("nconst") instanceof JsonString nconst)
+            nconsts.add(nconst.getString());
+    }
+
+    private static List<JsonObject> objects(JsonObject source, String field) {
+        if(!(source.get(field) instanceof JsonArray array))
+            return List.of();
+
+        return array.stream().filter(JsonObject.class::isInstance).map(JsonValue::asJsonObject).toList();
+    }
+
+    /**
+     * Returns the names of the nconst given, from the cache or from the names index
+     */
+    private static CompletableFuture<Map<String, JsonObject>> getNames(Set<String> nconsts) {
+        Map<String, JsonObject> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for(String nconst : nconsts) {
+            var cached = cache.get(nconst);
+
+            if(cached == null)
+                missing.add(nconst);
+            else
+                result.put(nconst, cached);
+        }
+
+        if(missing.isEmpty())
+            return CompletableFuture.completedFuture(result);
+
+        return fetchNames(missing).thenApply(fetched -> {
+            result.putAll(fetched);
+            return result;
+        });
+    }
+
+    private static CompletableFuture<Map<String, JsonObject>> fetchNames(List<String> nconsts) {
+        long fetchGeneration = generation.get();
+
+        //Looked up on each use, as this class can be loaded before the Spring context creates the connection
+        return ElasticUtils.getAsyncClient().mget(_0 -> _0.index(INDEX).ids(nconsts), JsonData.class)
+                .thenApply(response -> {
+                    Map<String, JsonObject> result = new HashMap<>();
+
+                    response.docs().stream()
+                            .filter(x -> x.isResult() && x.result().found() && x.result().source() != null)
+                            .forEach(x -> result.put(x.result().id(), x.result().source().toJson().asJsonObject()));
+
+                    for(String nconst : nconsts) {
+                        var name = result.getOrDefault(nconst, NOT_FOUND);
+                        result.put(nconst, name);
+
+                        synchronized(cache) {
+                            if(generation.get() == fetchGeneration)
+                                cache.put(nconst, name);
+                        }
+                    }
+
+                    return result;
+                })
+                .exceptionally(e -> {
+                    var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+                    if(cause instanceof ElasticsearchException elastic)
+                        throw new IndexDoesNotExistException("The names index does not exist, index the names first", elastic);
+
+                    throw ElasticUtils.toApiException(cause);
+                });
+    }
+
+    private static JsonObject replaceNames(JsonObject source, Map<String, JsonObject> names) {
+        var result = Json.createObjectBuilder(source);
+
+        if(source.get("directors") instanceof JsonArray) {
+            var directors = Json.createArrayBuilder();
+            objects(source, "directors").forEach(x -> directors.add(replaceName(x, names)));
+            result.add("directors", directors);
+        }
+
+        if(source.get("principals") instanceof JsonArray) {
+            var principals = Json.createArrayBuilder();
+
+            for(JsonObject principal : objects(source, "principals")) {
+                if(principal.get("name") instanceof JsonObject name)
+                    principals.add(Json.createObjectBuilder(principal).add("name", replaceName(name, names)));
+                else
+                    principals.add(principal);
+            }
+
+            result.add("principals", principals);
+        }
+
+        return result.build();
+    }
+
+    private static JsonObject replaceName(JsonObject name, Map<String, JsonObject> names) {
+        if(!(name.get("nconst") instanceof JsonString nconst))
+            return name;
+
+        var found = names.getOrDefault(nconst.getString(), NOT_FOUND);
+
+        return found.isEmpty() ? name : found;
+    }
+}
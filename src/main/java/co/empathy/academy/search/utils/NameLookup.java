@@ -0,0 +1,250 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-heap lookup of the name.basics tsv.
+ * The tsv is memory mapped and an index, also memory mapped, stores the offset of the line of every nconst,
+ * using the number of the nconst as position. That way, the names never end up in the heap.
+ * A gzipped tsv is decompressed to a temporary file first, since it has to be read at random positions
+ */
+public class NameLookup {
+    //Size of each of the mappings of the tsv, as a single mapping can not be bigger than 2GB
+    private static final long SEGMENT_SIZE = 1L << 30;
+    //Extra bytes mapped after each segment, so a line starting on a segment can be read from it entirely
+    private static final int SEGMENT_OVERLAP = 1 << 16;
+    //Initial amount of nconst the index has room for. It grows when a bigger nconst appears
+    private static final int INITIAL_CAPACITY = 1 << 24;
+    private static final byte NEW_LINE = '\n';
+    private static final String GZIP_EXTENSION = ".gz";
+    //Maximum bytes copied on each transfer while decompressing
+    private static final long TRANSFER_SIZE = 1 << 26;
+    //Cursor used for reading the lines found, one for each thread
+    private final ThreadLocal<TsvCursor> cursors = ThreadLocal.withInitial(TsvCursor::new);
+    //Temporary decompressed copy of a gzipped tsv. Null if the tsv is not compressed
+    private final Path decompressedPath;
+    private final FileChannel namesChannel;
+    private final MappedByteBuffer[] segments;
+    private final Path indexPath;
+    private final FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private List<String> headers;
+
+    public NameLookup(String nameBasicsPath) throws IOException {
+        this.decompressedPath = nameBasicsPath.endsWith(GZIP_EXTENSION) ? decompress(Path.of(nameBasicsPath)) : null;
+        this.namesChannel = FileChannel.open(decompressedPath == null ? Path.of(nameBasicsPath) : decompressedPath, StandardOpenOption.READ);
+        this.segments = mapSegments(namesChannel);
+        this.indexPath = Files.createTempFile("name-basics", ".idx");
+        this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY * (long) Long.BYTES);
+
+        buildIndex();
+    }
+
+    private static Path decompress(Path path) throws IOException {
+        var result = Files.createTempFile("name-basics", ".tsv");
+
+        try(var input = new GzipChannel(path); var output = FileChannel.open(result, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+
+            while((transferred = output.transferFrom(input, position, TRANSFER_SIZE)) > 0)
+                position += transferred;
+        } catch(IOException e) {
+            Files.deleteIfExists(result);
+            throw e;
+        }
+
+        return result;
+    }
+
+    private static MappedByteBuffer[] mapSegments(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        var result = new MappedByteBuffer[count];
+
+        for(int i = 0; i < count; i++) {
+            long start = i * SEGMENT_SIZE;
+            result[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start));
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the tsv once, storing the offset of every line on the index
+     */
+    private void buildIndex() throws IOException {
+        long size = namesChannel.size();
+        long offset = nextLine(0, size);
+
+        this.headers = Arrays.stream(decodeHeaders().split("\t")).toList();
+
+        while(offset < size) {
+            var segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int position = (int) (offset % SEGMENT_SIZE);
+
+            int id = parseId(segment, position);
+
+            if(id >= 0)
+                putOffset(id, offset);
+
+            offset = nextLine(offset, size);
+        }
+    }
+
+    private long nextLine(long offset, long size) {
+        while(offset < size) {
+            var segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int position = (int) (offset % SEGMENT_SIZE);
+            int limit = segment.limit();
+
+            while(position < limit && segment.get(position) != NEW_LINE)
+                position++;
+
+            if(position < limit)
+                return (offset / SEGMENT_SIZE) * SEGMENT_SIZE + position + 1;
+
+            offset = (offset / SEGMENT_SIZE) * SEGMENT_SIZE + limit;
+        }
+
+        return size;
+    }
+
+    private void putOffset(int id, long offset) throws IOException {
+        long capacity = index.capacity() / Long.BYTES;
+
+        if(id >= capacity) {
+            long newCapacity = Math.max(capacity * 2, id + 1L);
+            this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity * Long.BYTES);
+        }
+
+        //The offset is stored plus one, so zero means the nconst does not exist
+        index.putLong(id * Long.BYTES, offset + 1);
+    }
+
+    /**
+     * Parses the number of an nconst written as nm0000001. Returns -1 if it does not have that format
+     */
+    private static int parseId(ByteBuffer buffer, int position) {
+        int limit = buffer.limit();
+
+        if(position + 2 >= limit || buffer.get(position) != 'n' || buffer.get(position + 1) != 'm')
+            return -1;
+
+        int result = 0;
+
+        for(position += 2; position < limit && buffer.get(position) >= '0' && buffer.get(position) <= '9'; position++)
+            result = result * 10 + (buffer.get(position) - '0');
+
+        return result;
+    }
+
+    /**
+     * Parses the number of an nconst written as nm0000001. Returns -1 if it does not have that format
+     */
+    public static int parseId(String nconst) {
+        if(nconst.length() < 3 || !nconst.startsWith("nm"))
+            return -1;
+
+        int result = 0;
+
+        for(int i = 2; i < nconst.length(); i++) {
+            char c = nconst.charAt(i);
+
+            if(c < '0' || c > '9')
+                return -1;
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up the line of an nconst
+     * @param nconst id of the person, like nm0000001
+     * @return cursor on the first field of the line, or null if the nconst does not exist.
+     * The cursor is reused by every lookup done on the same thread
+     */
+    public TsvCursor find(String nconst) {
+        long offset = offset(nconst);
+
+        if(offset < 0)
+            return null;
+
+        var segment = segments[(int) (offset / SEGMENT_SIZE)];
+        var cursor = cursors.get().reset(segment, (int) (offset % SEGMENT_SIZE), segment.limit());
+        cursor.nextLine();
+
+        return cursor;
+    }
+
+    /**
+     * Continues the fingerprint of a document with the line of a person it embeds, so the document changes when the person does
+     * @param nconst id of the person, like nm0000001
+     * @return the fingerprint continued with the bytes of the line. Only with a separator if the nconst does not exist
+     */
+    public long fingerprint(String nconst, long hash) {
+        long offset = offset(nconst);
+
+        if(offset < 0)
+            return RowBatch.fingerprint(hash, segments[0], 0, 0);
+
+        var segment = segments[(int) (offset / SEGMENT_SIZE)];
+        int start = (int) (offset % SEGMENT_SIZE);
+        int end = start;
+
+        while(end < segment.limit() && segment.get(end) != NEW_LINE)
+            end++;
+
+        return RowBatch.fingerprint(hash, segment, start, end);
+    }
+
+    /**
+     * Returns the offset of the line of an nconst on the tsv, or -1 if it does not exist
+     */
+    private long offset(String nconst) {
+        int id = parseId(nconst);
+
+        if(id < 0 || id >= index.capacity() / Long.BYTES)
+            return -1;
+
+        return index.getLong(id * Long.BYTES) - 1;
+    }
+
+    private String decodeHeaders() {
+        var segment = segments[0];
+        int end = 0;
+
+        while(end < segment.limit() && segment.get(end) != NEW_LINE)
+            end++;
+
+        var bytes = new byte[end];
+        segment.get(0, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public void close() throws IOException {
+        this.namesChannel.close();
+        this.indexChannel.close();
+        Files.deleteIfExists(indexPath);
+
+        if(decompressedPath != null)
+            Files.deleteIfExists(decompressedPath);
+    }
+}
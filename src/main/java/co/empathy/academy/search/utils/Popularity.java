@@ -0,0 +1,25 @@
+package co.empathy.academy.search.utils;
+
+/**
+ * Popularity of a title from its votes and rating, the score the searches multiply the relevance by.
+ * It is log10(1 + 2 * numVotes) * ln(1 + 2 * averageRating), taking 0.1 for the fields of the titles without rating.
+ * The loads store it on every document, so the searches read it instead of calculating it for every hit
+ */
+public class Popularity {
+    //Field of the documents with the popularity, and its rank_feature subfield
+    public static final String FIELD = "popularity";
+    public static final String FEATURE_FIELD = FIELD + ".feature";
+    //Value of the fields of the titles without rating
+    public static final double MISSING = 0.1;
+    //Factor both fields are multiplied by before taking their logarithm
+    public static final double FACTOR = 2;
+    //Popularity of the titles without rating
+    public static final float UNRATED = score(MISSING, MISSING);
+
+    private Popularity() {}
+
+    public static float score(double averageRating, double numVotes) {
+        //rank_feature fields only take positive values
+        return Math.max((float) (Math.log10(1 + FACTOR * numVotes) * Math.log1p(FACTOR * averageRating)), Float.MIN_NORMAL);
+    }
+}
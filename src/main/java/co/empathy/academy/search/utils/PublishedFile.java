@@ -0,0 +1,103 @@
+package co.empathy.academy.search.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Holds a file built by the loads from the titles of an index, like the typeahead or the leaderboard.
+ * The loads write a new one next to it, which replaces it when their index is published,
+ * and it is only served while it is of the index the alias points to, so it always matches what the searches see
+ * @param <T> what the file is read as
+ */
+public class PublishedFile<T> {
+    private static final Logger logger = LoggerFactory.getLogger(PublishedFile.class);
+    //Alias the file has to be of the index of
+    private final String alias;
+    //Name of the file on the logs
+    private final String name;
+    private final Loader<T> loader;
+    private final Function<T, String> index;
+    private Path path;
+    private volatile T current;
+
+    /**
+     * Reads a file from its path
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load(Path path) throws IOException;
+    }
+
+    /**
+     * @param defaultPath used until open is called, relative to the working directory
+     * @param index returns the index a file was built from
+     */
+    public PublishedFile(String defaultPath, String alias, String name, Loader<T> loader, Function<T, String> index) {
+        this.path = Path.of(defaultPath);
+        this.alias = alias;
+        this.name = name;
+        this.loader = loader;
+        this.index = index;
+    }
+
+    /**
+     * Reads the file stored on the path given, if there is one. The next loads publish theirs on the same path
+     */
+    public synchronized void open(Path file) {
+        path = file;
+        //So the index it is checked against is known before the first request
+        VersionedIndex.watch(alias);
+
+        if(!Files.exists(path)) {
+            logger.info("There is no {} on {}, it is searched on Elasticsearch until the next load", name, path);
+            return;
+        }
+
+        try {
+            replace(loader.load(path));
+        } catch(IOException e) {
+            logger.warn("Could not open the {} {}", name, path, e);
+        }
+    }
+
+    /**
+     * Returns the file a load writes to, until its index is published
+     * @param index the load is done on
+     */
+    public synchronized Path buildingPath(String index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    /**
+     * Moves the file written by a load over the published one and starts serving from it
+     */
+    public synchronized void publish(Path built) throws IOException {
+        Files.move(built, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        replace(loader.load(path));
+    }
+
+    private void replace(T file) {
+        current = file;
+        logger.info("{} loaded from {}, of index {}", name, path, index.apply(file));
+    }
+
+    /**
+     * Returns the file to serve from
+     * @return empty if there is none, or it is not of the index published, like after a load that failed to publish it
+     */
+    public Optional<T> get() {
+        var file = current;
+
+        if(file == null || !index.apply(file).equals(VersionedIndex.getPublished(alias)))
+            return Optional.empty();
+
+        return Optional.of(file);
+    }
+}
@@ -0,0 +1,151 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.CacheStats;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the rendered responses of the searches, so the repeated queries of the head of the traffic do not reach Elasticsearch.
+ * It is bounded by the approximate bytes of the responses, evicting the least recently used first, and every response expires after a while.
+ * Loads invalidate it when they finish, and a response computed while a load finished is not stored
+ */
+public class QueryCache {
+    private static final long MAX_BYTES = 64L << 20;
+    //Responses bigger than this are not stored, so a few huge ones can not evict the rest
+    private static final long MAX_ENTRY_BYTES = MAX_BYTES / 64;
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    //Approximate bytes of an entry besides its strings
+    private static final int ENTRY_OVERHEAD = 96;
+    //Accessed entries are moved to the end, so the first one is always the least recently used
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private static long bytes;
+    private static long generation;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long expirations;
+
+    private QueryCache() {}
+
+    /**
+     * Returns the response stored for the key, or computes and stores it
+     * @param key normalized form of the parameters of the request
+     * @param loader runs the search. It is called without holding any lock
+     */
+    public static String get(String key, Supplier<String> loader) {
+        long loadGeneration = generation();
+        var cached = lookup(key);
+
+        if(cached != null)
+            return cached;
+
+        var response = loader.get();
+        put(key, response, loadGeneration);
+
+        return response;
+    }
+
+    /**
+     * Returns the response stored for the key, or computes and stores it without blocking
+     * @param loader starts the search. Its responses are stored once they complete, and its failures are not stored
+     */
+    public static CompletableFuture<String> getAsync(String key, Supplier<CompletableFuture<String>> loader) {
+        long loadGeneration = generation();
+        var cached = lookup(key);
+
+        if(cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        return loader.get().thenApply(response -> {
+            put(key, response, loadGeneration);
+            return response;
+        });
+    }
+
+    /**
+     * Returns the generation to store the responses computed from now on with, so the ones computed while a load finishes are discarded
+     */
+    public static synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns the response stored for the key, for the callers computing the missing responses of several keys at once
+     * @return null if it is not stored or has expired
+     */
+    public static synchronized String lookup(String key) {
+        var entry = entries.get(key);
+
+        if(entry != null && System.nanoTime() - entry.created() < TTL_NANOS) {
+            hits++;
+            return entry.response();
+        }
+
+        if(entry != null) {
+            remove(key, entry);
+            expirations++;
+        }
+
+        misses++;
+
+        return null;
+    }
+
+    /**
+     * Stores a response computed after a lookup
+     * @param loadGeneration generation read before the lookup
+     */
+    public static synchronized void put(String key, String response, long loadGeneration) {
+        //Computed from the index a load has just replaced
+        if(loadGeneration != generation)
+            return;
+
+        long size = weight(key, response);
+        if(size > MAX_ENTRY_BYTES)
+            return;
+
+        var previous = entries.put(key, new Entry(response, System.nanoTime(), size));
+        if(previous != null)
+            bytes -= previous.bytes();
+        bytes += size;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(bytes > MAX_BYTES && iterator.hasNext()) {
+            bytes -= iterator.next().bytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.bytes();
+    }
+
+    /**
+     * Removes every response, as they may be outdated. Called when a load finishes
+     */
+    public static synchronized void invalidate() {
+        entries.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    public static synchronized CacheStats getStats() {
+        long lookups = hits + misses;
+
+        return new CacheStats(entries.size(), bytes, MAX_BYTES, hits, misses, lookups == 0 ? 0 : (double) hits / lookups, evictions, expirations, generation);
+    }
+
+    private static long weight(String key, String response) {
+        //Strings take up to two bytes per character
+        return ENTRY_OVERHEAD + 2L * (key.length() + response.length());
+    }
+
+    private record Entry(String response, long created, long bytes) {}
+}
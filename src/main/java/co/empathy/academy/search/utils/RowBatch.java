@@ -0,0 +1,149 @@
+package co.empathy.academy.search.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Raw lines of a batch of titles, copied from the tsv files into a single byte array.
+ * Every title is split on sections, one for each file, and each section can have any number of lines
+ */
+public class RowBatch {
+    public static final int FILM = 0;
+    public static final int RATING = 1;
+    public static final int AKAS = 2;
+    public static final int CREW = 3;
+    public static final int PRINCIPALS = 4;
+    public static final int EPISODE = 5;
+    public static final int SECTIONS = 6;
+    private static final byte NEW_LINE = '\n';
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    //Mixed into the fingerprint after each section. It is not a valid UTF-8 byte, so it can not appear on the lines
+    private static final int SECTION_SEPARATOR = 0xFF;
+    //The byte array starts with room for this amount of bytes at most, and grows when needed
+    private static final int INITIAL_BYTES = 1 << 20;
+    private byte[] data;
+    private int size;
+    //Offset where each section starts. A section ends where the next one starts
+    private int[] bounds;
+    private int sections;
+    private final int sectionsPerTitle;
+
+    public RowBatch(int titles) {
+        this(titles, SECTIONS);
+    }
+
+    public RowBatch(int titles, int sectionsPerTitle) {
+        this.data = new byte[Math.min(Math.max(titles, 1) * 512, INITIAL_BYTES)];
+        this.bounds = new int[titles * sectionsPerTitle + 1];
+        this.sectionsPerTitle = sectionsPerTitle;
+    }
+
+    /**
+     * Starts the next section. The lines appended after this call belong to it
+     */
+    public void nextSection() {
+        if(sections + 1 >= bounds.length)
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+        bounds[sections++] = size;
+        bounds[sections] = size;
+    }
+
+    /**
+     * Copies a line into the current section
+     */
+    public void append(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+
+        if(size + length + 1 > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + length + 1));
+
+        buffer.get(start, data, size, length);
+        size += length;
+        data[size++] = NEW_LINE;
+        bounds[sections] = size;
+    }
+
+    public int titles() {
+        return sections / sectionsPerTitle;
+    }
+
+    /**
+     * @return bytes of raw lines stored
+     */
+    public int bytes() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return sections == 0;
+    }
+
+    /**
+     * Parses the number of the id on the first field of a document, like the 1 of tt0000001
+     */
+    public int id(int document, TsvCursor cursor) {
+        section(document, 0, cursor).nextLine();
+
+        return cursor.intValue();
+    }
+
+    /**
+     * Computes a 64 bits FNV-1a hash of every line of a document, taking into account which section each line belongs to
+     */
+    public long fingerprint(int document) {
+        long hash = FNV_OFFSET_BASIS;
+        int first = document * sectionsPerTitle;
+
+        for(int section = first; section < first + sectionsPerTitle; section++) {
+            for(int i = bounds[section]; i < bounds[section + 1]; i++)
+                hash = (hash ^ (data[i] & 0xFF)) * FNV_PRIME;
+
+            hash = (hash ^ SECTION_SEPARATOR) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Computes the fingerprint of some bytes, closed like a section
+     */
+    static long fingerprint(ByteBuffer buffer, int start, int end) {
+        return fingerprint(FNV_OFFSET_BASIS, buffer, start, end);
+    }
+
+    /**
+     * Continues a fingerprint with bytes read from elsewhere, like the lines a document embeds from other files,
+     * closing them with the same separator as a section
+     */
+    static long fingerprint(long hash, ByteBuffer buffer, int start, int end) {
+        for(int i = start; i < end; i++)
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * FNV_PRIME;
+
+        return (hash ^ SECTION_SEPARATOR) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the bytes of a section of a title, for the sources whose sections are not tsv lines.
+     * Its position is the start of the section and its limit the end
+     */
+    public ByteBuffer sectionBuffer(int title, int section) {
+        int index = title * sectionsPerTitle + section;
+
+        return ByteBuffer.wrap(data, bounds[index], bounds[index + 1] - bounds[index]);
+    }
+
+    /**
+     * Points the cursor to the lines of a section of a title
+     * @param title position of the title on the batch
+     * @param section FILM, RATING, AKAS, CREW, PRINCIPALS or EPISODE for the titles batches
+     * @param cursor cursor to reset
+     * @return the cursor
+     */
+    public TsvCursor section(int title, int section, TsvCursor cursor) {
+        int index = title * sectionsPerTitle + section;
+
+        return cursor.reset(ByteBuffer.wrap(data, 0, size), bounds[index], bounds[index + 1]);
+    }
+}
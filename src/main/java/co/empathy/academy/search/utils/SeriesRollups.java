@@ -0,0 +1,173 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Episode;
+import co.empathy.academy.search.utils.clases.JsonContent;
+import co.empathy.academy.search.utils.clases.Rating;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Figures of every series computed from its episodes while they are loaded,
+ * so a series page is served from its own document instead of aggregating the episodes on each search.
+ * They are sent as partial updates of the series documents once every title has been indexed.
+ * Delta loads only send the roll-ups that changed, comparing them with the fingerprints of the ones sent before
+ */
+public class SeriesRollups {
+    private static final String ID_PREFIX = "tt";
+    //Episodes read at once when catching up with the episodes before a resumed load
+    private static final int CATCH_UP_BATCH = 10000;
+    private final Map<Integer, Rollup> series = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an episode of a batch of raw lines. Titles that are not episodes are ignored. Safe to call from several threads at once
+     * @param episodeSection section of the batch with the line of title.episode.tsv
+     * @param ratingSection section of the batch with the line of title.ratings.tsv
+     */
+    public void add(RowBatch batch, int document, int episodeSection, int ratingSection, TsvCursor cursor) {
+        if(!batch.section(document, episodeSection, cursor).nextLine())
+            return;
+
+        int parent = cursor.skip(Episode.PARENT_TCONST).intValue();
+        int season = cursor.intValue();
+        double rating = 0;
+        int votes = 0;
+
+        if(batch.section(document, ratingSection, cursor).nextLine()) {
+            rating = cursor.skip(Rating.AVERAGE_RATING).doubleValue();
+            votes = cursor.intValue();
+        }
+
+        series.computeIfAbsent(parent, x -> new Rollup()).add(season, rating, votes);
+    }
+
+    /**
+     * Adds the episodes with a tconst lower than the one given, reading the episodes and ratings files again.
+     * A resumed load calls it for the titles loaded before it stopped
+     */
+    public void addUntil(String episodesPath, String ratingsPath, int tconst) throws IOException {
+        var episodes = new TsvReader(episodesPath);
+        var ratings = new TsvReader(ratingsPath);
+        var cursor = new TsvCursor();
+
+        try {
+            var join = new JoinCursor(episodes, List.of(ratings), null);
+            boolean more = true;
+
+            while(more) {
+                var batch = new RowBatch(CATCH_UP_BATCH, 2);
+
+                while(batch.titles() < CATCH_UP_BATCH && (more = join.next(batch))) {
+                    if(batch.id(batch.titles() - 1, cursor) >= tconst) {
+                        more = false;
+                        break;
+                    }
+
+                    add(batch, batch.titles() - 1, 0, 1, cursor);
+                }
+            }
+        } finally {
+            episodes.close();
+            ratings.close();
+        }
+    }
+
+    /**
+     * Builds the partial update of every series, sharing a single array
+     * @param previous fingerprints of the roll-ups sent by the previous load. If given, only the roll-ups that changed are returned,
+     *                 plus an update clearing the roll-ups of the series that have no episodes anymore. Can be null
+     */
+    public List<JsonContent> toUpdates(FingerprintStore previous) {
+        var writer = new DocumentWriter(Math.max(series.size(), 1) * 96);
+        var ids = series.keySet().stream().sorted().toList();
+        var ends = new int[ids.size()];
+        var fingerprints = new long[ids.size()];
+
+        for(int i = 0; i < ids.size(); i++) {
+            int start = writer.size();
+            writer.startObject().startObject("doc");
+            series.get(ids.get(i)).write(writer);
+            writer.endObject().endObject();
+
+            ends[i] = writer.size();
+            fingerprints[i] = RowBatch.fingerprint(ByteBuffer.wrap(writer.data()), start, ends[i]);
+        }
+
+        var changed = new boolean[ids.size()];
+        for(int i = 0; i < ids.size(); i++)
+            changed[i] = previous == null || previous.hasChanged(ids.get(i), fingerprints[i]);
+
+        //Only once every series has been marked as seen
+        List<Long> cleared = new ArrayList<>();
+        if(previous != null)
+            previous.forEachUnseen(cleared::add);
+
+        int clearStart = writer.size();
+        writer.startObject().startObject("doc");
+        Rollup.clear(writer);
+        writer.endObject().endObject();
+
+        var data = writer.data();
+        List<JsonContent> result = new ArrayList<>();
+
+        for(int i = 0, start = 0; i < ids.size(); start = ends[i++])
+            if(changed[i])
+                result.add(JsonContent.update(ID_PREFIX + String.format("%07d", ids.get(i)), data, start, ends[i] - start, fingerprints[i]));
+
+        for(long id : cleared)
+            result.add(JsonContent.update(ID_PREFIX + String.format("%07d", id), data, clearStart, writer.size() - clearStart));
+
+        return result;
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * Running figures of a series
+     */
+    private static class Rollup {
+        //Seasons with at least one episode. Episodes without season are not counted on any
+        private final BitSet seasons = new BitSet();
+        private int episodes;
+        private long votes;
+        //Sum of the rating of every episode multiplied by its votes
+        private double weightedRatings;
+
+        private synchronized void add(int season, double rating, int votes) {
+            if(season > 0)
+                seasons.set(season);
+
+            this.episodes++;
+            this.votes += votes;
+            this.weightedRatings += rating * votes;
+        }
+
+        private synchronized void write(DocumentWriter writer) {
+            writer.field("seasonCount", seasons.cardinality())
+                    .field("episodeCount", episodes);
+
+            //Episodes without votes do not weigh on the average, a series with none has no average.
+            //It is written as null, so a partial update removes the average of a previous load
+            if(votes > 0)
+                writer.field("episodesAverageRating", Math.round(weightedRatings / votes * 100) / 100.0);
+            else
+                writer.name("episodesAverageRating").nullValue();
+        }
+
+        /**
+         * Writes every figure as null, for the series that have no episodes anymore
+         */
+        private static void clear(DocumentWriter writer) {
+            writer.name("seasonCount").nullValue()
+                    .name("episodeCount").nullValue()
+                    .name("episodesAverageRating").nullValue();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the titles of a snapshot written by SnapshotWriter. The file is memory mapped,
+ * and the records are copied into the batches as they are and decoded into documents by the parsers, without any tsv parsing.
+ * It produces the same documents as the BatchReader the snapshot was written from
+ */
+public class SnapshotReader implements DocumentSource {
+    //Size of each of the mappings of the file, as a single mapping can not be bigger than 2GB
+    private static final long SEGMENT_SIZE = 1L << 30;
+    //Value of the missing fields of the tsv files, stored as it is
+    private static final String NULL = "\\N";
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final long footerOffset;
+    private final int batchSize;
+    private final List<List<String>> headers = new ArrayList<>();
+    //Values of the dictionaries, as UTF-8 bytes ready to be written
+    private final List<ByteBuffer[]> dictionaries = new ArrayList<>();
+    private final List<JsonContent> updates = new ArrayList<>();
+    private final TypeaheadBuilder typeahead = new TypeaheadBuilder();
+    private final LeaderboardBuilder leaderboard = new LeaderboardBuilder();
+    private long position;
+
+    /**
+     * @param resumeOffsets offsets of a previous reader over the same snapshot, to continue from there. Can be null
+     */
+    public SnapshotReader(String path, int batchSize, long[] resumeOffsets) throws IOException {
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.batchSize = batchSize;
+
+        int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        this.segments = new MappedByteBuffer[count];
+        for(int i = 0; i < count; i++) {
+            long start = i * SEGMENT_SIZE;
+            //Each segment overlaps the next one by the maximum size of a record, so every record is whole on one of them
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, SEGMENT_SIZE + SnapshotWriter.MAX_RECORD_BYTES));
+        }
+
+        if(size < SnapshotWriter.HEADER_BYTES + Long.BYTES || segments[0].getInt(0) != SnapshotWriter.MAGIC)
+            throw new IOException(path + " is not a snapshot");
+        if(segments[0].getInt(Integer.BYTES) != SnapshotWriter.VERSION)
+            throw new IOException(path + " is a snapshot of an unsupported version");
+
+        this.footerOffset = read(size - Long.BYTES, Long.BYTES).getLong();
+        readFooter(read(footerOffset, (int) (size - Long.BYTES - footerOffset)));
+
+        this.position = resumeOffsets == null ? SnapshotWriter.HEADER_BYTES : resumeOffsets[0];
+    }
+
+    /**
+     * Reads bytes of the file into the heap
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        var result = ByteBuffer.allocate(length);
+
+        while(result.hasRemaining())
+            if(channel.read(result, offset + result.position()) < 0)
+                throw new IOException("The snapshot is truncated");
+
+        return result.flip();
+    }
+
+    private void readFooter(ByteBuffer footer) {
+        int files = readVarint(footer);
+        for(int i = 0; i < files; i++)
+            headers.add(readStrings(footer));
+
+        for(int i = 0; i < SnapshotWriter.DICTIONARIES; i++)
+            dictionaries.add(readStrings(footer).stream()
+                    .map(x -> ByteBuffer.wrap(x.getBytes(StandardCharsets.UTF_8)))
+                    .toArray(ByteBuffer[]::new));
+
+        int count = readVarint(footer);
+        var ids = new String[count];
+        var ends = new int[count];
+        var data = new DocumentWriter(count * 96 + 1);
+
+        for(int i = 0; i < count; i++) {
+            ids[i] = readString(footer);
+            int length = readVarint(footer);
+            var bytes = new byte[length];
+            footer.get(bytes);
+
+            data.raw(bytes, 0, length);
+            ends[i] = data.size();
+        }
+
+        //Every update shares a single array, like the documents of a batch
+        for(int i = 0, start = 0; i < count; start = ends[i++])
+            updates.add(JsonContent.update(ids[i], data.data(), start, ends[i] - start));
+    }
+
+    @Override
+    public boolean hasFinished() {
+        return position >= footerOffset;
+    }
+
+    @Override
+    public RowBatch getRawBatch(long maxBytes) throws IOException {
+        var result = new RowBatch(batchSize, 1);
+
+        while(result.titles() < batchSize && result.bytes() < maxBytes && position < footerOffset) {
+            var segment = segments[(int) (position / SEGMENT_SIZE)];
+            int start = (int) (position % SEGMENT_SIZE);
+            int length = segment.getInt(start);
+
+            result.nextSection();
+            result.append(segment, start + Integer.BYTES, start + Integer.BYTES + length);
+            position += Integer.BYTES + length;
+        }
+
+        return result;
+    }
+
+    @Override
+    public long[] offsets() {
+        return new long[] { position };
+    }
+
+    @Override
+    public double progress() {
+        return footerOffset == 0 ? 1 : (double) position / footerOffset;
+    }
+
+    @Override
+    public long[] sizes() {
+        return new long[] { size };
+    }
+
+    /**
+     * Adds every title of the batch to the typeahead and the leaderboard before writing the documents
+     */
+    @Override
+    public List<JsonContent> toJsonContents(RowBatch batch, FingerprintStore fingerprints, TsvCursor cursor, DocumentWriter writer) {
+        for(int i = 0; i < batch.titles(); i++)
+            addTitle(batch.sectionBuffer(i, 0));
+
+        return DocumentSource.super.toJsonContents(batch, fingerprints, cursor, writer);
+    }
+
+    /**
+     * Decodes the fields of a record the typeahead and the leaderboard need, the ones before the akas
+     */
+    private void addTitle(ByteBuffer record) {
+        int tconst = 0;
+        for(byte c = record.get(); c != '\t'; c = record.get())
+            if(c >= '0' && c <= '9')
+                tconst = tconst * 10 + (c - '0');
+
+        var titleType = decode(dictionaries.get(SnapshotWriter.TITLE_TYPES)[readVarint(record)]);
+        var primaryTitle = readString(record);
+        var originalTitle = readString(record);
+        boolean isAdult = record.get() == 1;
+        int startYear = readSignedVarint(record);
+        readSignedVarint(record);
+        readSignedVarint(record);
+
+        List<String> genres = new ArrayList<>();
+        for(int i = readVarint(record); i > 0; i--)
+            genres.add(decode(dictionaries.get(SnapshotWriter.GENRES)[readVarint(record)]));
+
+        boolean rated = record.get() == 1;
+        double rating = rated ? record.getDouble() : Popularity.MISSING;
+        int votes = rated ? readSignedVarint(record) : 0;
+
+        if(rated && !isAdult)
+            typeahead.add(tconst, titleType, primaryTitle, originalTitle.equals(NULL) ? null : originalTitle, startYear, rating, votes);
+
+        if(!isAdult)
+            leaderboard.add(tconst, titleType, genres, rated ? Popularity.score(rating, votes) : Popularity.UNRATED, rated ? rating : Double.NaN);
+    }
+
+    private static String decode(ByteBuffer value) {
+        return new String(value.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the leaderboard of the titles read, complete once the whole snapshot has been read
+     */
+    public LeaderboardBuilder getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * Returns the typeahead of the titles read, complete once the whole snapshot has been read
+     */
+    public TypeaheadBuilder getTypeahead() {
+        return typeahead;
+    }
+
+    /**
+     * Decodes a record into the same document BatchReader writes from the tsv lines. Safe to call from several threads at once
+     */
+    @Override
+    public String writeDocument(RowBatch batch, int document, TsvCursor cursor, DocumentWriter writer) {
+        var record = batch.sectionBuffer(document, 0);
+        var films = headers.get(RowBatch.FILM);
+
+        int start = record.position();
+        while(record.get() != '\t');
+        var tconst = new String(record.array(), start, record.position() - start - 1, StandardCharsets.UTF_8);
+
+        writer.field(films.get(Film.TCONST), tconst);
+        writeDictionary(writer.name(films.get(Film.TITLE_TYPE)), SnapshotWriter.TITLE_TYPES, record);
+        writeString(writer.name(films.get(Film.PRIMARY_TITLE)), record);
+        writeString(writer.name(films.get(Film.ORIGINAL_TITLE)), record);
+        writer.field(films.get(Film.IS_ADULT), record.get() == 1)
+                .field(films.get(Film.START_YEAR), readSignedVarint(record))
+                .field(films.get(Film.END_YEAR), readSignedVarint(record))
+                .field(films.get(Film.RUNTIME_MINUTES), readSignedVarint(record));
+
+        //Only \N genres have none, and they are written as an empty list like on the documents written from the tsv lines
+        writer.startArray(films.get(Film.GENRES));
+        for(int i = readVarint(record); i > 0; i--)
+            writeDictionary(writer, SnapshotWriter.GENRES, record);
+        writer.endArray();
+
+        if(record.get() == 1) {
+            var ratings = headers.get(RowBatch.RATING);
+            double averageRating = record.getDouble();
+            int numVotes = readSignedVarint(record);
+
+            writer.field(ratings.get(Rating.AVERAGE_RATING), averageRating)
+                    .field(ratings.get(Rating.NUM_VOTES), numVotes)
+                    .field(Popularity.FIELD, Popularity.score(averageRating, numVotes));
+        } else {
+            writer.field(Popularity.FIELD, Popularity.UNRATED);
+        }
+
+        var akas = headers.get(RowBatch.AKAS);
+        writer.startArray("akas");
+        for(int i = readVarint(record); i > 0; i--) {
+            writer.startObject();
+            writeString(writer.name(akas.get(Akas.TITLE)), record);
+            writeDictionary(writer.name(akas.get(Akas.REGION)), SnapshotWriter.REGIONS, record);
+            writeDictionary(writer.name(akas.get(Akas.LANGUAGE)), SnapshotWriter.LANGUAGES, record);
+            writer.field(akas.get(Akas.IS_ORIGINAL_TITLE), record.get() == 1)
+                    .endObject();
+        }
+        writer.endArray();
+
+        writer.startArray(headers.get(RowBatch.CREW).get(Crew.DIRECTORS));
+        for(int i = readVarint(record); i > 0; i--)
+            writeName(writer.startObject(), record).endObject();
+        writer.endArray();
+
+        writer.startArray("principals");
+        for(int i = readVarint(record); i > 0; i--) {
+            writer.startObject();
+            writeName(writer.startObject("name"), record).endObject();
+            writeString(writer.name(headers.get(RowBatch.PRINCIPALS).get(Principals.CHARACTERS)), record);
+            writer.endObject();
+        }
+        writer.endArray();
+
+        if(record.get() == 1) {
+            var episodes = headers.get(RowBatch.EPISODE);
+            writeString(writer.name(episodes.get(Episode.PARENT_TCONST)), record);
+            writer.field(episodes.get(Episode.SEASON_NUMBER), readSignedVarint(record))
+                    .field(episodes.get(Episode.EPISODE_NUMBER), readSignedVarint(record));
+        }
+
+        return tconst;
+    }
+
+    /**
+     * Writes the fields of a person into the object being written, like Name.addName does
+     * @return the writer
+     */
+    private DocumentWriter writeName(DocumentWriter writer, ByteBuffer record) {
+        var names = headers.get(RowBatch.SECTIONS);
+        boolean found = record.get() == 1;
+
+        writeString(writer.name(found ? names.get(Name.NCONST) : "nconst"), record);
+
+        if(!found)
+            return writer;
+
+        writeString(writer.name(names.get(Name.PRIMARY_NAME)), record);
+
+        writer.startArray(names.get(Name.KNOWN_FOR_TITLES));
+        for(int i = readVarint(record); i > 0; i--)
+            writeString(writer, record);
+
+        return writer.endArray();
+    }
+
+    /**
+     * Returns the series roll-ups computed when the snapshot was written. Snapshots are always loaded whole, so every one is returned
+     */
+    @Override
+    public List<JsonContent> getUpdates(FingerprintStore fingerprints) {
+        return updates;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeDictionary(DocumentWriter writer, int dictionary, ByteBuffer record) {
+        var value = dictionaries.get(dictionary)[readVarint(record)];
+        writer.value(value, 0, value.limit());
+    }
+
+    private static void writeString(DocumentWriter writer, ByteBuffer record) {
+        int length = readVarint(record);
+        int start = record.position();
+
+        writer.value(record, start, start + length);
+        record.position(start + length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[readVarint(buffer)];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = readVarint(buffer);
+        List<String> result = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+            result.add(readString(buffer));
+
+        return result;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int result = 0;
+
+        for(int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            result |= (b & 0x7F) << shift;
+
+            if(b >= 0)
+                return result;
+        }
+    }
+
+    private static int readSignedVarint(ByteBuffer buffer) {
+        int value = readVarint(buffer);
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
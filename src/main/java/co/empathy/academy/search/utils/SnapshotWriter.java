@@ -0,0 +1,334 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Converts the joined title files into a snapshot: a binary file that a SnapshotReader turns into documents without parsing any tsv.
+ * The layout is:
+ * <ul>
+ *     <li>A header with MAGIC and VERSION</li>
+ *     <li>One record for each title, prefixed by its length. A record starts with the tconst as text and a tab, followed by the
+ *     fields on the order of the documents. Strings are stored as their UTF-8 bytes prefixed by their length, numbers as varints,
+ *     and the values of titleType, genres, region and language as their position on a dictionary</li>
+ *     <li>A footer with the headers of the files, the dictionaries and the series roll-ups</li>
+ *     <li>The offset of the footer, on the last 8 bytes</li>
+ * </ul>
+ * Names are stored already looked up, so the name basics file is not needed for reading a snapshot.
+ * The footer is read whole into the heap, so only the records need to be found on the mappings
+ */
+public class SnapshotWriter {
+    static final int MAGIC = 0x494D4453;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    //Position of each dictionary on the footer
+    static final int TITLE_TYPES = 0;
+    static final int GENRES = 1;
+    static final int REGIONS = 2;
+    static final int LANGUAGES = 3;
+    static final int DICTIONARIES = 4;
+    //Records can not be bigger than this, so a reader mapping the file on segments always finds them whole on one
+    static final int MAX_RECORD_BYTES = 1 << 24;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private final BatchReader source;
+    private final IndexingJob job;
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final SeriesRollups rollups = new SeriesRollups();
+    private final Output record = new Output();
+    private final Output lengthPrefix = new Output();
+    private final TsvCursor cursor = new TsvCursor();
+
+    private SnapshotWriter(BatchReader source, IndexingJob job) {
+        this.source = source;
+        this.job = job;
+
+        for(int i = 0; i < DICTIONARIES; i++)
+            dictionaries.add(new HashMap<>());
+    }
+
+    /**
+     * Writes every title of the source to a snapshot. The file is written apart and moved to the path given once it is complete
+     * @param job the progress is reported to
+     * @return number of titles written
+     */
+    public static long write(BatchReader source, Path output, IndexingJob job) throws IOException {
+        return new SnapshotWriter(source, job).write(output);
+    }
+
+    private long write(Path output) throws IOException {
+        var temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        long titles = 0;
+
+        try(var file = new BufferedOutputStream(Files.newOutputStream(temporary), OUTPUT_BUFFER_SIZE)) {
+            var header = new Output();
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeTo(file);
+            long position = HEADER_BYTES;
+
+            while(!source.hasFinished()) {
+                var batch = source.getRawBatch(Long.MAX_VALUE);
+
+                for(int i = 0; i < batch.titles(); i++) {
+                    record.clear();
+                    encode(batch, i);
+
+                    if(record.size > MAX_RECORD_BYTES)
+                        throw new IOException("The title " + batch.id(i, cursor) + " is too big for a snapshot");
+
+                    lengthPrefix.clear();
+                    lengthPrefix.writeInt(record.size);
+                    lengthPrefix.writeTo(file);
+                    record.writeTo(file);
+                    position += Integer.BYTES + record.size;
+
+                    rollups.add(batch, i, RowBatch.EPISODE, RowBatch.RATING, cursor);
+                }
+
+                titles += batch.titles();
+                job.addDocuments(batch.titles());
+                job.addBytes(batch.bytes(), source.progress());
+            }
+
+            var footer = new Output();
+            writeFooter(footer);
+            footer.writeLong(position);
+            footer.writeTo(file);
+        } catch(IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return titles;
+    }
+
+    private void encode(RowBatch batch, int title) {
+        batch.section(title, RowBatch.FILM, cursor).nextLine();
+        var tconst = cursor.string();
+        record.writeBytes(tconst.getBytes(StandardCharsets.UTF_8));
+        record.writeByte('\t');
+
+        record.writeVarint(intern(TITLE_TYPES, cursor.string()));
+        record.writeString(cursor.string());
+        record.writeString(cursor.string());
+        record.writeByte(cursor.boolValue() ? 1 : 0);
+        record.writeSignedVarint(cursor.intValue());
+        record.writeSignedVarint(cursor.intValue());
+        record.writeSignedVarint(cursor.intValue());
+        writeDictionaryList(GENRES);
+
+        if(batch.section(title, RowBatch.RATING, cursor).nextLine()) {
+            record.writeByte(1);
+            record.writeDouble(cursor.skip(Rating.AVERAGE_RATING).doubleValue());
+            record.writeSignedVarint(cursor.intValue());
+        } else {
+            record.writeByte(0);
+        }
+
+        encodeAkas(batch.section(title, RowBatch.AKAS, cursor));
+
+        List<String> directors = new ArrayList<>();
+        if(batch.section(title, RowBatch.CREW, cursor).nextLine())
+            cursor.skip(Crew.DIRECTORS).strings(',', directors::add);
+
+        record.writeVarint(directors.size());
+        for(String director : directors)
+            encodeName(director);
+
+        encodePrincipals(batch.section(title, RowBatch.PRINCIPALS, cursor));
+
+        if(batch.section(title, RowBatch.EPISODE, cursor).nextLine()) {
+            record.writeByte(1);
+            record.writeString(cursor.skip(Episode.PARENT_TCONST).string());
+            record.writeSignedVarint(cursor.intValue());
+            record.writeSignedVarint(cursor.intValue());
+        } else {
+            record.writeByte(0);
+        }
+    }
+
+    private void encodeAkas(TsvCursor akas) {
+        List<Aka> values = new ArrayList<>();
+
+        while(akas.nextLine())
+            values.add(new Aka(akas.skip(Akas.TITLE).string(), akas.string(), akas.string(), akas.skip(Akas.IS_ORIGINAL_TITLE - Akas.LANGUAGE - 1).boolValue()));
+
+        record.writeVarint(values.size());
+
+        for(Aka aka : values) {
+            record.writeString(aka.title());
+            record.writeVarint(intern(REGIONS, aka.region()));
+            record.writeVarint(intern(LANGUAGES, aka.language()));
+            record.writeByte(aka.isOriginalTitle() ? 1 : 0);
+        }
+    }
+
+    private void encodePrincipals(TsvCursor principals) {
+        List<Principal> values = new ArrayList<>();
+
+        while(principals.nextLine())
+            values.add(new Principal(principals.skip(Principals.NCONST).string(), principals.skip(Principals.CHARACTERS - Principals.NCONST - 1).string()));
+
+        record.writeVarint(values.size());
+
+        for(Principal principal : values) {
+            encodeName(principal.nconst());
+            record.writeString(principal.characters());
+        }
+    }
+
+    /**
+     * Writes the nconst and, if it is on the name basics file, the fields of the person the title documents have
+     */
+    private void encodeName(String nconst) {
+        var name = source.getNameLookup().find(nconst);
+
+        record.writeByte(name == null ? 0 : 1);
+        record.writeString(nconst);
+
+        if(name == null)
+            return;
+
+        record.writeString(name.skip(Name.PRIMARY_NAME).string());
+
+        List<String> knownFor = new ArrayList<>();
+        name.skip(Name.KNOWN_FOR_TITLES - Name.PRIMARY_NAME - 1).strings(',', knownFor::add);
+
+        record.writeVarint(knownFor.size());
+        for(String title : knownFor)
+            record.writeString(title);
+    }
+
+    private void writeDictionaryList(int dictionary) {
+        List<String> values = new ArrayList<>();
+        cursor.strings(',', values::add);
+
+        record.writeVarint(values.size());
+        for(String value : values)
+            record.writeVarint(intern(dictionary, value));
+    }
+
+    private int intern(int dictionary, String value) {
+        var entries = dictionaries.get(dictionary);
+
+        return entries.computeIfAbsent(value, x -> entries.size());
+    }
+
+    private void writeFooter(Output footer) {
+        List<List<String>> headers = new ArrayList<>();
+        for(int section = 0; section < RowBatch.SECTIONS; section++)
+            headers.add(source.getHeaders(section));
+        headers.add(source.getNameLookup().getHeaders());
+
+        footer.writeVarint(headers.size());
+        for(List<String> fileHeaders : headers)
+            writeStrings(footer, fileHeaders);
+
+        for(var dictionary : dictionaries) {
+            var values = new String[dictionary.size()];
+            dictionary.forEach((value, position) -> values[position] = value);
+            writeStrings(footer, Arrays.asList(values));
+        }
+
+        var updates = rollups.toUpdates(null);
+        footer.writeVarint(updates.size());
+
+        for(JsonContent update : updates) {
+            footer.writeString(update.id());
+            footer.writeVarint(update.length());
+            footer.writeBytes(Arrays.copyOfRange(update.source(), update.offset(), update.offset() + update.length()));
+        }
+    }
+
+    private static void writeStrings(Output output, List<String> values) {
+        output.writeVarint(values.size());
+
+        for(String value : values)
+            output.writeString(value);
+    }
+
+    /**
+     * Every line of a title is read before writing its count, so they are kept apart meanwhile
+     */
+    private record Aka(String title, String region, String language, boolean isOriginalTitle) {}
+
+    private record Principal(String nconst, String characters) {}
+
+    /**
+     * Growable array the binary values are written to
+     */
+    private static class Output {
+        private byte[] data = new byte[1 << 12];
+        private int size;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            data[size++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeInt(int value) {
+            for(int shift = 24; shift >= 0; shift -= 8)
+                writeByte(value >>> shift);
+        }
+
+        private void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        private void writeVarint(int value) {
+            while((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            writeByte(value);
+        }
+
+        /**
+         * Zigzag encoding, so small negative numbers are small too
+         */
+        private void writeSignedVarint(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        private void writeString(String value) {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void writeTo(OutputStream output) throws IOException {
+            output.write(data, 0, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if(size + extra > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+}
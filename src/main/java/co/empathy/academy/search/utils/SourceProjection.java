@@ -0,0 +1,83 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Limits the fields of the _source returned with the hits, so list views do not transfer the akas and principals of every title.
+ * Elasticsearch filters the sources itself, so the fields left out are neither sent nor serialized
+ */
+public class SourceProjection {
+    //Preset returning the whole documents
+    public static final String FULL = "full";
+    //Fields returned by each preset. An empty list returns every field
+    private static final Map<String, List<String>> PRESETS = Map.of(
+            "card", List.of("primaryTitle", "titleType", "startYear", "averageRating", "numVotes", "genres"),
+            FULL, List.of()
+    );
+
+    private SourceProjection() {}
+
+    /**
+     * Adds the source filter to a search. The fields are added to the ones of the preset, and the excluded ones are removed from both
+     * @param preset name of a preset, full if it is empty
+     * @throws IllegalArgumentException if the preset does not exist
+     */
+    public static void addProjection(Optional<String> preset, Optional<List<String>> fields, Optional<List<String>> exclude, SearchRequest.Builder request) {
+        var includes = getIncludes(preset, fields);
+        var excludes = exclude.orElse(List.of());
+
+        if(includes.isEmpty() && excludes.isEmpty())
+            return;
+
+        request.source(_0 -> _0
+                .filter(_1 -> _1
+                        .includes(includes)
+                        .excludes(excludes)
+                )
+        );
+    }
+
+    /**
+     * Adds the same source filter to a multi-get
+     * @throws IllegalArgumentException if the preset does not exist
+     */
+    public static void addProjection(Optional<String> preset, Optional<List<String>> fields, Optional<List<String>> exclude, MgetRequest.Builder request) {
+        var includes = getIncludes(preset, fields);
+        var excludes = exclude.orElse(List.of());
+
+        if(!includes.isEmpty())
+            request.sourceIncludes(includes);
+
+        if(!excludes.isEmpty())
+            request.sourceExcludes(excludes);
+    }
+
+    /**
+     * Returns the fields of the preset plus the ones asked. A preset returning every field has them already,
+     * so its includes stay empty instead of being narrowed to the fields asked
+     */
+    private static List<String> getIncludes(Optional<String> preset, Optional<List<String>> fields) {
+        var includes = new ArrayList<>(getPreset(preset));
+
+        if(!includes.isEmpty())
+            fields.ifPresent(includes::addAll);
+
+        return includes;
+    }
+
+    private static List<String> getPreset(Optional<String> preset) {
+        var name = preset.map(String::trim).orElse(FULL);
+        var fields = PRESETS.get(name);
+
+        if(fields == null)
+            throw new IllegalArgumentException("Preset '" + name + "' does not exist, it must be one of " + PRESETS.keySet());
+
+        return fields;
+    }
+}
@@ -1,7 +0,0 @@
-package co.empathy.academy.search.utils;
-
-public class StringToDoubleConverter {
-    public static double getDouble(String content) {
-        return Double.parseDouble(content);
-    }
-}
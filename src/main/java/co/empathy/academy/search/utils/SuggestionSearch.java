@@ -1,96 +1,86 @@
 package co.empathy.academy.search.utils;
 
-import co.empathy.academy.search.exception.types.InternalServerException;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.elasticsearch.core.search.Suggestion;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.elasticsearch.search.suggest.SuggestBuilder;
-import org.elasticsearch.search.suggest.SuggestBuilders;
-import org.elasticsearch.search.suggest.SuggestionBuilder;
-import org.elasticsearch.search.suggest.phrase.PhraseSuggestion;
-import org.elasticsearch.search.suggest.phrase.PhraseSuggestionBuilder;
-import org.elasticsearch.search.suggest.term.TermSuggestion;
-import org.elasticsearch.search.suggest.term.TermSuggestionBuilder;
 
-import java.io.IOException;
+import java.util.List;
 
+/**
+ * Spelling suggestions for the searches without hits. The suggesters are sent with the searches,
+ * so a search that comes back empty already has its suggestions without a second request
+ */
 public class SuggestionSearch {
-    private static RestHighLevelClient client = ElasticHighClientUtils.getClient();
-    private SuggestionSearch() {}
+    private static final String TERM_SUGGESTER = "spellcheck";
+    private static final String PHRASE_SUGGESTER = "phrase-suggester";
+    private static final String FIELD = "primaryTitle";
 
-    private static void addTermSuggestion(String q, SuggestBuilder suggestBuilder) {
-        SuggestionBuilder<TermSuggestionBuilder> termSuggestionBuilder =
-                SuggestBuilders.termSuggestion("primaryTitle").text(q);
+    private SuggestionSearch() {}
 
-        suggestBuilder.addSuggestion("spellcheck", termSuggestionBuilder);
+    /**
+     * Adds the term and phrase suggesters of the query to a search
+     */
+    public static void addSuggestions(String q, SearchRequest.Builder request) {
+        request.suggest(_0 -> _0
+                .text(q)
+                .suggesters(TERM_SUGGESTER, _1 -> _1
+                        .term(_2 -> _2.field(FIELD))
+                )
+                .suggesters(PHRASE_SUGGESTER, _1 -> _1
+                        .phrase(_2 -> _2
+                                .field(FIELD)
+                                .gramSize(3)
+                                .maxErrors(3D)
+                        )
+                )
+        );
     }
 
-    public static String run(String q) {
-        var searchRequest = new SearchRequest("films");
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        SuggestBuilder suggestBuilder = new SuggestBuilder();
-
-        addTermSuggestion(q, suggestBuilder);
-
-        addPhraseSuggestion(q, suggestBuilder);
-
-        searchSourceBuilder.suggest(suggestBuilder);
-
-        searchRequest.source(searchSourceBuilder);
-
-        try {
-            var suggestResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-
-            TermSuggestion termSuggest = suggestResponse.getSuggest().getSuggestion("spellcheck");
-            PhraseSuggestion phraseSuggest = suggestResponse.getSuggest().getSuggestion("phrase-suggester");
-
-            var termArray = Json.createArrayBuilder();
-            var phraseArray = Json.createArrayBuilder();
-
-            addTermResults(termSuggest, termArray);
-            addPhraseResults(phraseSuggest, phraseArray);
-
-            return Json.createObjectBuilder()
-                    .add("hits", Json.createArrayBuilder().build())
-                    .add("aggs", Json.createArrayBuilder().build())
-                    .add("term-suggestions", termArray.build())
-                    .add("phrase-suggestions", phraseArray.build())
-                    .build()
-                    .toString();
-
-        } catch (IOException e) {
-            throw new InternalServerException("There was a problem processing your request", e);
-        }
+    /**
+     * Builds the response of a search without hits from the suggestions that came with it. A search without suggesters gets none
+     */
+    public static String getResult(ResponseBody<?> response) {
+        var termArray = Json.createArrayBuilder();
+        var phraseArray = Json.createArrayBuilder();
+
+        addTermResults(response.suggest().getOrDefault(TERM_SUGGESTER, List.of()), termArray);
+        addPhraseResults(response.suggest().getOrDefault(PHRASE_SUGGESTER, List.of()), phraseArray);
+
+        return Json.createObjectBuilder()
+                .add("hits", Json.createArrayBuilder().build())
+                .add("aggs", Json.createArrayBuilder().build())
+                .add("term-suggestions", termArray.build())
+                .add("phrase-suggestions", phraseArray.build())
+                .build()
+                .toString();
     }
 
-    private static void addPhraseResults(PhraseSuggestion suggest, JsonArrayBuilder phraseArray) {
-        suggest.getEntries().get(0).getOptions()
+    private static void addPhraseResults(List<? extends Suggestion<?>> suggestions, JsonArrayBuilder phraseArray) {
+        if(suggestions.isEmpty())
+            return;
+
+        suggestions.get(0).phrase().options()
                 .stream().map(option ->
                         Json.createObjectBuilder()
-                                .add("score", option.getScore())
-                                .add("text", option.getText().toString())
+                                .add("score", option.score())
+                                .add("text", option.text())
                                 .build())
                 .forEach(phraseArray::add);
     }
 
-    private static void addTermResults(TermSuggestion suggest, JsonArrayBuilder termArray) {
-        suggest.getEntries().get(0).getOptions()
+    private static void addTermResults(List<? extends Suggestion<?>> suggestions, JsonArrayBuilder termArray) {
+        if(suggestions.isEmpty())
+            return;
+
+        suggestions.get(0).term().options()
                 .stream().map(option ->
                         Json.createObjectBuilder()
-                                .add("score", option.getScore())
-                                .add("freq", option.getFreq())
-                                .add("text", option.getText().toString())
+                                .add("score", option.score())
+                                .add("freq", option.freq())
+                                .add("text", option.text())
                                 .build())
                 .forEach(termArray::add);
     }
-
-    private static void addPhraseSuggestion(String q, SuggestBuilder suggestBuilder) {
-        SuggestionBuilder<PhraseSuggestionBuilder> phraseSuggestionBuilder =
-                SuggestBuilders.phraseSuggestion("primaryTitle").text(q).gramSize(3).maxErrors(3);
-
-        suggestBuilder.addSuggestion("phrase-suggester", phraseSuggestionBuilder);
-    }
 }
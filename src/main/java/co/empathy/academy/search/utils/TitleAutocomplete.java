@@ -0,0 +1,48 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Completion;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Holds the typeahead of the published films index, so the completions always come from the titles the searches see
+ */
+public class TitleAutocomplete {
+    private static final PublishedFile<TypeaheadIndex> typeahead =
+            new PublishedFile<>("films.typeahead", "films", "typeahead", TypeaheadIndex::open, TypeaheadIndex::getIndex);
+
+    private TitleAutocomplete() {}
+
+    /**
+     * @see PublishedFile#open
+     */
+    public static void open(Path file) {
+        typeahead.open(file);
+    }
+
+    /**
+     * @see PublishedFile#buildingPath
+     */
+    public static Path buildingPath(String index) {
+        return typeahead.buildingPath(index);
+    }
+
+    /**
+     * @see PublishedFile#publish
+     */
+    public static void publish(Path built) throws IOException {
+        typeahead.publish(built);
+    }
+
+    /**
+     * Returns the best titles starting by the text given, or with a word starting by it
+     * @param size maximum number of titles returned
+     * @return empty if there is no typeahead, or it is not of the index published
+     */
+    public static Optional<List<Completion>> complete(String text, int size) {
+        return typeahead.get().map(x -> x.complete(text, size));
+    }
+}
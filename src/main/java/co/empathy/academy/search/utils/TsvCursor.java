@@ -0,0 +1,256 @@
+package co.empathy.academy.search.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reusable cursor over the lines of a tsv stored on a byte buffer.
+ * Fields are read in order and parsed in place, so only the fields converted with string() create objects.
+ * A \N field is read as 0 by the numeric methods
+ */
+public class TsvCursor {
+    private static final byte TAB = '\t';
+    private static final byte NEW_LINE = '\n';
+    private static final byte BACKSLASH = '\\';
+    //Characters of the numbers parsed without the JDK, all of them digits at most
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = { 1, 10, 100, 1000, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+    private ByteBuffer buffer;
+    //Bytes the cursor can read
+    private int regionEnd;
+    //Start of the next line of the region
+    private int nextLine;
+    //Current line
+    private int lineEnd;
+    //Start of the current field
+    private int position;
+    //Used for decoding strings from buffers not backed by an array
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Points the cursor to a region of a buffer. nextLine must be called before reading the first line
+     * @param buffer containing the lines
+     * @param start offset of the first line
+     * @param end offset where the region ends
+     * @return this cursor
+     */
+    public TsvCursor reset(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.regionEnd = end;
+        this.nextLine = start;
+        this.lineEnd = start;
+        this.position = start;
+
+        return this;
+    }
+
+    /**
+     * Moves the cursor to the first field of the next line of the region
+     * @return false if there are no more lines
+     */
+    public boolean nextLine() {
+        if(nextLine >= regionEnd)
+            return false;
+
+        position = nextLine;
+        lineEnd = indexOf(NEW_LINE, position, regionEnd);
+        nextLine = lineEnd + 1;
+
+        return true;
+    }
+
+    /**
+     * Skips the fields given
+     * @param fields number of fields to skip
+     * @return this cursor
+     */
+    public TsvCursor skip(int fields) {
+        for(int i = 0; i < fields; i++)
+            position = fieldEnd() + 1;
+
+        return this;
+    }
+
+    /**
+     * @return true if the current field is \N
+     */
+    public boolean isNull() {
+        return fieldEnd() - position == 2 && buffer.get(position) == BACKSLASH && buffer.get(position + 1) == 'N';
+    }
+
+    /**
+     * Decodes the current field and moves to the next one
+     */
+    public String string() {
+        int end = fieldEnd();
+        var result = decode(position, end);
+        position = end + 1;
+
+        return result;
+    }
+
+    /**
+     * Writes the current field as a JSON string, without decoding it, and moves to the next one
+     */
+    public void writeString(DocumentWriter writer) {
+        int end = fieldEnd();
+        writer.value(buffer, position, end);
+        position = end + 1;
+    }
+
+    /**
+     * Splits the current field by the separator given, writing every part as a JSON string, and moves to the next field.
+     * A \N field has no parts
+     */
+    public void writeStrings(char separator, DocumentWriter writer) {
+        int end = fieldEnd();
+
+        if(!isNull()) {
+            int start = position;
+
+            for(int i = position; i <= end; i++) {
+                if(i == end || buffer.get(i) == separator) {
+                    writer.value(buffer, start, i);
+                    start = i + 1;
+                }
+            }
+        }
+
+        position = end + 1;
+    }
+
+    /**
+     * Splits the current field by the separator given, decoding every part, and moves to the next field.
+     * A \N field has no parts
+     */
+    public void strings(char separator, Consumer<String> consumer) {
+        int end = fieldEnd();
+
+        if(!isNull()) {
+            int start = position;
+
+            for(int i = position; i <= end; i++) {
+                if(i == end || buffer.get(i) == separator) {
+                    consumer.accept(decode(start, i));
+                    start = i + 1;
+                }
+            }
+        }
+
+        position = end + 1;
+    }
+
+    /**
+     * Parses the current field as a 1 or 0 flag and moves to the next one
+     */
+    public boolean boolValue() {
+        int end = fieldEnd();
+        boolean result = end - position == 1 && buffer.get(position) == '1';
+        position = end + 1;
+
+        return result;
+    }
+
+    /**
+     * Parses the current field as an int and moves to the next one. Any character that is not a digit is ignored,
+     * so ids like tt0000001 are parsed as their number
+     */
+    public int intValue() {
+        int end = fieldEnd();
+        int result = 0;
+        boolean negative = false;
+
+        for(int i = position; i < end; i++) {
+            byte c = buffer.get(i);
+
+            if(c >= '0' && c <= '9')
+                result = result * 10 + (c - '0');
+            else if(c == '-')
+                negative = true;
+        }
+
+        position = end + 1;
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses the current field as a double and moves to the next one
+     */
+    public double doubleValue() {
+        int end = fieldEnd();
+
+        if(isNull()) {
+            position = end + 1;
+            return 0;
+        }
+
+        long mantissa = 0;
+        int decimals = -1;
+        boolean negative = false;
+
+        for(int i = position; i < end; i++) {
+            byte c = buffer.get(i);
+
+            if(c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+
+                if(decimals >= 0)
+                    decimals++;
+            } else if(c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if(c == '-' && i == position) {
+                negative = true;
+            } else {
+                //Exponents and other rare formats are left to the JDK
+                var result = Double.parseDouble(decode(position, end));
+                position = end + 1;
+                return result;
+            }
+        }
+
+        //Longer numbers would lose digits on the mantissa, or not be rounded like the JDK does
+        if(end - position > MAX_FAST_DIGITS || decimals >= POWERS_OF_TEN.length) {
+            var result = Double.parseDouble(decode(position, end));
+            position = end + 1;
+            return result;
+        }
+
+        position = end + 1;
+
+        double result = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+
+        return negative ? -result : result;
+    }
+
+    private int fieldEnd() {
+        //Reading past the last field gives empty fields
+        if(position > lineEnd)
+            position = lineEnd;
+
+        return indexOf(TAB, position, lineEnd);
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for(int i = from; i < to; i++)
+            if(buffer.get(i) == value)
+                return i;
+
+        return to;
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+
+        if(buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+
+        if(scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+
+        buffer.get(start, scratch, 0, length);
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
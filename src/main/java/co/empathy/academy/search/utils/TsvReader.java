@@ -0,0 +1,221 @@
+package co.empathy.academy.search.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the lines of a tsv file into a reusable direct buffer, without decoding them.
+ * The current line can be parsed with a TsvCursor or copied into a RowBatch.
+ * Files ending in .gz are decompressed on their own thread while they are read
+ */
+public class TsvReader {
+    //Initial size of the buffer. It only grows if a single line does not fit
+    private static final int BUFFER_SIZE = 1 << 22;
+    private static final byte NEW_LINE = '\n';
+    private static final String GZIP_EXTENSION = ".gz";
+    private final Path path;
+    private ReadableByteChannel channel;
+    private final TsvCursor cursor = new TsvCursor();
+    private final List<String> headers;
+    private ByteBuffer buffer;
+    //Offset on the file of the first byte of the buffer
+    private long bufferOffset;
+    //Start of the next line to read
+    private int position;
+    //Current line
+    private int lineStart;
+    private int lineEnd;
+    private boolean endOfInput;
+
+    public TsvReader(String path) throws IOException {
+        this.path = Path.of(path);
+        this.channel = open(this.path);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+
+        this.headers = nextLine() ? Arrays.stream(decodeLine().split("\t")).toList() : List.of();
+    }
+
+    private static ReadableByteChannel open(Path path) throws IOException {
+        if(path.getFileName().toString().endsWith(GZIP_EXTENSION))
+            return new GzipChannel(path);
+
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Moves to the next line
+     * @return false if the file has no more lines
+     */
+    public boolean nextLine() throws IOException {
+        while(true) {
+            int limit = buffer.limit();
+
+            for(int i = position; i < limit; i++) {
+                if(buffer.get(i) == NEW_LINE) {
+                    setLine(position, i);
+                    return true;
+                }
+            }
+
+            if(endOfInput) {
+                if(position < limit) {
+                    setLine(position, limit);
+                    return true;
+                }
+
+                return false;
+            }
+
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.position = Math.min(end + 1, buffer.limit());
+    }
+
+    /**
+     * Returns the offset on the file where the current line starts
+     */
+    public long lineOffset() {
+        return bufferOffset + lineStart;
+    }
+
+    /**
+     * Returns the offset on the file where the line after the current one starts
+     */
+    public long nextLineOffset() {
+        return bufferOffset + position;
+    }
+
+    /**
+     * Returns the size of the file on disk, compressed if it is a gzip file
+     */
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    /**
+     * @return fraction of the file already read, from 0 to 1
+     */
+    public double progress() throws IOException {
+        if(channel instanceof GzipChannel gzip)
+            return gzip.progress();
+
+        long size = size();
+
+        return size == 0 ? 1 : (double) nextLineOffset() / size;
+    }
+
+    /**
+     * Moves to an offset of the file. It must be the start of a line, and nextLine must be called before reading it.
+     * Offsets are always of the decompressed bytes, so gzip files are decompressed again up to the offset
+     */
+    public void seek(long offset) throws IOException {
+        if(channel instanceof FileChannel file) {
+            file.position(offset);
+        } else {
+            channel.close();
+            channel = open(path);
+            discard(offset);
+        }
+
+        buffer.limit(0);
+        bufferOffset = offset;
+        position = 0;
+        lineStart = 0;
+        lineEnd = 0;
+        endOfInput = false;
+    }
+
+    private void discard(long bytes) throws IOException {
+        while(bytes > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), bytes));
+            int read = channel.read(buffer);
+
+            if(read < 0)
+                throw new IOException(path + " is shorter than the offset to resume from");
+
+            bytes -= read;
+        }
+    }
+
+    /**
+     * Returns the number of the id on the first field of the current line, like the 1 of tt0000001
+     */
+    public int id() {
+        cursor.reset(buffer, lineStart, lineEnd).nextLine();
+
+        return cursor.intValue();
+    }
+
+    /**
+     * Copies the current line, with its line break, into the batch
+     */
+    public void copyLine(RowBatch batch) {
+        batch.append(buffer, lineStart, lineEnd);
+    }
+
+    /**
+     * Returns the length of the current line, without its line break
+     */
+    public int lineLength() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * Copies the current line, without its line break, into an array
+     */
+    public void copyLine(byte[] destination, int offset) {
+        buffer.get(lineStart, destination, offset, lineEnd - lineStart);
+    }
+
+    private String decodeLine() {
+        var bytes = new byte[lineEnd - lineStart];
+        buffer.get(lineStart, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads more bytes from the file, discarding the ones that are not going to be used anymore
+     */
+    private void fill() throws IOException {
+        if(position == 0 && buffer.limit() == buffer.capacity()) {
+            //A single line does not fit in the buffer
+            var bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            bigger.put(buffer.position(0));
+            buffer = bigger;
+        } else {
+            bufferOffset += position;
+            buffer.position(position);
+            buffer.compact();
+        }
+
+        position = 0;
+
+        if(channel.read(buffer) < 0)
+            endOfInput = true;
+
+        buffer.limit(buffer.position());
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
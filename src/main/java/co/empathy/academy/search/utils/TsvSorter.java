@@ -0,0 +1,285 @@
+package co.empathy.academy.search.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+
+/**
+ * External sort of a tsv by the number of the id of its first field, for the files that are not sorted by tconst.
+ * The lines are split in runs of bounded size, sorted and written to disk on several threads, and merged at the end.
+ * Lines with the same id keep the order they had on the input.
+ * The sorted copy is kept next to the input and reused while the input does not change, so resumed loads read the same file.
+ * Once a copy is complete, the size and modification time of its input are written to a marker next to it,
+ * so a copy is never reused for another input, or when the sort did not finish
+ */
+public class TsvSorter {
+    //Bytes of lines on each run. The memory used is this times the amount of sorting threads
+    private static final int RUN_BYTES = 1 << 26;
+    private static final int SORTERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String TSV_EXTENSION = ".tsv";
+    private static final String SORTED_SUFFIX = ".sorted" + TSV_EXTENSION;
+    private static final String MARKER_EXTENSION = ".source";
+    private static final Logger logger = LoggerFactory.getLogger(TsvSorter.class);
+
+    private TsvSorter() {}
+
+    /**
+     * Returns the path of the tsv sorted by id. It is the path given if the file is sorted already
+     */
+    public static String sorted(String path) throws IOException, InterruptedException {
+        var input = Path.of(path).toAbsolutePath();
+        var output = sortedPath(input);
+        var marker = output.resolveSibling(output.getFileName() + MARKER_EXTENSION);
+        var source = describe(input);
+
+        if(Files.exists(output) && Files.exists(marker) && Files.readString(marker).equals(source)) {
+            logger.info("Using the sorted copy {}", output);
+            return output.toString();
+        }
+
+        if(isSorted(path))
+            return path;
+
+        logger.info("Sorting {}", input);
+        Files.deleteIfExists(marker);
+        sort(input, output);
+        Files.writeString(marker, source);
+        logger.info("Sorted {} into {}", input, output);
+
+        return output.toString();
+    }
+
+    /**
+     * Returns the size and modification time of a file, which change whenever it is replaced
+     */
+    private static String describe(Path input) throws IOException {
+        return Files.size(input) + "\t" + Files.getLastModifiedTime(input).toMillis();
+    }
+
+    private static Path sortedPath(Path input) {
+        var name = input.getFileName().toString();
+
+        if(name.endsWith(GZIP_EXTENSION))
+            name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        if(name.endsWith(TSV_EXTENSION))
+            name = name.substring(0, name.length() - TSV_EXTENSION.length());
+
+        return input.resolveSibling(name + SORTED_SUFFIX);
+    }
+
+    /**
+     * Reads the file until the first line with a lower id than the previous one
+     */
+    private static boolean isSorted(String path) throws IOException {
+        var reader = new TsvReader(path);
+
+        try {
+            int previous = Integer.MIN_VALUE;
+
+            while(reader.nextLine()) {
+                int id = reader.id();
+
+                if(id < previous)
+                    return false;
+
+                previous = id;
+            }
+
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void sort(Path input, Path output) throws IOException, InterruptedException {
+        var reader = new TsvReader(input.toString());
+        var header = String.join("\t", reader.getHeaders()).getBytes(StandardCharsets.UTF_8);
+        //Runs not being filled or sorted. Taking one blocks the reading while every sorter is busy
+        BlockingQueue<Run> free = new ArrayBlockingQueue<>(SORTERS);
+        List<Path> runs = new ArrayList<>();
+        List<Future<?>> pending = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(SORTERS);
+
+        try {
+            for(int i = 0; i < SORTERS; i++)
+                free.add(new Run());
+
+            var run = free.take();
+
+            while(reader.nextLine()) {
+                if(!run.fits(reader.lineLength()) && run.lines > 0) {
+                    pending.add(write(executor, run, header, runs, free, input));
+                    run = free.take();
+                }
+
+                run.add(reader);
+            }
+
+            if(run.lines > 0 || runs.isEmpty())
+                pending.add(write(executor, run, header, runs, free, input));
+
+            for(Future<?> future : pending)
+                future.get();
+
+            merge(runs, header, output);
+
+        } catch(ExecutionException e) {
+            throw new IOException("Could not sort " + input, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+
+            for(Path run : runs)
+                Files.deleteIfExists(run);
+        }
+    }
+
+    /**
+     * Sorts a run and writes it to a temporary file on a sorter thread, giving the run back to the free ones afterwards
+     */
+    private static Future<?> write(ExecutorService executor, Run run, byte[] header, List<Path> runs, BlockingQueue<Run> free, Path input) throws IOException {
+        var path = Files.createTempFile(input.getParent(), input.getFileName().toString(), ".run");
+        runs.add(path);
+
+        return executor.submit(() -> {
+            try(var output = new BufferedOutputStream(Files.newOutputStream(path), OUTPUT_BUFFER_SIZE)) {
+                run.sort();
+                output.write(header);
+                output.write('\n');
+                run.writeTo(output);
+            } finally {
+                run.clear();
+                free.add(run);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Merges the sorted runs on a single pass. Ties are taken from the earliest run, so equal ids keep their order
+     */
+    private static void merge(List<Path> runs, byte[] header, Path output) throws IOException {
+        var temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparingInt(RunReader::id).thenComparingInt(RunReader::run));
+        byte[] line = new byte[1 << 16];
+
+        try(var writer = new BufferedOutputStream(Files.newOutputStream(temporary), OUTPUT_BUFFER_SIZE)) {
+            for(int i = 0; i < runs.size(); i++) {
+                var reader = new TsvReader(runs.get(i).toString());
+
+                if(reader.nextLine())
+                    queue.add(new RunReader(reader, i));
+                else
+                    reader.close();
+            }
+
+            writer.write(header);
+            writer.write('\n');
+
+            while(!queue.isEmpty()) {
+                var next = queue.poll();
+                var reader = next.reader();
+                int length = reader.lineLength();
+
+                if(length > line.length)
+                    line = new byte[length];
+
+                reader.copyLine(line, 0);
+                writer.write(line, 0, length);
+                writer.write('\n');
+
+                if(reader.nextLine())
+                    queue.add(new RunReader(reader, next.run()));
+                else
+                    reader.close();
+            }
+        } finally {
+            for(RunReader reader : queue)
+                reader.reader().close();
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reader of a run with the id of its current line
+     */
+    private record RunReader(TsvReader reader, int run, int id) {
+        private RunReader(TsvReader reader, int run) {
+            this(reader, run, reader.id());
+        }
+    }
+
+    /**
+     * Lines of a run copied one after the other, with a sort key for each one
+     */
+    private static class Run {
+        private byte[] data = new byte[RUN_BYTES];
+        private int size;
+        //Start of every line, plus the end of the last one
+        private int[] starts = new int[1 << 16];
+        //The id on the high bits and the position of the line on the low ones, so equal ids keep their order
+        private long[] keys = new long[1 << 16];
+        private int lines;
+
+        private boolean fits(int length) {
+            return size + length + 1 <= data.length;
+        }
+
+        private void add(TsvReader reader) {
+            int length = reader.lineLength();
+
+            if(!fits(length))
+                //A single line bigger than a run
+                data = Arrays.copyOf(data, size + length + 1);
+
+            if(lines + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+
+            reader.copyLine(data, size);
+            keys[lines] = (long) reader.id() << 32 | lines;
+            starts[lines++] = size;
+            size += length;
+            data[size++] = '\n';
+            starts[lines] = size;
+        }
+
+        private void sort() {
+            Arrays.sort(keys, 0, lines);
+        }
+
+        private void writeTo(OutputStream output) throws IOException {
+            for(int i = 0; i < lines; i++) {
+                int line = (int) keys[i];
+                output.write(data, starts[line], starts[line + 1] - starts[line]);
+            }
+        }
+
+        private void clear() {
+            size = 0;
+            lines = 0;
+
+            //A run grown by a single huge line goes back to its normal size
+            if(data.length > RUN_BYTES)
+                data = new byte[RUN_BYTES];
+        }
+    }
+}
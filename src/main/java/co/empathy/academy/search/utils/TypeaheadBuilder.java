@@ -0,0 +1,226 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Rating;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the titles while they are loaded and writes them as a typeahead file, read by TypeaheadIndex.
+ * Every title is stored under its normalized primary and original titles and under the words they contain,
+ * so "godf" completes "The Godfather". Adult titles are left out, like on the searches. The layout is:
+ * <ul>
+ *     <li>A header with MAGIC, VERSION, the index the titles were loaded on and the size of the sections</li>
+ *     <li>The keys sorted by their UTF-8 bytes, as the offsets where each one starts followed by the bytes</li>
+ *     <li>The title and weight of each key</li>
+ *     <li>A segment tree with the key of highest weight of every range, so the best keys of a prefix are found without scanning it</li>
+ *     <li>The titles, as the offsets where each one starts followed by their tconst, start year, weight, type and primary title</li>
+ * </ul>
+ */
+public class TypeaheadBuilder {
+    static final int MAGIC = 0x54594844;
+    static final int VERSION = 2;
+    //Titles with less votes are left out. They are most of the episodes, and would never be among the best completions
+    private static final int MIN_VOTES = 1;
+    //Words of a title a completion can start at
+    private static final int MAX_WORD_STARTS = 8;
+    //Keys are cut to this length, longer prefixes are cut the same way when searched
+    static final int MAX_KEY_CHARS = 64;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private final Map<Integer, Title> titles = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a title of a batch of raw lines. Safe to call from several threads at once
+     * @param filmSection section of the batch with the line of title.basics.tsv
+     * @param ratingSection section of the batch with the line of title.ratings.tsv
+     */
+    public void add(RowBatch batch, int document, int filmSection, int ratingSection, TsvCursor cursor) {
+        if(!batch.section(document, ratingSection, cursor).nextLine())
+            return;
+
+        double rating = cursor.skip(Rating.AVERAGE_RATING).doubleValue();
+        int votes = cursor.intValue();
+
+        if(votes < MIN_VOTES || !batch.section(document, filmSection, cursor).nextLine())
+            return;
+
+        int tconst = cursor.intValue();
+        var titleType = cursor.string();
+        var primaryTitle = cursor.string();
+        var originalTitle = cursor.isNull() ? null : cursor.string();
+
+        if(originalTitle == null)
+            cursor.skip(1);
+
+        //Adult titles are left out, like on the searches
+        if(cursor.boolValue())
+            return;
+
+        add(tconst, titleType, primaryTitle, originalTitle, cursor.intValue(), rating, votes);
+    }
+
+    /**
+     * Adds a title that is not adult. Safe to call from several threads at once
+     * @param originalTitle null if the title has none
+     * @param startYear 0 if the title has none
+     */
+    public void add(int tconst, String titleType, String primaryTitle, String originalTitle, int startYear, double averageRating, int numVotes) {
+        if(numVotes < MIN_VOTES)
+            return;
+
+        titles.put(tconst, new Title(tconst, titleType, primaryTitle, originalTitle, startYear, weight(averageRating, numVotes)));
+    }
+
+    /**
+     * Returns the weight of a title, the higher the sooner it is completed
+     */
+    public static float weight(double averageRating, int numVotes) {
+        return (float) (averageRating * Math.log10(1 + numVotes));
+    }
+
+    public int size() {
+        return titles.size();
+    }
+
+    /**
+     * Writes the typeahead of every title added. The file is written apart and moved to the path given once it is complete
+     * @param index the titles were loaded on, stored as the generation of the file
+     */
+    public void write(Path output, String index) throws IOException {
+        var sorted = titles.values().stream().sorted(Comparator.comparingInt(Title::tconst)).toList();
+        List<Entry> entries = new ArrayList<>();
+
+        for(int i = 0; i < sorted.size(); i++) {
+            var title = sorted.get(i);
+            Set<String> keys = new LinkedHashSet<>();
+            addKeys(TypeaheadIndex.normalize(title.primaryTitle()), keys);
+
+            if(title.originalTitle() != null)
+                addKeys(TypeaheadIndex.normalize(title.originalTitle()), keys);
+
+            for(String key : keys)
+                entries.add(new Entry(key.getBytes(StandardCharsets.UTF_8), i, title.weight()));
+        }
+
+        entries.sort((x, y) -> Arrays.compareUnsigned(x.key(), y.key()));
+
+        var titleData = new ArrayList<byte[]>(sorted.size());
+        for(Title title : sorted)
+            titleData.add(title.toBytes());
+
+        long keyBytes = entries.stream().mapToLong(x -> x.key().length).sum();
+        long titleBytes = titleData.stream().mapToLong(x -> x.length).sum();
+
+        //Every section is mapped on its own, so none can be bigger than a mapping
+        if(keyBytes > Integer.MAX_VALUE || titleBytes > Integer.MAX_VALUE || entries.size() > Integer.MAX_VALUE / (2 * Integer.BYTES))
+            throw new IOException("There are too many titles for the typeahead");
+
+        var temporary = output.resolveSibling(output.getFileName() + ".tmp");
+
+        try(var file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), OUTPUT_BUFFER_SIZE))) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeUTF(index);
+            file.writeInt(entries.size());
+            file.writeInt(sorted.size());
+            file.writeLong(keyBytes);
+            file.writeLong(titleBytes);
+
+            int offset = 0;
+            for(Entry entry : entries) {
+                file.writeInt(offset);
+                offset += entry.key().length;
+            }
+            file.writeInt(offset);
+
+            for(Entry entry : entries)
+                file.write(entry.key());
+
+            for(Entry entry : entries)
+                file.writeInt(entry.title());
+
+            for(Entry entry : entries)
+                file.writeFloat(entry.weight());
+
+            for(int node : buildTree(entries))
+                file.writeInt(node);
+
+            offset = 0;
+            for(byte[] title : titleData) {
+                file.writeInt(offset);
+                offset += title.length;
+            }
+            file.writeInt(offset);
+
+            for(byte[] title : titleData)
+                file.write(title);
+        } catch(IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the whole title and the rest of it from each of its first words
+     */
+    private static void addKeys(String normalized, Set<String> keys) {
+        int start = 0;
+
+        for(int i = 0; i < MAX_WORD_STARTS && start < normalized.length(); i++) {
+            var key = normalized.substring(start);
+            keys.add(key.length() > MAX_KEY_CHARS ? key.substring(0, MAX_KEY_CHARS) : key);
+
+            int space = normalized.indexOf(' ', start);
+            if(space < 0)
+                break;
+
+            start = space + 1;
+        }
+    }
+
+    /**
+     * Builds the tree bottom up: the leaves are on the second half, and each node keeps the best of its two children.
+     * Node 0 is not used
+     */
+    private static int[] buildTree(List<Entry> entries) {
+        int count = entries.size();
+        var tree = new int[2 * count];
+
+        for(int i = 0; i < count; i++)
+            tree[count + i] = i;
+
+        for(int i = count - 1; i > 0; i--) {
+            int left = tree[2 * i];
+            int right = tree[2 * i + 1];
+
+            tree[i] = entries.get(right).weight() > entries.get(left).weight() ? right : left;
+        }
+
+        return tree;
+    }
+
+    private record Title(int tconst, String titleType, String primaryTitle, String originalTitle, int startYear, float weight) {
+        private byte[] toBytes() {
+            var type = titleType.getBytes(StandardCharsets.UTF_8);
+            var name = primaryTitle.getBytes(StandardCharsets.UTF_8);
+            var result = ByteBuffer.allocate(3 * Integer.BYTES + 1 + type.length + name.length);
+
+            return result.putInt(tconst).putInt(startYear).putFloat(weight)
+                    .put((byte) type.length).put(type)
+                    .put(name)
+                    .array();
+        }
+    }
+
+    private record Entry(byte[] key, int title, float weight) {}
+}
@@ -0,0 +1,264 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Completion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Completes titles from a typeahead file written by TypeaheadBuilder. The file is memory mapped, so only the pages of the
+ * keys searched are read, and nothing of it is kept on the heap. The keys starting with a prefix are a range of the sorted keys,
+ * found with two binary searches, and its best titles are taken from the segment tree, so each completion costs about
+ * log(keys) reads no matter how many titles share the prefix. Safe to use from several threads at once
+ */
+public class TypeaheadIndex {
+    private static final String ID_PREFIX = "tt";
+    //Keys read for every title returned at most, as a title can be stored under several keys of the same prefix
+    private static final int MAX_KEYS_PER_COMPLETION = 8;
+    private final String index;
+    private final int entries;
+    private final IntBuffer keyOffsets;
+    private final ByteBuffer keys;
+    private final IntBuffer entryTitles;
+    private final FloatBuffer weights;
+    private final IntBuffer tree;
+    private final IntBuffer titleOffsets;
+    private final ByteBuffer titles;
+
+    private TypeaheadIndex(FileChannel channel) throws IOException {
+        var header = ByteBuffer.allocate((int) Math.min(channel.size(), 1 << 16));
+        while(header.hasRemaining() && channel.read(header, header.position()) > 0);
+        header.flip();
+
+        if(header.remaining() < 2 * Integer.BYTES || header.getInt() != TypeaheadBuilder.MAGIC)
+            throw new IOException("The file is not a typeahead");
+        if(header.getInt() != TypeaheadBuilder.VERSION)
+            throw new IOException("The typeahead is of an unsupported version");
+
+        var name = new byte[header.getShort() & 0xFFFF];
+        header.get(name);
+        this.index = new String(name, StandardCharsets.UTF_8);
+        this.entries = header.getInt();
+        int titleCount = header.getInt();
+        long keyBytes = header.getLong();
+        long titleBytes = header.getLong();
+
+        long position = header.position();
+        this.keyOffsets = map(channel, position, (entries + 1L) * Integer.BYTES).asIntBuffer();
+        position += (entries + 1L) * Integer.BYTES;
+        this.keys = map(channel, position, keyBytes);
+        position += keyBytes;
+        this.entryTitles = map(channel, position, (long) entries * Integer.BYTES).asIntBuffer();
+        position += (long) entries * Integer.BYTES;
+        this.weights = map(channel, position, (long) entries * Float.BYTES).asFloatBuffer();
+        position += (long) entries * Float.BYTES;
+        this.tree = map(channel, position, 2L * entries * Integer.BYTES).asIntBuffer();
+        position += 2L * entries * Integer.BYTES;
+        this.titleOffsets = map(channel, position, (titleCount + 1L) * Integer.BYTES).asIntBuffer();
+        position += (titleCount + 1L) * Integer.BYTES;
+        this.titles = map(channel, position, titleBytes);
+    }
+
+    /**
+     * Maps a typeahead file. The mappings stay valid once the file is closed, so it is not kept open
+     */
+    public static TypeaheadIndex open(Path path) throws IOException {
+        try(var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new TypeaheadIndex(channel);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if(position + size > channel.size())
+            throw new IOException("The typeahead is truncated");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * Returns the index the titles of the file were loaded on
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the titles with a key starting by the text given, the highest weights first
+     * @param size maximum number of titles returned
+     */
+    public List<Completion> complete(String text, int size) {
+        var prefix = normalize(text);
+
+        if(prefix.length() > TypeaheadBuilder.MAX_KEY_CHARS)
+            prefix = prefix.substring(0, TypeaheadBuilder.MAX_KEY_CHARS);
+
+        if(prefix.isEmpty() || entries == 0)
+            return List.of();
+
+        var bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int from = search(bytes, false);
+        int to = search(bytes, true);
+
+        PriorityQueue<Range> ranges = new PriorityQueue<>(Comparator.comparingDouble(Range::weight).reversed());
+        addRange(ranges, from, to);
+
+        Set<Integer> seen = new HashSet<>();
+        List<Completion> result = new ArrayList<>(size);
+
+        for(int read = 0; !ranges.isEmpty() && result.size() < size && read < size * MAX_KEYS_PER_COMPLETION; read++) {
+            var range = ranges.poll();
+            int title = entryTitles.get(range.best());
+
+            if(seen.add(title))
+                result.add(completion(title));
+
+            addRange(ranges, range.from(), range.best());
+            addRange(ranges, range.best() + 1, range.to());
+        }
+
+        return result;
+    }
+
+    private void addRange(PriorityQueue<Range> ranges, int from, int to) {
+        if(from >= to)
+            return;
+
+        int best = best(from, to);
+        ranges.add(new Range(from, to, best, weights.get(best)));
+    }
+
+    /**
+     * Returns the key of highest weight between the positions given, the first one if several have it
+     * @param to exclusive
+     */
+    private int best(int from, int to) {
+        int result = -1;
+
+        for(int left = from + entries, right = to + entries; left < right; left >>= 1, right >>= 1) {
+            if((left & 1) == 1)
+                result = better(result, tree.get(left++));
+            if((right & 1) == 1)
+                result = better(result, tree.get(--right));
+        }
+
+        return result;
+    }
+
+    private int better(int current, int candidate) {
+        if(current < 0)
+            return candidate;
+
+        float difference = weights.get(candidate) - weights.get(current);
+
+        return difference > 0 || (difference == 0 && candidate < current) ? candidate : current;
+    }
+
+    /**
+     * Binary search over the sorted keys
+     * @param after if false, returns the first key starting by the prefix or after it. If true, the first key after every key starting by it
+     */
+    private int search(byte[] prefix, boolean after) {
+        int low = 0;
+        int high = entries;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, prefix);
+
+            if(comparison < 0 || (after && comparison == 0))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares the start of a key with a prefix
+     * @return 0 if the key starts by the prefix, negative if it is sorted before it and positive if after
+     */
+    private int compare(int entry, byte[] prefix) {
+        int start = keyOffsets.get(entry);
+        int length = keyOffsets.get(entry + 1) - start;
+
+        for(int i = 0; i < prefix.length; i++) {
+            if(i == length)
+                return -1;
+
+            int difference = Byte.toUnsignedInt(keys.get(start + i)) - Byte.toUnsignedInt(prefix[i]);
+            if(difference != 0)
+                return difference;
+        }
+
+        return 0;
+    }
+
+    private Completion completion(int title) {
+        int start = titleOffsets.get(title);
+        int end = titleOffsets.get(title + 1);
+
+        int tconst = titles.getInt(start);
+        int startYear = titles.getInt(start + Integer.BYTES);
+        float weight = titles.getFloat(start + 2 * Integer.BYTES);
+        int typeStart = start + 3 * Integer.BYTES + 1;
+        int typeLength = Byte.toUnsignedInt(titles.get(typeStart - 1));
+
+        return new Completion(ID_PREFIX + String.format("%07d", tconst), decode(typeStart + typeLength, end),
+                decode(typeStart, typeStart + typeLength), startYear, weight);
+    }
+
+    private String decode(int start, int end) {
+        var bytes = new byte[end - start];
+        titles.get(start, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lowercases a text, removes its accents and leaves its words separated by single spaces, dropping every other character.
+     * Keys and prefixes are normalized the same way, so "Amélie" is completed by "ame"
+     */
+    public static String normalize(String text) {
+        var decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        var result = new StringBuilder(decomposed.length());
+        boolean separated = false;
+
+        for(int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+
+            if(Character.getType(c) == Character.NON_SPACING_MARK)
+                continue;
+
+            if(!Character.isLetterOrDigit(c)) {
+                separated = true;
+                continue;
+            }
+
+            if(separated && result.length() > 0)
+                result.append(' ');
+
+            result.append(Character.toLowerCase(c));
+            separated = false;
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Keys between two positions, with the one of highest weight among them
+     */
+    private record Range(int from, int to, int best, float weight) {}
+}
@@ -0,0 +1,280 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.json.JsonData;
+import jakarta.json.Json;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads are done on a new index named like the alias plus a version, like films_v3.
+ * The alias the searches read from is only moved to the new index once it is complete, so they never see a partial index.
+ * While loading, the index has no replicas and is not refreshed, and both are restored before publishing it
+ */
+public class VersionedIndex {
+    private static final String VERSION_SEPARATOR = "_v";
+    //Refresh interval of the index once it is published, the default of Elasticsearch
+    private static final String LIVE_REFRESH_INTERVAL = "1s";
+    //Time between checks of the force merge task
+    private static final long MERGE_POLL_MILLIS = 5000;
+    //Time between the checks of the index of an alias, in case it was moved by hand
+    private static final long PUBLISHED_REFRESH_SECONDS = 30;
+    private static final Logger logger = LoggerFactory.getLogger(VersionedIndex.class);
+    //Index each alias watched points to, missing if it points to none
+    private static final Map<String, String> published = new ConcurrentHashMap<>();
+    private static final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "published-index-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //Replicas of an index published when the alias had none to copy them from. Set from the index.replicas property
+    private static volatile int firstReplicas = 0;
+
+    private VersionedIndex() {}
+
+    //The clients are looked up on each use, as this class can be loaded before the Spring context creates the connection
+    private static ElasticsearchClient client() {
+        return ElasticUtils.getClient();
+    }
+
+    private static RestClient restClient() {
+        return ElasticUtils.getRestClient();
+    }
+
+    /**
+     * Sets the replicas of the first index published on an alias. The next ones keep the replicas of the index they replace
+     */
+    public static void setFirstReplicas(int replicas) {
+        firstReplicas = replicas;
+    }
+
+    /**
+     * Creates the next version of the alias, ready for bulk loading
+     * @param alias name the searches use
+     * @param settingsResource file with the analysis settings
+     * @param mappingResource file with the mapping
+     * @return name of the new index
+     */
+    public static String create(String alias, String settingsResource, String mappingResource) throws IOException, ElasticsearchException {
+        var index = alias + VERSION_SEPARATOR + (lastVersion(alias) + 1);
+
+        client().indices().create(_0 -> _0
+                .index(index)
+                .settings(_1 -> _1
+                        .numberOfReplicas("0")
+                        .refreshInterval(_2 -> _2.time("-1"))
+                )
+        );
+
+        //Analysis settings can only be changed on closed indices
+        client().indices().close(_0 -> _0.index(index));
+        var settings = VersionedIndex.class.getClassLoader().getResourceAsStream(settingsResource);
+        client().indices().putSettings(_0 -> _0.index(index).withJson(settings));
+        client().indices().open(_0 -> _0.index(index));
+
+        var mapping = VersionedIndex.class.getClassLoader().getResourceAsStream(mappingResource);
+        client().indices().putMapping(_0 -> _0.index(index).withJson(mapping));
+
+        logger.info("Created index {}", index);
+
+        return index;
+    }
+
+    /**
+     * Prepares a loaded index for searching and moves the alias to it in a single atomic operation.
+     * It gets the replicas of the index the alias pointed to, or the ones of setFirstReplicas if there is none.
+     * The indices the alias pointed to are removed afterwards. Other versions are kept, they can belong to a load still running
+     * or to a failed one waiting to be resumed
+     */
+    public static void publish(String alias, String index) throws IOException, InterruptedException, ElasticsearchException {
+        forceMerge(index);
+
+        List<String> previous = new ArrayList<>();
+        if(client().indices().exists(_0 -> _0.index(alias)).value())
+            previous.addAll(client().indices().get(_0 -> _0.index(alias)).result().keySet());
+
+        var replicas = previous.isEmpty() ? String.valueOf(firstReplicas) : getReplicas(previous.get(0));
+
+        client().indices().putSettings(_0 -> _0
+                .index(index)
+                .settings(_1 -> _1
+                        .numberOfReplicas(replicas)
+                        .refreshInterval(_2 -> _2.time(LIVE_REFRESH_INTERVAL))
+                )
+        );
+        client().indices().refresh(_0 -> _0.index(index));
+
+        warmUp(index);
+
+        List<Action> actions = new ArrayList<>();
+
+        for(String old : previous) {
+            if(old.equals(alias))
+                //Index of the loads done before the alias existed. It has to be removed for the alias to take its name
+                actions.add(Action.of(_0 -> _0.removeIndex(_1 -> _1.index(old))));
+            else
+                actions.add(Action.of(_0 -> _0.remove(_1 -> _1.index(old).alias(alias))));
+        }
+
+        actions.add(Action.of(_0 -> _0.add(_1 -> _1.index(index).alias(alias))));
+
+        client().indices().updateAliases(_0 -> _0.actions(actions));
+        published.put(alias, index);
+        logger.info("Alias {} moved to {}", alias, index);
+
+        //The index named like the alias was already removed by the update
+        for(String old : previous)
+            if(!old.equals(alias) && !old.equals(index))
+                discard(old);
+    }
+
+    /**
+     * Returns the index the alias points to, the one the searches read from, without calling Elasticsearch.
+     * It is checked in the background every PUBLISHED_REFRESH_SECONDS, and updated at once when this class publishes an index
+     * @return the alias itself for the index of the loads done before the alias existed, null if there is neither or it is not known yet
+     */
+    public static String getPublished(String alias) {
+        watch(alias);
+
+        return published.get(alias);
+    }
+
+    /**
+     * Starts checking the index the alias points to in the background, if it was not checked already
+     */
+    public static void watch(String alias) {
+        if(watched.add(alias))
+            refresher.scheduleWithFixedDelay(() -> refreshPublished(alias), 0, PUBLISHED_REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks again the indices of every alias watched, without waiting for it. Called when indices are removed by hand
+     */
+    public static void forgetPublished() {
+        for(String alias : watched)
+            refresher.execute(() -> refreshPublished(alias));
+    }
+
+    /**
+     * Asks Elasticsearch for the index the alias points to. For the loads, which cannot trust a value checked a while ago
+     * @return the alias itself for the index of the loads done before the alias existed, null if there is neither
+     */
+    public static String findPublished(String alias) throws IOException {
+        if(!client().indices().exists(_0 -> _0.index(alias)).value())
+            return null;
+
+        return client().indices().get(_0 -> _0.index(alias)).result().keySet().stream().findFirst().orElse(null);
+    }
+
+    private static void refreshPublished(String alias) {
+        try {
+            String index = findPublished(alias);
+            if(index == null)
+                published.remove(alias);
+            else
+                published.put(alias, index);
+
+        //Any failure is caught, as it would stop the next checks. The last index known is kept until one succeeds
+        } catch(IOException | RuntimeException e) {
+            logger.warn("Could not check the index of {}, the last one known is used", alias, e);
+        }
+    }
+
+    /**
+     * Removes an index that is not going to be published
+     */
+    public static void discard(String index) {
+        try {
+            client().indices().delete(_0 -> _0.index(index));
+        } catch(IOException | ElasticsearchException e) {
+            logger.warn("Could not remove the index {}", index, e);
+        }
+    }
+
+    /**
+     * Returns the number of replicas of an index, or the ones of setFirstReplicas if it can not be read
+     */
+    private static String getReplicas(String index) throws IOException, ElasticsearchException {
+        var state = client().indices().getSettings(_0 -> _0.index(index)).get(index);
+        var settings = state == null ? null : state.settings();
+
+        if(settings != null && settings.index() != null)
+            settings = settings.index();
+
+        return settings == null || settings.numberOfReplicas() == null ? String.valueOf(firstReplicas) : settings.numberOfReplicas();
+    }
+
+    /**
+     * Returns the highest version of the alias stored, or 0 if there is none
+     */
+    private static int lastVersion(String alias) throws IOException, ElasticsearchException {
+        var prefix = alias + VERSION_SEPARATOR;
+        int result = 0;
+
+        for(String index : client().indices().get(_0 -> _0.index(prefix + "*")).result().keySet()) {
+            try {
+                result = Math.max(result, Integer.parseInt(index.substring(prefix.length())));
+            } catch(NumberFormatException e) {
+                //Not one of the versions
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Merges the index into a single segment. It is run as a task and polled,
+     * since merging a whole load takes longer than the timeout of a request
+     */
+    private static void forceMerge(String index) throws IOException, InterruptedException {
+        var request = new Request("POST", "/" + index + "/_forcemerge");
+        request.addParameter("max_num_segments", "1");
+        request.addParameter("wait_for_completion", "false");
+
+        String task;
+        try(var reader = Json.createReader(restClient().performRequest(request).getEntity().getContent())) {
+            task = reader.readObject().getString("task");
+        }
+
+        boolean completed = false;
+        while(!completed) {
+            Thread.sleep(MERGE_POLL_MILLIS);
+
+            try(var reader = Json.createReader(restClient().performRequest(new Request("GET", "/_tasks/" + task)).getEntity().getContent())) {
+                completed = reader.readObject().getBoolean("completed");
+            }
+        }
+
+        logger.info("Force merged {}", index);
+    }
+
+    /**
+     * Runs the sorts and aggregations of the searches once, so their data structures are loaded before the first user search
+     */
+    private static void warmUp(String index) throws IOException, ElasticsearchException {
+        client().search(_0 -> _0
+                .index(index)
+                .size(10)
+                .sort(_1 -> _1.field(_2 -> _2.field("numVotes").order(SortOrder.Desc)))
+                .sort(_1 -> _1.field(_2 -> _2.field("averageRating").order(SortOrder.Desc)))
+                .aggregations("genres", _1 -> _1.terms(_2 -> _2.field("genres").size(1000)))
+                .aggregations("titleType", _1 -> _1.terms(_2 -> _2.field("titleType").size(1000))),
+                JsonData.class);
+    }
+}
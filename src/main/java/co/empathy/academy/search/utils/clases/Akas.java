@@ -1,33 +1,29 @@
 package co.empathy.academy.search.utils.clases;
 
-import co.empathy.academy.search.utils.StringToBoolConverter;
-import jakarta.json.Json;
-import jakarta.json.JsonObjectBuilder;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
 
 import java.util.List;
 
 public class Akas {
-    private static final int TITLE = 2;
-    private static final int REGION = 3;
-    private static final int LANGUAGE = 4;
-    private static final int IS_ORIGINAL_TITLE = 7;
+    public static final int TITLE = 2;
+    public static final int REGION = 3;
+    public static final int LANGUAGE = 4;
+    public static final int IS_ORIGINAL_TITLE = 7;
     private Akas(){}
 
-    public static void addAkas(List<String> lines, JsonObjectBuilder builder, List<String> headers) {
-        var arrayBuilder = Json.createArrayBuilder();
+    public static void addAkas(TsvCursor cursor, DocumentWriter writer, List<String> headers) {
+        writer.startArray("akas");
 
-        for(String line : lines) {
-            var fields = line.split("\t");
-            var lineJson = Json.createObjectBuilder()
-                    .add(headers.get(TITLE), fields[TITLE])
-                    .add(headers.get(REGION), fields[REGION])
-                    .add(headers.get(LANGUAGE), fields[LANGUAGE])
-                    .add(headers.get(IS_ORIGINAL_TITLE), StringToBoolConverter.getBool(fields[IS_ORIGINAL_TITLE]))
-                    .build();
-
-            arrayBuilder.add(lineJson);
+        while(cursor.nextLine()) {
+            writer.startObject();
+            cursor.skip(TITLE).writeString(writer.name(headers.get(TITLE)));
+            cursor.writeString(writer.name(headers.get(REGION)));
+            cursor.writeString(writer.name(headers.get(LANGUAGE)));
+            writer.field(headers.get(IS_ORIGINAL_TITLE), cursor.skip(IS_ORIGINAL_TITLE - LANGUAGE - 1).boolValue())
+                    .endObject();
         }
 
-        builder.add("akas", arrayBuilder.build());
+        writer.endArray();
     }
 }
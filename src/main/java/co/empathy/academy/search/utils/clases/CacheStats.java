@@ -0,0 +1,19 @@
+package co.empathy.academy.search.utils.clases;
+
+/**
+ * Figures of the query cache, as returned by the cache endpoint
+ * @param bytes approximate memory used by the responses and keys stored
+ * @param hitRatio fraction of the lookups answered from the cache, from 0 to 1
+ * @param generation times the cache has been invalidated by a load
+ */
+public record CacheStats(
+        long entries,
+        long bytes,
+        long maxBytes,
+        long hits,
+        long misses,
+        double hitRatio,
+        long evictions,
+        long expirations,
+        long generation) {
+}
@@ -0,0 +1,9 @@
+package co.empathy.academy.search.utils.clases;
+
+/**
+ * Title suggested by the autocomplete
+ * @param startYear 0 if the title has none
+ * @param score weight of the title from its votes and rating, the higher the sooner it is suggested
+ */
+public record Completion(String id, String title, String titleType, int startYear, float score) {
+}
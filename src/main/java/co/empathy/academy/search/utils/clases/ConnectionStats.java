@@ -0,0 +1,26 @@
+package co.empathy.academy.search.utils.clases;
+
+import java.util.List;
+
+/**
+ * State of the pool of connections to Elasticsearch, as returned by the connections endpoint
+ * @param leased connections being used by a request
+ * @param pending requests waiting for a connection
+ * @param available idle connections kept open
+ * @param leases connections given to the requests since the start
+ * @param leaseWaitP50Millis time waited for a connection, including opening it when there are none idle
+ * @param hosts nodes the requests are currently sent to
+ */
+public record ConnectionStats(
+        int maxConnections,
+        int maxConnectionsPerNode,
+        int leased,
+        int pending,
+        int available,
+        long leases,
+        long leaseWaitP50Millis,
+        long leaseWaitP95Millis,
+        long leaseWaitP99Millis,
+        List<String> hosts,
+        List<NodeStats> nodes) {
+}
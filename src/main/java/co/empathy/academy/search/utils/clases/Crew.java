@@ -1,25 +1,21 @@
 package co.empathy.academy.search.utils.clases;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObjectBuilder;
+import co.empathy.academy.search.utils.NameLookup;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class Crew {
-    private static final int DIRECTORS = 1;
+    public static final int DIRECTORS = 1;
     private Crew() {}
 
-    public static void addCrews(String line, JsonObjectBuilder builder, List<String> headers, Map<String, String[]> nameBasics, List<String> nameHeaders) {
-        var directorsArray = Json.createArrayBuilder();
+    public static void addCrews(TsvCursor cursor, DocumentWriter writer, List<String> headers, NameLookup nameBasics) {
+        writer.startArray(headers.get(DIRECTORS));
 
-        var fields = line.split("\t");
+        if(cursor.nextLine())
+            cursor.skip(DIRECTORS).strings(',', x -> Name.addName(x, writer.startObject(), nameBasics).endObject());
 
-        String[] directorIds = fields[DIRECTORS].split(",");
-
-        Arrays.stream(directorIds).map(x -> Name.addName(x, nameBasics, nameHeaders)).forEach(directorsArray::add);
-
-        builder.add(headers.get(DIRECTORS), directorsArray);
+        writer.endArray();
     }
 }
@@ -0,0 +1,26 @@
+package co.empathy.academy.search.utils.clases;
+
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
+
+import java.util.List;
+
+public class Episode {
+    public static final int PARENT_TCONST = 1;
+    public static final int SEASON_NUMBER = 2;
+    public static final int EPISODE_NUMBER = 3;
+
+    private Episode(){}
+
+    /**
+     * Adds the series, season and number of the episode line the cursor points to, if the title is an episode
+     */
+    public static void addEpisode(TsvCursor cursor, DocumentWriter writer, List<String> headers) {
+        if(!cursor.nextLine())
+            return;
+
+        cursor.skip(PARENT_TCONST).writeString(writer.name(headers.get(PARENT_TCONST)));
+        writer.field(headers.get(SEASON_NUMBER), cursor.intValue())
+                .field(headers.get(EPISODE_NUMBER), cursor.intValue());
+    }
+}
@@ -1,40 +1,44 @@
 package co.empathy.academy.search.utils.clases;
 
-import co.empathy.academy.search.utils.StringToBoolConverter;
-import co.empathy.academy.search.utils.StringToIntConverter;
-import jakarta.json.Json;
-import jakarta.json.JsonObjectBuilder;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
 
-import java.util.Arrays;
 import java.util.List;
 
 public class Film {
-    private static final int TCONST = 0;
-    private static final int TITLE_TYPE = 1;
-    private static final int PRIMARY_TITLE = 2;
-    private static final int ORIGINAL_TITLE = 3;
-    private static final int IS_ADULT = 4;
-    private static final int START_YEAR = 5;
-    private static final int END_YEAR = 6;
-    private static final int RUNTIME_MINUTES = 7;
-    private static final int GENRES = 8;
+    public static final int TCONST = 0;
+    public static final int TITLE_TYPE = 1;
+    public static final int PRIMARY_TITLE = 2;
+    public static final int ORIGINAL_TITLE = 3;
+    public static final int IS_ADULT = 4;
+    public static final int START_YEAR = 5;
+    public static final int END_YEAR = 6;
+    public static final int RUNTIME_MINUTES = 7;
+    public static final int GENRES = 8;
     private Film(){}
 
-    public static void addFilm(String line, JsonObjectBuilder builder, List<String> headers) {
-        String[] fields = line.split("\t");
+    /**
+     * Adds the fields of the film line the cursor points to
+     * @return tconst of the film
+     */
+    public static String addFilm(TsvCursor cursor, DocumentWriter writer, List<String> headers) {
+        cursor.nextLine();
 
-        var arrayBuilder = Json.createArrayBuilder();
+        String tconst = cursor.string();
 
-        Arrays.stream(fields[GENRES].split(",")).forEach(arrayBuilder::add);
+        writer.field(headers.get(TCONST), tconst);
+        cursor.writeString(writer.name(headers.get(TITLE_TYPE)));
+        cursor.writeString(writer.name(headers.get(PRIMARY_TITLE)));
+        cursor.writeString(writer.name(headers.get(ORIGINAL_TITLE)));
+        writer.field(headers.get(IS_ADULT), cursor.boolValue())
+                .field(headers.get(START_YEAR), cursor.intValue())
+                .field(headers.get(END_YEAR), cursor.intValue())
+                .field(headers.get(RUNTIME_MINUTES), cursor.intValue());
 
-        builder.add(headers.get(TCONST), fields[TCONST])
-                .add(headers.get(TITLE_TYPE), fields[TITLE_TYPE])
-                .add(headers.get(PRIMARY_TITLE), fields[PRIMARY_TITLE])
-                .add(headers.get(ORIGINAL_TITLE), fields[ORIGINAL_TITLE])
-                .add(headers.get(IS_ADULT), StringToBoolConverter.getBool(fields[IS_ADULT]))
-                .add(headers.get(START_YEAR), StringToIntConverter.getInt(fields[START_YEAR]))
-                .add(headers.get(END_YEAR), StringToIntConverter.getInt(fields[END_YEAR]))
-                .add(headers.get(RUNTIME_MINUTES), StringToIntConverter.getInt(fields[RUNTIME_MINUTES]))
-                .add(headers.get(GENRES), arrayBuilder.build());
+        //\N genres are written as an empty list, so every document has the field
+        cursor.writeStrings(',', writer.startArray(headers.get(GENRES)));
+        writer.endArray();
+
+        return tconst;
     }
 }
@@ -0,0 +1,30 @@
+package co.empathy.academy.search.utils.clases;
+
+/**
+ * Progress of an indexing job, as returned by the jobs endpoints
+ * @param state RUNNING, COMPLETED, FAILED or CANCELLED
+ * @param progress fraction of the input read, from 0 to 1
+ * @param etaSeconds estimated time until the input is read, null if it can not be estimated yet
+ * @param lastAcknowledged id of the last document with every previous one acknowledged, null if it is not tracked
+ */
+public record JobStatus(
+        String id,
+        String type,
+        String index,
+        String state,
+        String started,
+        double elapsedSeconds,
+        long documents,
+        double documentsPerSecond,
+        long bytes,
+        double bytesPerSecond,
+        double progress,
+        Long etaSeconds,
+        long bulkRequests,
+        long bulkLatencyP50Millis,
+        long bulkLatencyP95Millis,
+        long bulkLatencyP99Millis,
+        long deadLetters,
+        String lastAcknowledged,
+        String error) {
+}
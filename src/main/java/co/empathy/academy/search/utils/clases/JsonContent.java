@@ -1,6 +1,36 @@
 package co.empathy.academy.search.utils.clases;
 
-import jakarta.json.JsonObject;
+import java.nio.charset.StandardCharsets;
 
-public record JsonContent(String id, JsonObject json) {
+/**
+ * Document to be sent to Elasticsearch, as the bytes of its JSON source.
+ * The documents of a batch share a single array, each one on its own slice.
+ * A deletion has no source, and the source of an update is the body of the partial update.
+ * An update without fingerprint clears the fields a previous update wrote
+ */
+public record JsonContent(String id, Operation operation, byte[] source, int offset, int length, long fingerprint) {
+    public enum Operation { INDEX, UPDATE, DELETE }
+
+    public static JsonContent deletion(String id) {
+        return new JsonContent(id, Operation.DELETE, null, 0, 0, 0);
+    }
+
+    public static JsonContent update(String id, byte[] source, int offset, int length) {
+        return new JsonContent(id, Operation.UPDATE, source, offset, length, 0);
+    }
+
+    public static JsonContent update(String id, byte[] source, int offset, int length, long fingerprint) {
+        return new JsonContent(id, Operation.UPDATE, source, offset, length, fingerprint);
+    }
+
+    public boolean isDeletion() {
+        return operation == Operation.DELETE;
+    }
+
+    /**
+     * Decodes the source. Only meant for the rare cases that need it as text
+     */
+    public String json() {
+        return source == null ? null : new String(source, offset, length, StandardCharsets.UTF_8);
+    }
 }
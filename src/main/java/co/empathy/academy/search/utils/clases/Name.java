@@ -1,37 +1,60 @@
 package co.empathy.academy.search.utils.clases;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
+import co.empathy.academy.search.utils.NameLookup;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
 
 import java.util.List;
-import java.util.Map;
 
 public class Name {
-    private static final int NCONST = 0;
-    private static final int PRIMARY_NAME = 1;
-    private static final int KNOWN_FOR_TITLES = 5;
+    public static final int NCONST = 0;
+    public static final int PRIMARY_NAME = 1;
+    private static final int BIRTH_YEAR = 2;
+    private static final int DEATH_YEAR = 3;
+    private static final int PRIMARY_PROFESSION = 4;
+    public static final int KNOWN_FOR_TITLES = 5;
     private Name(){}
 
-    public static JsonObject addName(String id, Map<String, String[]> nameBasics, List<String> nameHeaders) {
-        return Json.createObjectBuilder()
-                .add("nconst", id)
-                .build();
+    /**
+     * Adds the fields of the person with the id given to the object being written
+     * @return the writer
+     */
+    public static DocumentWriter addName(String id, DocumentWriter writer, NameLookup nameBasics) {
+        var cursor = nameBasics.find(id);
 
-        //Names dont fit in the heap
-        //TODO change names to index them separately
-        /*var fields = nameBasics.get(id);
+        if(cursor == null)
+            return writer.field("nconst", id);
 
-        var knownTitlesArray = Json.createArrayBuilder();
+        List<String> nameHeaders = nameBasics.getHeaders();
 
-        var knownTitles = fields[KNOWN_FOR_TITLES].split(",");
-        Arrays.stream(knownTitles).forEach(knownTitlesArray::add);
+        writer.field(nameHeaders.get(NCONST), id);
+        cursor.skip(PRIMARY_NAME).writeString(writer.name(nameHeaders.get(PRIMARY_NAME)));
 
+        cursor.skip(KNOWN_FOR_TITLES - PRIMARY_NAME - 1).writeStrings(',', writer.startArray(nameHeaders.get(KNOWN_FOR_TITLES)));
 
-        var result = Json.createObjectBuilder()
-                .add(nameHeaders.get(NCONST), fields[NCONST])
-                .add(nameHeaders.get(PRIMARY_NAME), fields[PRIMARY_NAME])
-                .add(nameHeaders.get(KNOWN_FOR_TITLES), knownTitlesArray);
+        return writer.endArray();
+    }
+
+    /**
+     * Adds every field of the name line the cursor points to, for the names index
+     * @return nconst of the person
+     */
+    public static String addPerson(TsvCursor cursor, DocumentWriter writer, List<String> headers) {
+        cursor.nextLine();
+
+        String nconst = cursor.string();
+
+        writer.field(headers.get(NCONST), nconst);
+        cursor.writeString(writer.name(headers.get(PRIMARY_NAME)));
+        writer.field(headers.get(BIRTH_YEAR), cursor.intValue())
+                .field(headers.get(DEATH_YEAR), cursor.intValue());
+
+        cursor.writeStrings(',', writer.startArray(headers.get(PRIMARY_PROFESSION)));
+        writer.endArray();
+
+        cursor.writeStrings(',', writer.startArray(headers.get(KNOWN_FOR_TITLES)));
+        writer.endArray();
 
-        return result.build();*/
+        return nconst;
     }
 }
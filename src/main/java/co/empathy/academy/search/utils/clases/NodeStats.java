@@ -0,0 +1,14 @@
+package co.empathy.academy.search.utils.clases;
+
+/**
+ * Latency of the responses of an Elasticsearch node, measured from getting its connection, so the wait for a connection is not included
+ * @param failures requests the node did not answer or answered with a server error
+ */
+public record NodeStats(
+        String host,
+        long responses,
+        long failures,
+        long latencyP50Millis,
+        long latencyP95Millis,
+        long latencyP99Millis) {
+}
@@ -1,29 +1,28 @@
 package co.empathy.academy.search.utils.clases;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObjectBuilder;
+import co.empathy.academy.search.utils.NameLookup;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
 
 import java.util.List;
-import java.util.Map;
 
 public class Principals {
-    private static final int NCONST = 2;
-    private static final int CHARACTERS = 5;
+    public static final int NCONST = 2;
+    public static final int CHARACTERS = 5;
 
     private Principals() {}
 
 
-    public static void addPrincipals(List<String> principalsLines, JsonObjectBuilder builder, List<String> akasHeaders, Map<String, String[]> nameBasics, List<String> nameHeaders) {
-        var principalsArray = Json.createArrayBuilder();
-        for(String principalLine : principalsLines) {
-            var fields = principalLine.split("\t");
+    public static void addPrincipals(TsvCursor cursor, DocumentWriter writer, List<String> principalHeaders, NameLookup nameBasics) {
+        writer.startArray("principals");
 
-            principalsArray.add(Json.createObjectBuilder()
-                    .add("name", Name.addName(fields[NCONST], nameBasics, nameHeaders))
-                    .add(akasHeaders.get(CHARACTERS), fields[CHARACTERS])
-            );
+        while(cursor.nextLine()) {
+            writer.startObject();
+            Name.addName(cursor.skip(NCONST).string(), writer.startObject("name"), nameBasics).endObject();
+            cursor.skip(CHARACTERS - NCONST - 1).writeString(writer.name(principalHeaders.get(CHARACTERS)));
+            writer.endObject();
         }
 
-        builder.add("principals", principalsArray);
+        writer.endArray();
     }
 }
@@ -1,21 +1,31 @@
 package co.empathy.academy.search.utils.clases;
 
-import co.empathy.academy.search.utils.StringToDoubleConverter;
-import co.empathy.academy.search.utils.StringToIntConverter;
-import jakarta.json.JsonObjectBuilder;
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.Popularity;
+import co.empathy.academy.search.utils.TsvCursor;
 
 import java.util.List;
 
 public class Rating {
-    private static final int AVERAGE_RATING = 1;
-    private static final int NUM_VOTES = 2;
+    public static final int AVERAGE_RATING = 1;
+    public static final int NUM_VOTES = 2;
 
     private Rating(){}
 
-    public static void addRating(String line, JsonObjectBuilder builder, List<String> headers) {
-        String[] fields = line.split("\t");
+    /**
+     * Adds the rating of a title, and the popularity the searches rank it by, which titles without rating also get
+     */
+    public static void addRating(TsvCursor cursor, DocumentWriter writer, List<String> headers) {
+        if(!cursor.nextLine()) {
+            writer.field(Popularity.FIELD, Popularity.UNRATED);
+            return;
+        }
 
-        builder.add(headers.get(AVERAGE_RATING), StringToDoubleConverter.getDouble(fields[AVERAGE_RATING]))
-                .add(headers.get(NUM_VOTES), StringToIntConverter.getInt(fields[NUM_VOTES]));
+        double averageRating = cursor.skip(AVERAGE_RATING).doubleValue();
+        int numVotes = cursor.intValue();
+
+        writer.field(headers.get(AVERAGE_RATING), averageRating)
+                .field(headers.get(NUM_VOTES), numVotes)
+                .field(Popularity.FIELD, Popularity.score(averageRating, numVotes));
     }
 }
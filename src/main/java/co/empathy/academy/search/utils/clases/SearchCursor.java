@@ -0,0 +1,13 @@
+package co.empathy.academy.search.utils.clases;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+
+import java.util.List;
+
+/**
+ * Position of a cursor pagination
+ * @param pitId point in time the pages are read from, so they stay consistent while a load replaces the index
+ * @param searchAfter sort values of the last hit of the previous page
+ */
+public record SearchCursor(String pitId, List<FieldValue> searchAfter) {
+}
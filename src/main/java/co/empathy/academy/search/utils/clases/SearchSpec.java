@@ -0,0 +1,21 @@
+package co.empathy.academy.search.utils.clases;
+
+import java.util.List;
+
+/**
+ * One of the searches of a batch, with the same parameters as the search endpoint. Every field but q is optional
+ */
+public record SearchSpec(
+        String q,
+        List<String> type,
+        List<String> genre,
+        String agg,
+        String gte,
+        String from,
+        String size,
+        String directorId,
+        String preset,
+        List<String> fields,
+        List<String> exclude,
+        Boolean enrich) {
+}
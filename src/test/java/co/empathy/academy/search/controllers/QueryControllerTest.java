@@ -0,0 +1,88 @@
+package co.empathy.academy.search.controllers;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import co.empathy.academy.search.utils.CannedElasticsearch;
+import co.empathy.academy.search.utils.QueryCache;
+import co.empathy.academy.search.utils.clases.SearchSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the controller against a local server answering with canned responses of Elasticsearch
+ */
+class QueryControllerTest {
+    private static final String SHARDS = "\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+    private CannedElasticsearch elasticsearch;
+    private QueryController controller;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        QueryCache.invalidate();
+        elasticsearch = new CannedElasticsearch();
+        var client = new ElasticsearchAsyncClient(new RestClientTransport(elasticsearch.getClient(), new JacksonJsonpMapper()));
+        controller = new QueryController(client, elasticsearch.getClient());
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        elasticsearch.close();
+        QueryCache.invalidate();
+    }
+
+    private static SearchSpec search(String q) {
+        return new SearchSpec(q, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    private static String hit(String id, String title) {
+        return "{" + SHARDS + ",\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":["
+                + "{\"_index\":\"films_v1\",\"_type\":\"_doc\",\"_id\":\"" + id + "\",\"_score\":1.0,\"_source\":{\"primaryTitle\":\"" + title + "\"}}]},\"status\":200}";
+    }
+
+    @Test
+    void sendsOnlyTheSearchesNotCachedAndKeepsTheirPlaces() {
+        elasticsearch.respond(200, "{\"took\":1,\"responses\":[" + hit("tt0000001", "Alien") + "]}");
+
+        assertEquals("[{\"hits\":[{\"id\":\"tt0000001\",\"source\":{\"primaryTitle\":\"Alien\"}}]}]",
+                controller.batchSearch(List.of(search("alien"))).join());
+
+        elasticsearch.respond(200, "{\"took\":1,\"responses\":["
+                + "{\"error\":{\"root_cause\":[],\"type\":\"illegal_argument_exception\",\"reason\":\"wrong query\"},\"status\":400},"
+                + "{" + SHARDS + ",\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]},"
+                + "\"suggest\":{\"term#spellcheck\":[{\"text\":\"godfathr\",\"offset\":0,\"length\":8,\"options\":[{\"text\":\"godfather\",\"score\":0.875,\"freq\":12}]}],"
+                + "\"phrase#phrase-suggester\":[{\"text\":\"godfathr\",\"offset\":0,\"length\":8,\"options\":[]}]},\"status\":200}]}");
+
+        var result = controller.batchSearch(List.of(search("broken"), search("alien"), search("godfathr"))).join();
+
+        assertEquals("[{\"error\":\"wrong query\",\"status\":400},"
+                + "{\"hits\":[{\"id\":\"tt0000001\",\"source\":{\"primaryTitle\":\"Alien\"}}]},"
+                + "{\"hits\":[],\"aggs\":[],\"term-suggestions\":[{\"score\":0.875,\"freq\":12,\"text\":\"godfather\"}],\"phrase-suggestions\":[]}]", result);
+
+        //The cached search is not sent again, and the suggesters come with the searches themselves
+        var lines = elasticsearch.getBodies().get(1).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[1].contains("\"broken\""));
+        assertTrue(lines[3].contains("\"godfathr\"") && lines[3].contains("\"suggest\""));
+        assertEquals(2, elasticsearch.getPaths().size());
+    }
+
+    @Test
+    void answersFromTheCacheWithoutCallingElasticsearch() {
+        elasticsearch.respond(200, "{\"took\":1,\"responses\":[" + hit("tt0000001", "Alien") + "," + hit("tt0000002", "Aliens") + "]}");
+
+        var first = controller.batchSearch(List.of(search("alien"), search("aliens"))).join();
+        var second = controller.batchSearch(List.of(search("aliens"), search(" alien "))).join();
+
+        assertEquals("[{\"hits\":[{\"id\":\"tt0000002\",\"source\":{\"primaryTitle\":\"Aliens\"}}]},"
+                + "{\"hits\":[{\"id\":\"tt0000001\",\"source\":{\"primaryTitle\":\"Alien\"}}]}]", second);
+        assertNotEquals(first, second);
+        assertEquals(1, elasticsearch.getPaths().size());
+    }
+}
@@ -0,0 +1,131 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.empathy.academy.search.utils.clases.JsonContent;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends the bulk requests to a local server that answers them with canned responses of Elasticsearch
+ */
+class BulkSenderTest {
+    @TempDir
+    Path directory;
+    private CannedElasticsearch elasticsearch;
+    private RestClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        elasticsearch = new CannedElasticsearch();
+        client = elasticsearch.getClient();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        elasticsearch.close();
+    }
+
+    private static JsonContent document(String id, String json) {
+        var bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new JsonContent(id, JsonContent.Operation.INDEX, bytes, 0, bytes.length, 100 + FingerprintStore.key(id));
+    }
+
+    private static JsonContent update(String id, String json, long fingerprint) {
+        var bytes = json.getBytes(StandardCharsets.UTF_8);
+        return JsonContent.update(id, bytes, 0, bytes.length, fingerprint);
+    }
+
+    private static String item(String action, String id, int status, String error) {
+        return "{\"" + action + "\":{\"_index\":\"films_v1\",\"_id\":\"" + id + "\",\"status\":" + status
+                + (error == null ? "" : ",\"error\":{\"type\":\"" + error + "\",\"reason\":\"" + error + " of " + id + "\"}") + "}}";
+    }
+
+    private static String bulkResponse(String... items) {
+        return "{\"took\":3,\"errors\":true,\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    @Test
+    void retriesTheRejectedItemsAndDeadLettersTheFailedOnes() throws IOException, InterruptedException {
+        var fingerprints = FingerprintStore.create(directory.resolve("films.fingerprints").toString());
+        var updates = FingerprintStore.create(directory.resolve("films.rollups.fingerprints").toString());
+        var deadLetters = new DeadLetterWriter(directory, "films_v1");
+        var sender = new BulkSender(client, new JacksonJsonpMapper(), "films_v1", new BulkThrottle(2), deadLetters,
+                fingerprints, updates, new IndexingJob("1", "films", "films_v1"));
+
+        elasticsearch.respond(200, bulkResponse(
+                item("index", "tt0000001", 201, null),
+                item("index", "tt0000002", 429, "es_rejected_execution_exception"),
+                item("update", "tt0000003", 404, "document_missing_exception"),
+                item("index", "tt0000004", 400, "mapper_parsing_exception"),
+                item("delete", "tt0000005", 404, null)));
+        elasticsearch.respond(200, bulkResponse(item("index", "tt0000002", 201, null)));
+
+        long indexed = sender.send(List.of(
+                document("tt0000001", "{\"a\":1}"),
+                document("tt0000002", "{\"b\":2}"),
+                update("tt0000003", "{\"doc\":{\"c\":3}}", 33),
+                document("tt0000004", "{\"d\":\"x\"}"),
+                JsonContent.deletion("tt0000005")));
+        deadLetters.close();
+
+        assertEquals(4, indexed);
+        assertEquals(List.of(
+                "{\"index\":{\"_id\":\"tt0000001\"}}\n{\"a\":1}\n"
+                        + "{\"index\":{\"_id\":\"tt0000002\"}}\n{\"b\":2}\n"
+                        + "{\"update\":{\"_id\":\"tt0000003\"}}\n{\"doc\":{\"c\":3}}\n"
+                        + "{\"index\":{\"_id\":\"tt0000004\"}}\n{\"d\":\"x\"}\n"
+                        + "{\"delete\":{\"_id\":\"tt0000005\"}}\n",
+                "{\"index\":{\"_id\":\"tt0000002\"}}\n{\"b\":2}\n"), elasticsearch.getBodies());
+
+        //Only the acknowledged documents are recorded, each one on the store of its operation
+        assertFalse(fingerprints.hasChanged(1, 101));
+        assertFalse(fingerprints.hasChanged(2, 102));
+        assertTrue(fingerprints.hasChanged(4, 104));
+        assertFalse(updates.hasChanged(3, 33));
+
+        assertEquals(1, deadLetters.getWritten());
+        var lines = Files.readAllLines(deadLetters.getPath());
+        assertEquals(List.of("{\"id\":\"tt0000004\",\"error\":\"mapper_parsing_exception: mapper_parsing_exception of tt0000004\",\"document\":{\"d\":\"x\"}}"),
+                lines);
+
+        fingerprints.close();
+        updates.close();
+    }
+
+    @Test
+    void retriesTheWholeRequestWhenItIsRejected() throws IOException, InterruptedException {
+        var throttle = new BulkThrottle(2);
+        var sender = new BulkSender(client, new JacksonJsonpMapper(), "films_v1", throttle, new DeadLetterWriter(directory, "films_v1"),
+                null, null, new IndexingJob("1", "films", "films_v1"));
+
+        elasticsearch.respond(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"},\"status\":429}");
+        elasticsearch.respond(200, bulkResponse(item("index", "tt0000001", 201, null)));
+
+        assertEquals(1, sender.send(List.of(document("tt0000001", "{\"a\":1}"))));
+        assertEquals(2, elasticsearch.getBodies().size());
+        assertEquals(1, throttle.getConcurrency());
+    }
+
+    @Test
+    void failsOnErrorsOfTheWholeRequest() {
+        var sender = new BulkSender(client, new JacksonJsonpMapper(), "films_v1", new BulkThrottle(2), new DeadLetterWriter(directory, "films_v1"),
+                null, null, new IndexingJob("1", "films", "films_v1"));
+
+        elasticsearch.respond(400, "{\"error\":{\"type\":\"illegal_argument_exception\",\"reason\":\"wrong\"},\"status\":400}");
+
+        var e = assertThrows(ResponseException.class, () -> sender.send(List.of(document("tt0000001", "{\"a\":1}"))));
+        assertEquals(400, e.getResponse().getStatusLine().getStatusCode());
+    }
+}
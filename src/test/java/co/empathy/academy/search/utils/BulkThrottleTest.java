@@ -0,0 +1,111 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkThrottleTest {
+    private static final long MEGABYTE = 1L << 20;
+
+    @Test
+    void growsTheBudgetWhileRequestsAreFast() {
+        var throttle = new BulkThrottle(4);
+        assertEquals(8 * MEGABYTE, throttle.getByteBudget());
+
+        throttle.onResponse(100, 0);
+        assertEquals(8 * MEGABYTE * 11 / 10, throttle.getByteBudget());
+
+        for(int i = 0; i < 100; i++)
+            throttle.onResponse(100, 0);
+
+        assertEquals(32 * MEGABYTE, throttle.getByteBudget());
+    }
+
+    @Test
+    void shrinksTheBudgetWhenRequestsAreSlow() {
+        var throttle = new BulkThrottle(4);
+
+        throttle.onResponse(3000, 0);
+        assertEquals(8 * MEGABYTE * 4 / 5, throttle.getByteBudget());
+        assertEquals(4, throttle.getConcurrency());
+
+        for(int i = 0; i < 100; i++)
+            throttle.onResponse(3000, 0);
+
+        assertEquals(MEGABYTE, throttle.getByteBudget());
+    }
+
+    @Test
+    void keepsTheBudgetOnRequestsCloseToTheTarget() {
+        var throttle = new BulkThrottle(4);
+
+        throttle.onResponse(1500, 0);
+
+        assertEquals(8 * MEGABYTE, throttle.getByteBudget());
+        assertEquals(4, throttle.getConcurrency());
+    }
+
+    @Test
+    void halvesTheBudgetAndConcurrencyOnRejections() {
+        var throttle = new BulkThrottle(3);
+
+        throttle.onResponse(100, 2);
+        assertEquals(4 * MEGABYTE, throttle.getByteBudget());
+        assertEquals(2, throttle.getConcurrency());
+
+        for(int i = 0; i < 10; i++)
+            throttle.onRejection();
+
+        assertEquals(MEGABYTE, throttle.getByteBudget());
+        assertEquals(1, throttle.getConcurrency());
+    }
+
+    @Test
+    void growsTheConcurrencyAfterSeveralHealthyRequests() {
+        var throttle = new BulkThrottle(3);
+        throttle.onRejection();
+        throttle.onRejection();
+        assertEquals(1, throttle.getConcurrency());
+
+        for(int i = 0; i < 7; i++)
+            throttle.onResponse(100, 0);
+        assertEquals(1, throttle.getConcurrency());
+
+        throttle.onResponse(100, 0);
+        assertEquals(2, throttle.getConcurrency());
+
+        //A slow request starts the count again
+        for(int i = 0; i < 7; i++)
+            throttle.onResponse(100, 0);
+        throttle.onResponse(3000, 0);
+        throttle.onResponse(100, 0);
+        assertEquals(2, throttle.getConcurrency());
+
+        for(int i = 0; i < 100; i++)
+            throttle.onResponse(100, 0);
+        assertEquals(3, throttle.getConcurrency());
+    }
+
+    @Test
+    void waitsForAFreeRequestBeforeSending() throws InterruptedException {
+        var throttle = new BulkThrottle(2);
+        throttle.onRejection();
+
+        throttle.acquire();
+        var waiting = new Thread(() -> {
+            try {
+                throttle.acquire();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+
+        waiting.join(200);
+        assertTrue(waiting.isAlive());
+
+        throttle.release();
+        waiting.join(5000);
+        assertFalse(waiting.isAlive());
+    }
+}
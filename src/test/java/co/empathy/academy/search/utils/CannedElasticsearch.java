@@ -0,0 +1,79 @@
+package co.empathy.academy.search.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Local server standing for Elasticsearch in the tests. It answers each request with the next canned response
+ * and keeps the path and body of the requests it received
+ */
+public class CannedElasticsearch implements AutoCloseable {
+    private final HttpServer server;
+    private final RestClient client;
+    private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+    private final Queue<String> paths = new ConcurrentLinkedQueue<>();
+    private final Queue<String> bodies = new ConcurrentLinkedQueue<>();
+
+    private record Response(int status, String body) {}
+
+    public CannedElasticsearch() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            paths.add(exchange.getRequestURI().toString());
+            bodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+            var response = responses.poll();
+            var body = (response == null ? "{\"error\":\"no canned response\",\"status\":500}" : response.body()).getBytes(StandardCharsets.UTF_8);
+
+            //Like Elasticsearch, the client checks it to tell it is talking to it
+            exchange.getResponseHeaders().add("X-elastic-product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response == null ? 500 : response.status(), body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        client = RestClient.builder(new HttpHost("localhost", server.getAddress().getPort())).build();
+    }
+
+    /**
+     * Adds the response of the next request not answered yet
+     */
+    public CannedElasticsearch respond(int status, String body) {
+        responses.add(new Response(status, body));
+        return this;
+    }
+
+    public RestClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the path and query string of every request received, in order
+     */
+    public List<String> getPaths() {
+        return List.copyOf(paths);
+    }
+
+    /**
+     * Returns the body of every request received, in order
+     */
+    public List<String> getBodies() {
+        return List.copyOf(bodies);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+}
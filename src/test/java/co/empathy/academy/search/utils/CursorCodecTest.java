@@ -0,0 +1,47 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.empathy.academy.search.utils.clases.SearchCursor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorCodecTest {
+    private static List<String> describe(List<FieldValue> values) {
+        return values.stream().map(x -> x._kind() + ":" + x._get()).toList();
+    }
+
+    @Test
+    void decodesWhatItEncodes() {
+        var after = List.of(FieldValue.of(12.5), FieldValue.of(2.0), FieldValue.of(7L), FieldValue.of("tt0000001"), FieldValue.of(true), FieldValue.NULL);
+        var token = CursorCodec.encode(new SearchCursor("pit id==", after));
+
+        var decoded = CursorCodec.decode(token);
+
+        assertEquals("pit id==", decoded.pitId());
+        assertEquals(describe(after), describe(decoded.searchAfter()));
+    }
+
+    @Test
+    void makesTokensSafeForUrls() {
+        var token = CursorCodec.encode(new SearchCursor("???>>>", List.of(FieldValue.of("ü"))));
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    void rejectsTokensItDidNotEncode() {
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(encode("[1,2]")));
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(encode("{\"after\":[]}")));
+        assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(encode("{\"pit\":\"x\",\"after\":3}")));
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
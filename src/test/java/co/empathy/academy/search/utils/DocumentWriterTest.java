@@ -0,0 +1,79 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DocumentWriterTest {
+    private static String text(DocumentWriter writer) {
+        return new String(writer.data(), 0, writer.size(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void separatesValuesWithCommas() {
+        var writer = new DocumentWriter(4);
+
+        writer.startObject()
+                .field("a", 1)
+                .startArray("b").value("x").value("y").endArray()
+                .startObject("c").field("d", true).endObject()
+                .endObject();
+        writer.startObject().field("e", false).endObject();
+
+        assertEquals("{\"a\":1,\"b\":[\"x\",\"y\"],\"c\":{\"d\":true}}{\"e\":false}", text(writer));
+    }
+
+    @Test
+    void escapesStrings() {
+        var writer = new DocumentWriter(4);
+
+        writer.startArray().value("\"quoted\" \\ back").value("tab\tline\n\u0001").value("Amélie 東京").endArray();
+
+        assertEquals("[\"\\\"quoted\\\" \\\\ back\",\"tab\\u0009line\\u000a\\u0001\",\"Amélie 東京\"]", text(writer));
+    }
+
+    @Test
+    void writesEveryInt() {
+        var writer = new DocumentWriter(4);
+
+        writer.startArray().value(0).value(7).value(-42).value(Integer.MAX_VALUE).value(Integer.MIN_VALUE).endArray();
+
+        assertEquals("[0,7,-42,2147483647,-2147483648]", text(writer));
+    }
+
+    @Test
+    void writesDecimals() {
+        var writer = new DocumentWriter(4);
+
+        writer.startArray().value(7.0).value(-2.5).value(1e12).value(0.1f).value(8.3f).endArray();
+
+        assertEquals("[7.0,-2.5,1.0E12,0.1,8.3]", text(writer));
+    }
+
+    @Test
+    void writesNonFiniteNumbersAsNull() {
+        var writer = new DocumentWriter(4);
+
+        writer.startObject()
+                .field("a", Double.NaN)
+                .field("b", Double.POSITIVE_INFINITY)
+                .field("c", Float.NEGATIVE_INFINITY)
+                .field("d", Float.NaN)
+                .endObject();
+
+        assertEquals("{\"a\":null,\"b\":null,\"c\":null,\"d\":null}", text(writer));
+    }
+
+    @Test
+    void reusesItsArrayAfterReset() {
+        var writer = new DocumentWriter(4);
+        writer.startObject().field("a", "long enough to grow").endObject();
+        writer.reset();
+
+        writer.startObject().field("b", 1).endObject();
+
+        assertEquals("{\"b\":1}", text(writer));
+    }
+}
@@ -0,0 +1,50 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import co.empathy.academy.search.exception.types.CursorExpiredException;
+import co.empathy.academy.search.exception.types.IndexDoesNotExistException;
+import co.empathy.academy.search.exception.types.InternalServerException;
+import co.empathy.academy.search.exception.types.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElasticUtilsTest {
+    private static ElasticsearchException error(int status, String type, String rootCause) {
+        return new ElasticsearchException("search", ErrorResponse.of(_0 -> _0
+                .status(status)
+                .error(_1 -> _1
+                        .type(type)
+                        .reason("reason")
+                        .rootCause(_2 -> _2.type(rootCause).reason("reason"))
+                )
+        ));
+    }
+
+    @Test
+    void mapsTheStatusOfElasticsearch() {
+        assertInstanceOf(IndexDoesNotExistException.class, ElasticUtils.toApiException(error(404, "index_not_found_exception", "index_not_found_exception")));
+        assertInstanceOf(IllegalArgumentException.class, ElasticUtils.toApiException(error(400, "parsing_exception", "parsing_exception")));
+        assertInstanceOf(ServiceUnavailableException.class, ElasticUtils.toApiException(error(429, "es_rejected_execution_exception", "es_rejected_execution_exception")));
+        assertInstanceOf(ServiceUnavailableException.class, ElasticUtils.toApiException(error(503, "cluster_block_exception", "cluster_block_exception")));
+        assertInstanceOf(InternalServerException.class, ElasticUtils.toApiException(error(500, "exception", "exception")));
+    }
+
+    @Test
+    void tellsExpiredPointsInTime() {
+        var error = error(404, "search_phase_execution_exception", "search_context_missing_exception");
+
+        assertInstanceOf(CursorExpiredException.class, ElasticUtils.toApiException(new CompletionException(error)));
+    }
+
+    @Test
+    void mapsConnectionErrorsAsInternal() {
+        var exception = ElasticUtils.toApiException(new CompletionException(new IOException("Connection refused")));
+
+        assertInstanceOf(InternalServerException.class, exception);
+    }
+}
@@ -0,0 +1,118 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesTheNumberOfTheIds() {
+        assertEquals(1, FingerprintStore.key("tt0000001"));
+        assertEquals(1234567, FingerprintStore.key("nm1234567"));
+    }
+
+    @Test
+    void detectsNewAndChangedFingerprints() throws IOException {
+        var store = FingerprintStore.create(directory.resolve("films.fingerprints").toString());
+
+        assertTrue(store.hasChanged(1, 10));
+        store.put(1, 10);
+
+        assertFalse(store.hasChanged(1, 10));
+        assertTrue(store.hasChanged(1, 11));
+        assertTrue(store.hasChanged(2, 10));
+        assertEquals(1, store.size());
+
+        store.close();
+    }
+
+    @Test
+    void keepsTheFingerprintsBetweenLoads() throws IOException {
+        var path = directory.resolve("films.fingerprints").toString();
+        var store = FingerprintStore.create(path);
+        store.put(1, 10);
+        store.put(2, 20);
+        store.close();
+
+        var reopened = FingerprintStore.open(path);
+        assertEquals(2, reopened.size());
+        assertFalse(reopened.hasChanged(1, 10));
+        assertFalse(reopened.hasChanged(2, 20));
+        reopened.close();
+
+        var created = FingerprintStore.create(path);
+        assertEquals(0, created.size());
+        assertTrue(created.hasChanged(1, 10));
+        created.close();
+    }
+
+    @Test
+    void growsAndRemovesWithoutLosingKeys() throws IOException {
+        var store = FingerprintStore.create(directory.resolve("films.fingerprints").toString());
+        int keys = 1_000_000;
+
+        for(int key = 1; key <= keys; key++)
+            store.put(key, key * 31L);
+
+        for(int key = 1; key <= keys; key += 2)
+            store.remove(key);
+
+        assertEquals(keys / 2, store.size());
+
+        for(int key = 1; key <= keys; key++)
+            assertEquals(key % 2 == 1, store.hasChanged(key, key * 31L), "key " + key);
+
+        store.close();
+        assertFalse(Files.exists(directory.resolve("films.fingerprints.resize")));
+    }
+
+    @Test
+    void listsTheKeysNotSeenOnTheLoad() throws IOException {
+        var store = FingerprintStore.create(directory.resolve("films.fingerprints").toString());
+        store.put(1, 10);
+        store.put(2, 20);
+        store.put(3, 30);
+
+        store.hasChanged(2, 20);
+
+        List<Long> unseen = new ArrayList<>();
+        store.forEachUnseen(unseen::add);
+        unseen.sort(null);
+
+        assertEquals(List.of(1L, 3L), unseen);
+        store.close();
+    }
+
+    @Test
+    void resumesWithTheFingerprintsBeforeTheCheckpoint() throws IOException {
+        var path = directory.resolve("films.fingerprints.building").toString();
+        var store = FingerprintStore.create(path);
+        store.put(1, 10);
+        store.put(2, 20);
+        store.close();
+
+        //The resumed load only reads the titles after the checkpoint
+        var resumed = FingerprintStore.open(path);
+        assertFalse(resumed.hasChanged(2, 20));
+        assertTrue(resumed.hasChanged(3, 30));
+        resumed.put(3, 30);
+
+        List<Long> unseen = new ArrayList<>();
+        resumed.forEachUnseen(unseen::add);
+
+        //Which is why a resumed full load must not delete the unseen titles
+        assertEquals(List.of(1L), unseen);
+        assertEquals(3, resumed.size());
+        resumed.close();
+    }
+}
@@ -0,0 +1,67 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipChannelTest {
+    @TempDir
+    Path directory;
+
+    private Path gzip(byte[] data) throws IOException {
+        var path = directory.resolve("file.tsv.gz");
+
+        try(var output = new GZIPOutputStream(Files.newOutputStream(path))) {
+            output.write(data);
+        }
+
+        return path;
+    }
+
+    private static byte[] readAll(GzipChannel channel) throws IOException {
+        var result = new ByteArrayOutputStream();
+        var buffer = ByteBuffer.allocate(100_000);
+
+        while(channel.read(buffer.clear()) >= 0)
+            result.write(buffer.array(), 0, buffer.position());
+
+        return result.toByteArray();
+    }
+
+    @Test
+    void readsFilesLongerThanItsBuffers() throws IOException {
+        var data = new byte[10_000_000];
+        for(int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31 % 251);
+
+        try(var channel = new GzipChannel(gzip(data))) {
+            assertArrayEquals(data, readAll(channel));
+            assertEquals(1, channel.progress());
+        }
+    }
+
+    @Test
+    void readsEmptyFiles() throws IOException {
+        try(var channel = new GzipChannel(gzip(new byte[0]))) {
+            assertEquals(0, readAll(channel).length);
+        }
+    }
+
+    @Test
+    void failsOnCorruptFiles() throws IOException {
+        var path = directory.resolve("corrupt.tsv.gz");
+        Files.write(path, new byte[] { 0x1f, (byte) 0x8b, 8, 0, 1, 2, 3 });
+
+        try(var channel = new GzipChannel(path)) {
+            assertThrows(IOException.class, () -> readAll(channel));
+        }
+    }
+}
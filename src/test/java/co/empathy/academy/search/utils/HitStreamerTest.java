@@ -0,0 +1,69 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitStreamerTest {
+    private static final String SHARDS = "\"took\":2,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+    private static final String HITS = "\"hits\":{\"total\":{\"value\":2,\"relation\":\"eq\"},\"max_score\":2.5,\"hits\":["
+            + "{\"_index\":\"films_v1\",\"_type\":\"_doc\",\"_id\":\"tt0000001\",\"_score\":2.5,\"_source\":{\"primaryTitle\":\"A\",\"genres\":[\"Drama\"],\"hits\":{\"x\":1}}},"
+            + "{\"_index\":\"films_v1\",\"_type\":\"_doc\",\"_id\":\"tt0000002\",\"_score\":1.5,\"_source\":{\"primaryTitle\":\"B\",\"numVotes\":3}}]}";
+    private static final String EMPTY_HITS = "\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]}";
+    private static final String AGGREGATIONS = "\"aggregations\":{\"sterms#genres\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,"
+            + "\"buckets\":[{\"key\":\"Drama\",\"doc_count\":3},{\"key\":\"Comedy\",\"doc_count\":1}]},"
+            + "\"sterms#titleType\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,\"buckets\":[{\"key\":\"movie\",\"doc_count\":2}]}}";
+    private static final String SUGGEST = "\"suggest\":{"
+            + "\"term#spellcheck\":[{\"text\":\"godfathr\",\"offset\":0,\"length\":8,\"options\":[{\"text\":\"godfather\",\"score\":0.875,\"freq\":12}]}],"
+            + "\"phrase#phrase-suggester\":[{\"text\":\"godfathr\",\"offset\":0,\"length\":8,\"options\":[{\"text\":\"godfather\",\"score\":0.5}]}]}";
+
+    private static byte[] response(String... parts) {
+        return ("{" + SHARDS + "," + String.join(",", parts) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String write(byte[] response, String aggName) throws IOException {
+        var output = new ByteArrayOutputStream();
+        HitStreamer.write(response, aggName, new JacksonJsonpMapper(), output);
+
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void copiesTheIdAndSourceOfTheHits() throws IOException {
+        assertEquals("{\"hits\":[{\"id\":\"tt0000001\",\"source\":{\"primaryTitle\":\"A\",\"genres\":[\"Drama\"],\"hits\":{\"x\":1}}},"
+                        + "{\"id\":\"tt0000002\",\"source\":{\"primaryTitle\":\"B\",\"numVotes\":3}}]}",
+                write(response(HITS, SUGGEST), null));
+    }
+
+    @Test
+    void copiesTheBucketsOfTheTypedAggregation() throws IOException {
+        assertEquals("{\"hits\":[{\"id\":\"tt0000001\",\"source\":{\"primaryTitle\":\"A\",\"genres\":[\"Drama\"],\"hits\":{\"x\":1}}},"
+                        + "{\"id\":\"tt0000002\",\"source\":{\"primaryTitle\":\"B\",\"numVotes\":3}}],"
+                        + "\"aggs\":[{\"key\":\"Drama\",\"doc_count\":3},{\"key\":\"Comedy\",\"doc_count\":1}]}",
+                write(response(HITS, AGGREGATIONS), "genres"));
+
+        assertEquals("{\"hits\":[],\"aggs\":[{\"key\":\"movie\",\"doc_count\":2}]}", write(response(EMPTY_HITS, AGGREGATIONS), "titleType"));
+    }
+
+    @Test
+    void writesTheSuggestionsOfAResponseWithoutHits() throws IOException {
+        assertEquals("{\"hits\":[],\"aggs\":[],\"term-suggestions\":[{\"score\":0.875,\"freq\":12,\"text\":\"godfather\"}],"
+                        + "\"phrase-suggestions\":[{\"score\":0.5,\"text\":\"godfather\"}]}",
+                write(response(EMPTY_HITS, SUGGEST), null));
+
+        assertEquals("{\"hits\":[],\"aggs\":[],\"term-suggestions\":[],\"phrase-suggestions\":[]}", write(response(EMPTY_HITS), null));
+    }
+
+    @Test
+    void tellsWhetherAResponseHasHits() {
+        assertTrue(HitStreamer.hasHits(response(HITS)));
+        assertTrue(HitStreamer.hasHits(response(AGGREGATIONS, HITS)));
+        assertFalse(HitStreamer.hasHits(response(EMPTY_HITS, SUGGEST)));
+        assertFalse(HitStreamer.hasHits(response(AGGREGATIONS)));
+    }
+}
@@ -0,0 +1,111 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JoinCursorTest {
+    @TempDir
+    Path directory;
+
+    private TsvReader file(String name, String... lines) throws IOException {
+        var path = directory.resolve(name);
+        Files.writeString(path, String.join("\n", lines) + "\n");
+
+        return new TsvReader(path.toString());
+    }
+
+    /**
+     * Returns the lines of every section of every title left, a title per item
+     */
+    private static List<List<String>> read(JoinCursor join, int sections) throws IOException {
+        List<List<String>> titles = new ArrayList<>();
+        var batch = new RowBatch(4, sections);
+        var cursor = new TsvCursor();
+
+        while(join.next(batch)) {
+            int title = batch.titles() - 1;
+            List<String> lines = new ArrayList<>();
+
+            for(int section = 0; section < sections; section++) {
+                var lineCursor = batch.section(title, section, cursor);
+                var text = new StringBuilder();
+
+                while(lineCursor.nextLine())
+                    text.append(text.length() > 0 ? "|" : "").append(lineCursor.string()).append(':').append(lineCursor.string());
+
+                lines.add(text.toString());
+            }
+
+            titles.add(lines);
+        }
+
+        return titles;
+    }
+
+    @Test
+    void joinsEveryLineOfEachTitle() throws IOException {
+        var films = file("films.tsv", "tconst\ttitle", "tt0000001\tA", "tt0000002\tB", "tt0000003\tC");
+        var ratings = file("ratings.tsv", "tconst\trating", "tt0000001\t5.0", "tt0000003\t7.0");
+        var akas = file("akas.tsv", "titleId\ttitle", "tt0000001\ta1", "tt0000001\ta2", "tt0000002\tb1");
+
+        var join = new JoinCursor(films, List.of(ratings, akas), null);
+
+        assertEquals(List.of(
+                List.of("tt0000001:A", "tt0000001:5.0", "tt0000001:a1|tt0000001:a2"),
+                List.of("tt0000002:B", "", "tt0000002:b1"),
+                List.of("tt0000003:C", "tt0000003:7.0", "")), read(join, 3));
+    }
+
+    @Test
+    void skipsTheLinesOfTitlesWithoutFilm() throws IOException {
+        var films = file("films.tsv", "tconst\ttitle", "tt0000002\tB", "tt0000004\tD");
+        var ratings = file("ratings.tsv", "tconst\trating", "tt0000001\t1.0", "tt0000002\t2.0", "tt0000003\t3.0", "tt0000005\t5.0");
+
+        var join = new JoinCursor(films, List.of(ratings), null);
+
+        assertEquals(List.of(List.of("tt0000002:B", "tt0000002:2.0"), List.of("tt0000004:D", "")), read(join, 2));
+    }
+
+    @Test
+    void failsOnUnsortedFiles() throws IOException {
+        var films = file("films.tsv", "tconst\ttitle", "tt0000001\tA", "tt0000002\tB", "tt0000003\tC");
+        var ratings = file("ratings.tsv", "tconst\trating", "tt0000003\t3.0", "tt0000001\t1.0");
+
+        var join = new JoinCursor(films, List.of(ratings), null);
+
+        assertThrows(IOException.class, () -> read(join, 2));
+    }
+
+    @Test
+    void resumesAfterTheLastTitleReturned() throws IOException {
+        String[] filmLines = { "tconst\ttitle", "tt0000001\tA", "tt0000002\tB", "tt0000003\tC" };
+        String[] akaLines = { "titleId\ttitle", "tt0000001\ta1", "tt0000002\tb1", "tt0000002\tb2", "tt0000003\tc1" };
+
+        var join = new JoinCursor(file("films.tsv", filmLines), List.of(file("akas.tsv", akaLines)), null);
+        var batch = new RowBatch(4, 2);
+        assertTrue(join.next(batch));
+        assertEquals(2, join.nextId());
+        long[] offsets = join.offsets();
+
+        var resumed = new JoinCursor(file("films.tsv", filmLines), List.of(file("akas.tsv", akaLines)), offsets);
+
+        assertEquals(List.of(
+                List.of("tt0000002:B", "tt0000002:b1|tt0000002:b2"),
+                List.of("tt0000003:C", "tt0000003:c1")), read(resumed, 2));
+    }
+
+    @Test
+    void rejectsOffsetsOfOtherFiles() throws IOException {
+        var films = file("films.tsv", "tconst\ttitle", "tt0000001\tA");
+
+        assertThrows(IOException.class, () -> new JoinCursor(films, List.of(), new long[] { 0, 0 }));
+    }
+}
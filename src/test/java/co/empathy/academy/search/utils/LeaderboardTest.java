@@ -0,0 +1,99 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardTest {
+    @TempDir
+    Path directory;
+
+    private Leaderboard write(LeaderboardBuilder builder) throws IOException {
+        var path = directory.resolve("films.leaderboard");
+        builder.write(path, "films_v3");
+
+        return Leaderboard.open(path);
+    }
+
+    @Test
+    void mergesTheBoardsOfTheTypesAndGenres() throws IOException {
+        var builder = new LeaderboardBuilder();
+        builder.add(1, "movie", List.of("Drama", "Comedy"), 9f, 8.0);
+        builder.add(2, "short", List.of("Comedy"), 8f, 7.0);
+        builder.add(3, "movie", List.of("Drama"), 7f, 6.0);
+        builder.add(4, "tvSeries", List.of("Drama"), 6f, 9.0);
+        var leaderboard = write(builder);
+
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000002", "tt0000003")),
+                leaderboard.page(List.of("movie", "short"), List.of(), null, 0, 10));
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000002", "tt0000003", "tt0000004")),
+                leaderboard.page(List.of(), List.of("Drama", "Comedy"), null, 0, 10));
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000003")),
+                leaderboard.page(List.of("movie"), List.of("Drama", "Comedy"), null, 0, 10));
+        assertEquals(Optional.of(List.of("tt0000002", "tt0000003")), leaderboard.page(List.of(), List.of(), null, 1, 2));
+        assertEquals(Optional.of(List.of()), leaderboard.page(List.of("videoGame"), List.of(), null, 0, 10));
+        assertEquals(Optional.of(List.of()), leaderboard.page(List.of(), List.of(), null, 10, 10));
+    }
+
+    @Test
+    void filtersByTheMinimumRating() throws IOException {
+        var builder = new LeaderboardBuilder();
+        builder.add(1, "movie", List.of(), 9f, 6.0);
+        builder.add(2, "movie", List.of(), 8f, 8.0);
+        builder.add(3, "movie", List.of(), Popularity.UNRATED, Double.NaN);
+        builder.add(4, "movie", List.of(), 6f, 7.5);
+        var leaderboard = write(builder);
+
+        assertEquals(Optional.of(List.of("tt0000002", "tt0000004")), leaderboard.page(List.of(), List.of(), 7.5, 0, 10));
+        assertEquals(Optional.of(List.of("tt0000004")), leaderboard.page(List.of(), List.of(), 7.5, 1, 10));
+    }
+
+    @Test
+    void leavesThePagesPastATruncatedBoardToElasticsearch() throws IOException {
+        var builder = new LeaderboardBuilder();
+
+        for(int i = 1; i <= LeaderboardBuilder.BOARD_SIZE + 100; i++)
+            builder.add(i, "movie", List.of(), 1f / i, 5.0);
+
+        var leaderboard = write(builder);
+
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000002")), leaderboard.page(List.of(), List.of(), null, 0, 2));
+        assertTrue(leaderboard.page(List.of(), List.of(), null, LeaderboardBuilder.BOARD_SIZE - 1, 1).isEmpty());
+        assertTrue(leaderboard.page(List.of(), List.of(), null, LeaderboardBuilder.BOARD_SIZE - 5, 10).isEmpty());
+    }
+
+    @Test
+    void leavesThePagesWithTiedTitlesToElasticsearch() throws IOException {
+        var builder = new LeaderboardBuilder();
+        builder.add(1, "movie", List.of(), 9f, 8.0);
+        builder.add(2, "movie", List.of(), 5f, 7.0);
+        builder.add(3, "movie", List.of(), Popularity.UNRATED, Double.NaN);
+        builder.add(4, "movie", List.of(), Popularity.UNRATED, Double.NaN);
+        var leaderboard = write(builder);
+
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000002")), leaderboard.page(List.of(), List.of(), null, 0, 2));
+        //The last title of the page is tied with the next one
+        assertTrue(leaderboard.page(List.of(), List.of(), null, 0, 3).isEmpty());
+        //The first title of the page is tied with the previous one
+        assertTrue(leaderboard.page(List.of(), List.of(), null, 3, 1).isEmpty());
+        //The ties left out by the rating filter do not count
+        assertEquals(Optional.of(List.of("tt0000001", "tt0000002")), leaderboard.page(List.of(), List.of(), 7.0, 0, 10));
+    }
+
+    @Test
+    void leavesTheWrongPagesToElasticsearch() throws IOException {
+        var builder = new LeaderboardBuilder();
+        builder.add(1, "movie", List.of(), 9f, 8.0);
+        var leaderboard = write(builder);
+
+        assertTrue(leaderboard.page(List.of(), List.of(), null, -1, 10).isEmpty());
+        assertTrue(leaderboard.page(List.of(), List.of(), null, 0, 0).isEmpty());
+        assertEquals("films_v3", leaderboard.getIndex());
+    }
+}
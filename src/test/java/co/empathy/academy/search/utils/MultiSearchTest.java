@@ -0,0 +1,59 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiSearchTest {
+    private CannedElasticsearch elasticsearch;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        elasticsearch = new CannedElasticsearch();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        elasticsearch.close();
+    }
+
+    @Test
+    void sendsTheSearchesAsNdjsonAndKeepsTheirOrder() {
+        elasticsearch.respond(200, "{\"took\":3,\"responses\":["
+                + "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+                + "\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":["
+                + "{\"_index\":\"films_v1\",\"_type\":\"_doc\",\"_id\":\"tt0000001\",\"_score\":1.0,\"_source\":{\"primaryTitle\":\"A\"}}]},"
+                + "\"aggregations\":{\"sterms#genres\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,\"buckets\":[{\"key\":\"Drama\",\"doc_count\":1}]}},"
+                + "\"status\":200},"
+                + "{\"error\":{\"root_cause\":[],\"type\":\"illegal_argument_exception\",\"reason\":\"wrong size\"},\"status\":400}]}");
+
+        var searches = List.of(
+                new SearchRequest.Builder().size(1).query(_0 -> _0.matchAll(_1 -> _1)).build(),
+                new SearchRequest.Builder().size(-1).build());
+
+        var responses = MultiSearch.search(elasticsearch.getClient(), new JacksonJsonpMapper(), "films", searches).join();
+
+        assertEquals(List.of("/_msearch?typed_keys=true"), elasticsearch.getPaths());
+        var lines = elasticsearch.getBodies().get(0).split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("{\"index\":\"films\"}", lines[0]);
+        assertTrue(lines[1].contains("\"size\":1") && lines[1].contains("\"match_all\""));
+        assertEquals("{\"index\":\"films\"}", lines[2]);
+        assertTrue(lines[3].contains("\"size\":-1"));
+
+        assertEquals(2, responses.size());
+        assertTrue(responses.get(0).isResult());
+        assertEquals("tt0000001", responses.get(0).result().hits().hits().get(0).id());
+        assertEquals("Drama", responses.get(0).result().aggregations().get("genres").sterms().buckets().array().get(0).key().stringValue());
+        assertTrue(responses.get(1).isFailure());
+        assertEquals(400, responses.get(1).failure().status());
+        assertEquals("wrong size", responses.get(1).failure().error().reason());
+    }
+}
@@ -0,0 +1,82 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void emptyTheCache() {
+        QueryCache.invalidate();
+    }
+
+    private String load(String response) {
+        loads.incrementAndGet();
+        return response;
+    }
+
+    @Test
+    void storesTheResponses() {
+        assertEquals("a", QueryCache.get("q=a", () -> load("a")));
+        assertEquals("a", QueryCache.get("q=a", () -> load("other")));
+        assertEquals("b", QueryCache.get("q=b", () -> load("b")));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void forgetsEverythingOnInvalidate() {
+        QueryCache.get("q=a", () -> load("a"));
+        QueryCache.invalidate();
+
+        assertEquals("new", QueryCache.get("q=a", () -> load("new")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void discardsResponsesComputedWhileALoadFinished() {
+        //The load finishes while the search runs, so the response may come from the replaced index
+        assertEquals("old", QueryCache.get("q=a", () -> {
+            QueryCache.invalidate();
+            return load("old");
+        }));
+
+        assertNull(QueryCache.lookup("q=a"));
+        assertEquals("new", QueryCache.get("q=a", () -> load("new")));
+        assertEquals("new", QueryCache.lookup("q=a"));
+    }
+
+    @Test
+    void discardsAsyncResponsesCompletedAfterALoadFinished() {
+        var search = new CompletableFuture<String>();
+        var response = QueryCache.getAsync("q=a", () -> search);
+
+        QueryCache.invalidate();
+        search.complete("old");
+
+        assertEquals("old", response.join());
+        assertNull(QueryCache.lookup("q=a"));
+    }
+
+    @Test
+    void doesNotStoreFailures() {
+        var response = QueryCache.getAsync("q=a", () -> CompletableFuture.failedFuture(new IllegalStateException()));
+
+        assertTrue(response.isCompletedExceptionally());
+        assertNull(QueryCache.lookup("q=a"));
+    }
+
+    @Test
+    void doesNotStoreHugeResponses() {
+        var huge = "x".repeat(1 << 20);
+        QueryCache.get("q=huge", () -> huge);
+
+        assertNull(QueryCache.lookup("q=huge"));
+    }
+}
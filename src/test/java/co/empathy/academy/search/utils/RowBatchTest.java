@@ -0,0 +1,104 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowBatchTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Adds a title with the lines given, a section per argument. A section can have several lines separated by \n
+     */
+    private static void add(RowBatch batch, String... sections) {
+        for(String section : sections) {
+            batch.nextSection();
+
+            if(section.isEmpty())
+                continue;
+
+            for(String line : section.split("\n")) {
+                var bytes = line.getBytes(StandardCharsets.UTF_8);
+                batch.append(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+        }
+    }
+
+    @Test
+    void storesTheLinesOfEachSection() {
+        var batch = new RowBatch(2, 2);
+        add(batch, "tt0000001\tA", "tt0000001\t5.0");
+        add(batch, "tt0000002\tB", "");
+
+        var cursor = new TsvCursor();
+        assertEquals(2, batch.titles());
+        assertEquals(2, batch.id(1, cursor));
+        assertTrue(batch.section(0, 1, cursor).nextLine());
+        assertEquals("tt0000001", cursor.string());
+        assertFalse(batch.section(1, 1, cursor).nextLine());
+    }
+
+    @Test
+    void givesTheSameFingerprintToTheSameLines() {
+        var batch = new RowBatch(2, 2);
+        add(batch, "tt0000001\tA", "tt0000001\t5.0");
+        add(batch, "tt0000001\tA", "tt0000001\t5.0");
+
+        assertEquals(batch.fingerprint(0), batch.fingerprint(1));
+    }
+
+    @Test
+    void changesTheFingerprintWithAnyByteOrSection() {
+        var batch = new RowBatch(4, 2);
+        add(batch, "tt0000001\tA", "tt0000001\t5.0");
+        add(batch, "tt0000001\tA", "tt0000001\t5.1");
+        //Same bytes, on another section
+        add(batch, "tt0000001\tA\ntt0000001\t5.0", "");
+        add(batch, "tt0000001\tA", "");
+
+        long first = batch.fingerprint(0);
+
+        assertNotEquals(first, batch.fingerprint(1));
+        assertNotEquals(first, batch.fingerprint(2));
+        assertNotEquals(first, batch.fingerprint(3));
+    }
+
+    @Test
+    void continuesTheFingerprintWithTheNamesOfTheDocument() throws IOException {
+        var names = directory.resolve("names.tsv");
+        Files.writeString(names, "nconst\tprimaryName\nnm0000001\tFred Astaire\nnm0000002\tLauren Bacall\n");
+        var lookup = new NameLookup(names.toString());
+
+        try {
+            long base = 42;
+            long fred = lookup.fingerprint("nm0000001", base);
+
+            assertEquals(fred, lookup.fingerprint("nm0000001", base));
+            assertNotEquals(fred, lookup.fingerprint("nm0000002", base));
+            assertNotEquals(fred, lookup.fingerprint("nm0000003", base));
+            assertNotEquals(base, lookup.fingerprint("nm0000003", base));
+        } finally {
+            lookup.close();
+        }
+
+        Files.writeString(names, "nconst\tprimaryName\nnm0000001\tFred Astaire Jr\nnm0000002\tLauren Bacall\n");
+        var renamed = new NameLookup(names.toString());
+
+        try {
+            assertNotEquals(RowBatch.fingerprint(42, ByteBuffer.wrap("nm0000001\tFred Astaire".getBytes(StandardCharsets.UTF_8)), 0, 22),
+                    renamed.fingerprint("nm0000001", 42));
+            assertEquals(RowBatch.fingerprint(42, ByteBuffer.wrap("nm0000001\tFred Astaire Jr".getBytes(StandardCharsets.UTF_8)), 0, 25),
+                    renamed.fingerprint("nm0000001", 42));
+        } finally {
+            renamed.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.JsonContent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesRollupsTest {
+    @TempDir
+    Path directory;
+
+    private SeriesRollups rollups(List<String> episodes, List<String> ratings) throws IOException {
+        var episodesPath = directory.resolve("title.episode.tsv");
+        var ratingsPath = directory.resolve("title.ratings.tsv");
+        Files.writeString(episodesPath, "tconst\tparentTconst\tseasonNumber\tepisodeNumber\n" + String.join("", episodes));
+        Files.writeString(ratingsPath, "tconst\taverageRating\tnumVotes\n" + String.join("", ratings));
+
+        var result = new SeriesRollups();
+        result.addUntil(episodesPath.toString(), ratingsPath.toString(), Integer.MAX_VALUE);
+
+        return result;
+    }
+
+    private static Map<String, String> byId(List<JsonContent> updates) {
+        return updates.stream().collect(Collectors.toMap(JsonContent::id, JsonContent::json));
+    }
+
+    /**
+     * Records the updates as BulkSender does once they are acknowledged
+     */
+    private static void acknowledge(List<JsonContent> updates, FingerprintStore store) throws IOException {
+        for(JsonContent update : updates) {
+            if(update.fingerprint() == 0)
+                store.remove(FingerprintStore.key(update.id()));
+            else
+                store.put(FingerprintStore.key(update.id()), update.fingerprint());
+        }
+    }
+
+    @Test
+    void rollsUpTheEpisodesOfEachSeries() throws IOException {
+        var rollups = rollups(
+                List.of("tt0000010\ttt0000001\t1\t1\n", "tt0000011\ttt0000001\t2\t1\n", "tt0000012\ttt0000002\t\\N\t\\N\n"),
+                List.of("tt0000010\t8.0\t100\n", "tt0000011\t6.0\t300\n"));
+
+        assertEquals(Map.of(
+                "tt0000001", "{\"doc\":{\"seasonCount\":2,\"episodeCount\":2,\"episodesAverageRating\":6.5}}",
+                "tt0000002", "{\"doc\":{\"seasonCount\":0,\"episodeCount\":1,\"episodesAverageRating\":null}}"),
+                byId(rollups.toUpdates(null)));
+    }
+
+    @Test
+    void sendsOnlyTheChangedRollupsAndClearsTheRemovedOnes() throws IOException {
+        var store = FingerprintStore.create(directory.resolve("films.rollups.fingerprints").toString());
+        var first = rollups(
+                List.of("tt0000010\ttt0000001\t1\t1\n", "tt0000020\ttt0000002\t1\t1\n", "tt0000030\ttt0000003\t1\t1\n"),
+                List.of("tt0000010\t8.0\t100\n")).toUpdates(store);
+        assertEquals(3, first.size());
+        acknowledge(first, store);
+        store.close();
+
+        //The first series is unchanged, the second gets an episode and the third loses its only one
+        var reopened = FingerprintStore.open(directory.resolve("films.rollups.fingerprints").toString());
+        var second = rollups(
+                List.of("tt0000010\ttt0000001\t1\t1\n", "tt0000020\ttt0000002\t1\t1\n", "tt0000021\ttt0000002\t1\t2\n"),
+                List.of("tt0000010\t8.0\t100\n")).toUpdates(reopened);
+
+        assertEquals(Map.of(
+                "tt0000002", "{\"doc\":{\"seasonCount\":1,\"episodeCount\":2,\"episodesAverageRating\":null}}",
+                "tt0000003", "{\"doc\":{\"seasonCount\":null,\"episodeCount\":null,\"episodesAverageRating\":null}}"),
+                byId(second));
+
+        acknowledge(second, reopened);
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+}
@@ -0,0 +1,100 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.JsonContent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trip of a snapshot, written by SnapshotWriter and read back
+ */
+class SnapshotReaderTest {
+    @TempDir
+    Path directory;
+
+    private String file(String name, String... lines) throws IOException {
+        var path = directory.resolve(name);
+        Files.writeString(path, String.join("\n", lines) + "\n");
+
+        return path.toString();
+    }
+
+    private BatchReader batchReader() throws IOException {
+        return new BatchReader(
+                file("title.basics.tsv",
+                        "tconst\ttitleType\tprimaryTitle\toriginalTitle\tisAdult\tstartYear\tendYear\truntimeMinutes\tgenres",
+                        "tt0000001\tshort\tCarmencita\tCarmencita\t0\t1894\t\\N\t1\tDocumentary,Short",
+                        "tt0000003\ttvSeries\tPauvre \"Pierrot\"\tPauvre Pierrot\t0\t1892\t1893\t\\N\t\\N",
+                        "tt0000004\ttvEpisode\tUn bon bock\tUn bon bock\t1\t1892\t\\N\t12\tAnimation"),
+                file("title.ratings.tsv",
+                        "tconst\taverageRating\tnumVotes",
+                        "tt0000001\t5.7\t1900",
+                        "tt0000004\t6.5\t120"),
+                file("title.akas.tsv",
+                        "titleId\tordering\ttitle\tregion\tlanguage\ttypes\tattributes\tisOriginalTitle",
+                        "tt0000001\t1\tKarmencita\tRU\t\\N\t\\N\t\\N\t0",
+                        "tt0000001\t2\tCarmencita\t\\N\t\\N\toriginal\t\\N\t1",
+                        "tt0000003\t1\tPobre Pierrot\tES\tes\t\\N\t\\N\t0"),
+                file("title.crew.tsv",
+                        "tconst\tdirectors\twriters",
+                        "tt0000001\tnm0005690\t\\N",
+                        "tt0000004\tnm0721526,nm0000001\t\\N"),
+                file("title.episode.tsv",
+                        "tconst\tparentTconst\tseasonNumber\tepisodeNumber",
+                        "tt0000004\ttt0000003\t1\t2"),
+                file("title.principals.tsv",
+                        "tconst\tordering\tnconst\tcategory\tjob\tcharacters",
+                        "tt0000001\t1\tnm1588970\tself\t\\N\t[\"Self\"]",
+                        "tt0000001\t2\tnm0005690\tdirector\t\\N\t\\N"),
+                file("name.basics.tsv",
+                        "nconst\tprimaryName\tbirthYear\tdeathYear\tprimaryProfession\tknownForTitles",
+                        "nm0000001\tFred Astaire\t1899\t1987\tsoundtrack,actor\ttt0050419",
+                        "nm0005690\tWilliam K.L. Dickson\t1860\t1935\tdirector\ttt0000001"),
+                2, null);
+    }
+
+    private static List<String> documents(DocumentSource source) throws IOException {
+        List<String> result = new ArrayList<>();
+
+        while(!source.hasFinished())
+            for(JsonContent document : source.toJsonContents(source.getRawBatch(Long.MAX_VALUE)))
+                result.add(document.id() + " " + document.json());
+
+        return result;
+    }
+
+    @Test
+    void readsTheSameDocumentsAndUpdatesItWasWrittenFrom() throws IOException {
+        var expectedReader = batchReader();
+        var expected = documents(expectedReader);
+        var expectedUpdates = expectedReader.getUpdates(null).stream().map(x -> x.id() + " " + x.json()).toList();
+        expectedReader.close();
+
+        var snapshot = directory.resolve("films.snapshot");
+        var writerSource = batchReader();
+        assertEquals(3, SnapshotWriter.write(writerSource, snapshot, new IndexingJob("1", "snapshot", "films")));
+        writerSource.close();
+
+        var reader = new SnapshotReader(snapshot.toString(), 2, null);
+        assertEquals(expected, documents(reader));
+        assertEquals(expectedUpdates, reader.getUpdates(null).stream().map(x -> x.id() + " " + x.json()).toList());
+        reader.close();
+
+        assertEquals(3, expected.size());
+        assertEquals(1, expectedUpdates.size());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSnapshots() throws IOException {
+        var path = file("films.snapshot", "tconst\ttitleType");
+
+        assertThrows(IOException.class, () -> new SnapshotReader(path, 2, null));
+    }
+}
@@ -0,0 +1,39 @@
+package co.empathy.academy.search.utils;
+
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceProjectionTest {
+    private static MgetRequest project(Optional<String> preset, Optional<List<String>> fields, Optional<List<String>> exclude) {
+        var request = new MgetRequest.Builder().index("films").ids("tt0000001");
+        SourceProjection.addProjection(preset, fields, exclude, request);
+
+        return request.build();
+    }
+
+    @Test
+    void addsTheFieldsToTheOnesOfThePreset() {
+        var request = project(Optional.of("card"), Optional.of(List.of("runtimeMinutes")), Optional.empty());
+
+        assertEquals(List.of("primaryTitle", "titleType", "startYear", "averageRating", "numVotes", "genres", "runtimeMinutes"),
+                request.sourceIncludes());
+    }
+
+    @Test
+    void keepsEveryFieldOfTheFullPreset() {
+        var request = project(Optional.empty(), Optional.of(List.of("runtimeMinutes")), Optional.of(List.of("akas")));
+
+        assertEquals(List.of(), request.sourceIncludes());
+        assertEquals(List.of("akas"), request.sourceExcludes());
+    }
+
+    @Test
+    void rejectsUnknownPresets() {
+        assertThrows(IllegalArgumentException.class, () -> project(Optional.of("tiny"), Optional.empty(), Optional.empty()));
+    }
+}
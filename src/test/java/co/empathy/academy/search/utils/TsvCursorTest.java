@@ -0,0 +1,129 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsvCursorTest {
+    private static TsvCursor cursor(String lines) {
+        var bytes = lines.getBytes(StandardCharsets.UTF_8);
+        return new TsvCursor().reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    @Test
+    void readsFieldsInOrder() {
+        var cursor = cursor("tt0000001\tshort\tCarmencita\t0\t1894\t7.25\n");
+
+        assertTrue(cursor.nextLine());
+        assertEquals(1, cursor.intValue());
+        assertEquals("short", cursor.string());
+        assertEquals("Carmencita", cursor.string());
+        assertFalse(cursor.boolValue());
+        assertEquals(1894, cursor.intValue());
+        assertEquals(7.25, cursor.doubleValue());
+        assertFalse(cursor.nextLine());
+    }
+
+    @Test
+    void readsTheLastLineWithoutNewLine() {
+        var cursor = cursor("a\t1\nb\t2");
+
+        assertTrue(cursor.nextLine());
+        assertEquals("a", cursor.string());
+        assertTrue(cursor.nextLine());
+        assertEquals("b", cursor.string());
+        assertEquals(2, cursor.intValue());
+        assertFalse(cursor.nextLine());
+    }
+
+    @Test
+    void readsNullsAsZero() {
+        var cursor = cursor("\\N\t\\N\t\\N\n");
+
+        assertTrue(cursor.nextLine());
+        assertTrue(cursor.isNull());
+        assertEquals(0, cursor.intValue());
+        assertEquals(0, cursor.doubleValue());
+        assertFalse(cursor.boolValue());
+    }
+
+    @Test
+    void parsesNegativeAndUnusualNumbers() {
+        var cursor = cursor("-12\t-0.5\t1e3\t10\t1.000000000000000001\n");
+
+        assertTrue(cursor.nextLine());
+        assertEquals(-12, cursor.intValue());
+        assertEquals(-0.5, cursor.doubleValue());
+        assertEquals(1000, cursor.doubleValue());
+        assertEquals(10, cursor.doubleValue());
+        assertEquals(1, cursor.doubleValue(), 1e-9);
+    }
+
+    @Test
+    void skipsFieldsAndReadsPastTheLastOneAsEmpty() {
+        var cursor = cursor("a\tb\tc\n");
+
+        assertTrue(cursor.nextLine());
+        assertEquals("c", cursor.skip(2).string());
+        assertEquals("", cursor.string());
+        assertEquals(0, cursor.intValue());
+    }
+
+    @Test
+    void splitsLists() {
+        var cursor = cursor("Drama,Comedy\t\\N\tAction\n");
+        List<String> values = new ArrayList<>();
+
+        assertTrue(cursor.nextLine());
+        cursor.strings(',', values::add);
+        assertEquals(List.of("Drama", "Comedy"), values);
+
+        values.clear();
+        cursor.strings(',', values::add);
+        assertEquals(List.of(), values);
+
+        cursor.strings(',', values::add);
+        assertEquals(List.of("Action"), values);
+    }
+
+    @Test
+    void writesFieldsAsEscapedJson() {
+        var cursor = cursor("Amélie \"x\"\tn\\a,b\n");
+        var writer = new DocumentWriter(16);
+
+        assertTrue(cursor.nextLine());
+        writer.startObject();
+        cursor.writeString(writer.name("title"));
+        cursor.writeStrings(',', writer.startArray("list"));
+        writer.endArray().endObject();
+
+        assertEquals("{\"title\":\"Amélie \\\"x\\\"\",\"list\":[\"n\\\\a\",\"b\"]}",
+                new String(writer.data(), 0, writer.size(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesStringsOfDirectBuffers() {
+        var bytes = "Amélie\t2001\n".getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        var cursor = new TsvCursor().reset(buffer, 0, bytes.length);
+
+        assertTrue(cursor.nextLine());
+        assertEquals("Amélie", cursor.string());
+        assertEquals(2001, cursor.intValue());
+    }
+
+    @Test
+    void readsOnlyItsRegion() {
+        var bytes = "a\t1\nb\t2\nc\t3\n".getBytes(StandardCharsets.UTF_8);
+        var cursor = new TsvCursor().reset(ByteBuffer.wrap(bytes), 4, 8);
+
+        assertTrue(cursor.nextLine());
+        assertEquals("b", cursor.string());
+        assertFalse(cursor.nextLine());
+    }
+}
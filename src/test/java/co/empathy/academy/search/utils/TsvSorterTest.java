@@ -0,0 +1,68 @@
+package co.empathy.academy.search.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsvSorterTest {
+    private static final String HEADER = "tconst\tvalue\n";
+
+    @TempDir
+    Path directory;
+
+    private Path file(String lines) throws IOException {
+        var path = directory.resolve("title.principals.tsv");
+        Files.writeString(path, HEADER + lines);
+
+        return path;
+    }
+
+    @Test
+    void sortsByIdKeepingTheOrderOfEqualIds() throws IOException, InterruptedException {
+        var input = file("tt0000003\tc\ntt0000001\ta1\ntt0000002\tb\ntt0000001\ta2\n");
+
+        var sorted = TsvSorter.sorted(input.toString());
+
+        assertEquals(directory.resolve("title.principals.sorted.tsv").toString(), sorted);
+        assertEquals(HEADER + "tt0000001\ta1\ntt0000001\ta2\ntt0000002\tb\ntt0000003\tc\n", Files.readString(Path.of(sorted)));
+    }
+
+    @Test
+    void returnsSortedFilesAsTheyAre() throws IOException, InterruptedException {
+        var input = file("tt0000001\ta\ntt0000001\tb\ntt0000002\tc\n");
+
+        assertEquals(input.toAbsolutePath().toString(), TsvSorter.sorted(input.toString()));
+        assertFalse(Files.exists(directory.resolve("title.principals.sorted.tsv")));
+    }
+
+    @Test
+    void reusesTheCopyOnlyWhileTheInputIsTheSame() throws IOException, InterruptedException {
+        var input = file("tt0000002\tb\ntt0000001\ta\n");
+        var sorted = Path.of(TsvSorter.sorted(input.toString()));
+        var modified = Files.getLastModifiedTime(input);
+
+        //Marks the copy, to tell whether it is sorted again
+        Files.writeString(sorted, "reused");
+        assertEquals("reused", Files.readString(Path.of(TsvSorter.sorted(input.toString()))));
+
+        //Replaced by a file with the same modification time, but another size
+        Files.writeString(input, HEADER + "tt0000003\tcc\ntt0000001\ta\n");
+        Files.setLastModifiedTime(input, modified);
+
+        assertEquals(HEADER + "tt0000001\ta\ntt0000003\tcc\n", Files.readString(Path.of(TsvSorter.sorted(input.toString()))));
+    }
+
+    @Test
+    void sortsAgainWhenTheLastSortDidNotFinish() throws IOException, InterruptedException {
+        var input = file("tt0000002\tb\ntt0000001\ta\n");
+        //A copy newer than the input, but without the marker of a finished sort
+        Files.writeString(directory.resolve("title.principals.sorted.tsv"), HEADER + "tt0000002\tb\n");
+
+        assertEquals(HEADER + "tt0000001\ta\ntt0000002\tb\n", Files.readString(Path.of(TsvSorter.sorted(input.toString()))));
+    }
+}
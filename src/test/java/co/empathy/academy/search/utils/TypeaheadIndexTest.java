@@ -0,0 +1,125 @@
+package co.empathy.academy.search.utils;
+
+import co.empathy.academy.search.utils.clases.Completion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeaheadIndexTest {
+    @TempDir
+    Path directory;
+
+    private TypeaheadIndex write(TypeaheadBuilder builder) throws IOException {
+        var path = directory.resolve("films.typeahead");
+        builder.write(path, "films_v3");
+
+        return TypeaheadIndex.open(path);
+    }
+
+    private static List<String> ids(List<Completion> completions) {
+        return completions.stream().map(Completion::id).toList();
+    }
+
+    @Test
+    void completesTheStartOfTheTitlesAndOfTheirWords() throws IOException {
+        var builder = new TypeaheadBuilder();
+        builder.add(1, "movie", "The Godfather", null, 1972, 9.2, 1000000);
+        builder.add(2, "movie", "The Godfather Part II", null, 1974, 9.0, 700000);
+        builder.add(3, "movie", "Goodfellas", null, 1990, 8.7, 600000);
+        var typeahead = write(builder);
+
+        assertEquals(List.of("tt0000001", "tt0000002"), ids(typeahead.complete("godf", 10)));
+        assertEquals(List.of("tt0000001", "tt0000002"), ids(typeahead.complete("the g", 10)));
+        assertEquals(List.of("tt0000002"), ids(typeahead.complete("part", 10)));
+        assertEquals(List.of("tt0000001", "tt0000002", "tt0000003"), ids(typeahead.complete("g", 10)));
+        assertEquals(List.of(), typeahead.complete("x", 10));
+    }
+
+    @Test
+    void ignoresCaseAccentsAndPunctuation() throws IOException {
+        var builder = new TypeaheadBuilder();
+        builder.add(3, "movie", "Amélie", "Le Fabuleux Destin d'Amélie Poulain", 2001, 8.3, 700000);
+        var typeahead = write(builder);
+
+        assertEquals(List.of(new Completion("tt0000003", "Amélie", "movie", 2001, TypeaheadBuilder.weight(8.3, 700000))),
+                typeahead.complete("AME", 10));
+        assertEquals(List.of("tt0000003"), ids(typeahead.complete("poul", 10)));
+        assertEquals(List.of("tt0000003"), ids(typeahead.complete("d amelie", 10)));
+        assertEquals(List.of(), typeahead.complete(" ¿? ", 10));
+    }
+
+    @Test
+    void returnsEachTitleOnceAndLeavesOutTheOnesWithoutVotes() throws IOException {
+        var builder = new TypeaheadBuilder();
+        builder.add(1, "movie", "Love Love Love", "Love", 2000, 6.0, 100);
+        builder.add(2, "movie", "Lovely", null, 2001, 9.0, 0);
+        var typeahead = write(builder);
+
+        assertEquals(List.of("tt0000001"), ids(typeahead.complete("love", 10)));
+        assertEquals(1, builder.size());
+    }
+
+    @Test
+    void returnsTheBestTitlesOfEveryPrefix() throws IOException {
+        var builder = new TypeaheadBuilder();
+        List<Completion> titles = new ArrayList<>();
+
+        //Weights spread out of the order of the keys, so the best ones of a prefix are on different ranges of the tree
+        for(int i = 1; i <= 300; i++) {
+            double rating = 1 + (i * 37 % 90) / 10.0;
+            int votes = 1 + i * 53 % 1000;
+            builder.add(i, "movie", "Film " + i, null, 2000, rating, votes);
+            titles.add(new Completion(String.format("tt%07d", i), "Film " + i, "movie", 2000, TypeaheadBuilder.weight(rating, votes)));
+        }
+
+        var typeahead = write(builder);
+        var order = Comparator.comparing(Completion::score).reversed();
+
+        assertEquals(titles.stream().sorted(order).limit(10).toList(), typeahead.complete("film", 10));
+        assertEquals(titles.stream().filter(x -> x.title().startsWith("Film 1")).sorted(order).limit(5).toList(),
+                typeahead.complete("1", 5));
+        assertEquals(titles.stream().filter(x -> x.title().startsWith("Film 29")).sorted(order).toList(),
+                typeahead.complete("film 29", 50));
+    }
+
+    @Test
+    void leavesOutTheAdultTitlesOfTheLines() throws IOException {
+        var batch = new RowBatch(2, 2);
+        for(String[] title : new String[][] {
+                { "tt0000001\tmovie\tAlien\tAlien\t0\t1979\t\\N\t117\tHorror", "tt0000001\t8.5\t900000" },
+                { "tt0000002\tmovie\tAlien Affairs\t\\N\t1\t1999\t\\N\t90\tAdult", "tt0000002\t9.9\t1000000" } }) {
+            for(String line : title) {
+                var bytes = line.getBytes(StandardCharsets.UTF_8);
+                batch.nextSection();
+                batch.append(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+        }
+
+        var builder = new TypeaheadBuilder();
+        var cursor = new TsvCursor();
+        builder.add(batch, 0, 0, 1, cursor);
+        builder.add(batch, 1, 0, 1, cursor);
+
+        assertEquals(List.of(new Completion("tt0000001", "Alien", "movie", 1979, TypeaheadBuilder.weight(8.5, 900000))),
+                write(builder).complete("alien", 10));
+    }
+
+    @Test
+    void storesTheIndexOfTheTitles() throws IOException {
+        var builder = new TypeaheadBuilder();
+        builder.add(1, "movie", "A", null, 0, 5.0, 10);
+        var typeahead = write(builder);
+
+        assertEquals("films_v3", typeahead.getIndex());
+        assertEquals(1, typeahead.getEntries());
+    }
+}
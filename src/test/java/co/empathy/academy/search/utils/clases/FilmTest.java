@@ -0,0 +1,42 @@
+package co.empathy.academy.search.utils.clases;
+
+import co.empathy.academy.search.utils.DocumentWriter;
+import co.empathy.academy.search.utils.TsvCursor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FilmTest {
+    private static final List<String> HEADERS = List.of("tconst", "titleType", "primaryTitle", "originalTitle", "isAdult",
+            "startYear", "endYear", "runtimeMinutes", "genres");
+
+    private static String write(String line) {
+        var bytes = line.getBytes(StandardCharsets.UTF_8);
+        var cursor = new TsvCursor().reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+        var writer = new DocumentWriter(64);
+
+        writer.startObject();
+        Film.addFilm(cursor, writer, HEADERS);
+        writer.endObject();
+
+        return new String(writer.data(), 0, writer.size(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesTheFilmLine() {
+        assertEquals("{\"tconst\":\"tt0000001\",\"titleType\":\"short\",\"primaryTitle\":\"Carmencita\",\"originalTitle\":\"Carmencita\","
+                        + "\"isAdult\":false,\"startYear\":1894,\"endYear\":0,\"runtimeMinutes\":1,\"genres\":[\"Documentary\",\"Short\"]}",
+                write("tt0000001\tshort\tCarmencita\tCarmencita\t0\t1894\t\\N\t1\tDocumentary,Short\n"));
+    }
+
+    @Test
+    void writesNullGenresAsAnEmptyList() {
+        assertEquals("{\"tconst\":\"tt0000002\",\"titleType\":\"movie\",\"primaryTitle\":\"A\",\"originalTitle\":\"A\","
+                        + "\"isAdult\":true,\"startYear\":0,\"endYear\":0,\"runtimeMinutes\":0,\"genres\":[]}",
+                write("tt0000002\tmovie\tA\tA\t1\t\\N\t\\N\t\\N\t\\N\n"));
+    }
+}